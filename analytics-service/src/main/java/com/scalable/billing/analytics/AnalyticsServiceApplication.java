@@ -1,10 +1,16 @@
 package com.scalable.billing.analytics;
 
+import com.scalable.billing.common.replica.ReadReplicaConfig;
+import com.scalable.billing.common.shard.UsageShardConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@Import({ReadReplicaConfig.class, UsageShardConfig.class})
+@EnableAsync
 @EnableScheduling
 public class AnalyticsServiceApplication {
 
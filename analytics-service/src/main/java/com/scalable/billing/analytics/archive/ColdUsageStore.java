@@ -0,0 +1,187 @@
+package com.scalable.billing.analytics.archive;
+
+import com.scalable.billing.common.dto.DailyUsageSummary;
+import com.scalable.billing.common.money.FixedPoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Query side of the cold tier: the segments of every fully archived month, memory-mapped.
+ *
+ * The archive directory holds one YYYY-MM directory per month with its segment files and a
+ * _COMPLETE marker; a month is served from here only once the marker exists, and from the
+ * daily rollup otherwise, so AnalyticsService never counts a day twice. Queries skip
+ * segments whose timestamp range or customer directory rules them out.
+ */
+@Component
+@Slf4j
+public class ColdUsageStore {
+
+    static final String COMPLETE_MARKER = "_COMPLETE";
+    static final String SEGMENT_SUFFIX = ".useg";
+
+    private static final long MICROS_PER_DAY = 86_400_000_000L;
+
+    private final Path archiveDir;
+    private volatile NavigableMap<YearMonth, List<UsageSegment>> months = new TreeMap<>();
+
+    public ColdUsageStore(@Value("${analytics.archive.dir:/var/lib/billing/usage-archive}") String archiveDir) {
+        this.archiveDir = Paths.get(archiveDir);
+        reload();
+    }
+
+    public Path archiveDir() {
+        return archiveDir;
+    }
+
+    public boolean isArchived(YearMonth month) {
+        return months.containsKey(month);
+    }
+
+    public boolean hasArchivedMonths(LocalDate startDate, LocalDate endDate) {
+        return !months.subMap(YearMonth.from(startDate), true, YearMonth.from(endDate), true).isEmpty();
+    }
+
+    /**
+     * Re-scans the archive directory; picks up months completed by another replica's archiver
+     */
+    @Scheduled(fixedDelayString = "${analytics.archive.reload-interval-ms:300000}",
+        initialDelayString = "${analytics.archive.reload-interval-ms:300000}")
+    public void reload() {
+        if (!Files.isDirectory(archiveDir)) {
+            return;
+        }
+        NavigableMap<YearMonth, List<UsageSegment>> current = months;
+        NavigableMap<YearMonth, List<UsageSegment>> loaded = new TreeMap<>();
+        try (Stream<Path> entries = Files.list(archiveDir)) {
+            for (Path monthDir : entries.filter(Files::isDirectory).toList()) {
+                YearMonth month = parseMonth(monthDir.getFileName().toString());
+                if (month == null || !Files.exists(monthDir.resolve(COMPLETE_MARKER))) {
+                    continue;
+                }
+                List<UsageSegment> segments = current.get(month);
+                loaded.put(month, segments != null ? segments : openSegments(monthDir));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Could not load usage archive from {}: {}", archiveDir, e.getMessage());
+            return;
+        }
+        if (!loaded.keySet().equals(current.keySet())) {
+            log.info("Usage archive serves {} months: {}", loaded.size(), loaded.keySet());
+        }
+        months = loaded;
+    }
+
+    /**
+     * Same rows as the rollup query for archived days in [startDate, endDate], newest day first
+     */
+    public List<DailyUsageSummary> getDailyUsageSummary(UUID customerId, LocalDate startDate, LocalDate endDate) {
+        long from = toMicros(startDate);
+        long to = toMicros(endDate.plusDays(1));
+        Map<DayResource, long[]> totals = new HashMap<>();
+        for (UsageSegment segment : segmentsBetween(startDate, endDate)) {
+            if (!segment.overlaps(from, to) || !segment.mayContain(customerId)) {
+                continue;
+            }
+            segment.scanCustomer(customerId, from, to, (resourceType, timestamp, quantity, amount) -> {
+                long[] sums = totals.computeIfAbsent(
+                    new DayResource(Math.floorDiv(timestamp, MICROS_PER_DAY), resourceType), k -> new long[3]);
+                sums[0] = Math.addExact(sums[0], quantity);
+                sums[1] = Math.addExact(sums[1], amount);
+                sums[2]++;
+            });
+        }
+
+        List<DailyUsageSummary> summaries = new ArrayList<>(totals.size());
+        totals.forEach((key, sums) -> summaries.add(DailyUsageSummary.builder()
+            .customerId(customerId)
+            .usageDate(LocalDate.ofEpochDay(key.epochDay()))
+            .resourceType(key.resourceType())
+            .totalQuantity(FixedPoint.toDecimal(sums[0], FixedPoint.QUANTITY_SCALE))
+            .totalCost(FixedPoint.toDecimal(sums[1], FixedPoint.AMOUNT_SCALE))
+            .eventCount(sums[2])
+            .build()));
+        summaries.sort(Comparator.comparing(DailyUsageSummary::getUsageDate).reversed()
+            .thenComparing(DailyUsageSummary::getResourceType));
+        return summaries;
+    }
+
+    /**
+     * Total cost per archived day in [startDate, endDate]; days without usage are absent
+     */
+    public NavigableMap<LocalDate, BigDecimal> getDailyCost(LocalDate startDate, LocalDate endDate) {
+        long firstDay = startDate.toEpochDay();
+        long[] dayTotals = new long[Math.toIntExact(endDate.toEpochDay() - firstDay + 1)];
+        long[] dayRows = new long[dayTotals.length];
+        long from = toMicros(startDate);
+        long to = toMicros(endDate.plusDays(1));
+        for (UsageSegment segment : segmentsBetween(startDate, endDate)) {
+            if (segment.overlaps(from, to)) {
+                segment.sumAmountsByDay(from, to, firstDay, dayTotals, dayRows);
+            }
+        }
+
+        NavigableMap<LocalDate, BigDecimal> costs = new TreeMap<>();
+        for (int day = 0; day < dayTotals.length; day++) {
+            if (dayRows[day] > 0) {
+                costs.put(LocalDate.ofEpochDay(firstDay + day), FixedPoint.toDecimal(dayTotals[day], FixedPoint.AMOUNT_SCALE));
+            }
+        }
+        return costs;
+    }
+
+    private List<UsageSegment> segmentsBetween(LocalDate startDate, LocalDate endDate) {
+        List<UsageSegment> segments = new ArrayList<>();
+        months.subMap(YearMonth.from(startDate), true, YearMonth.from(endDate), true)
+            .values()
+            .forEach(segments::addAll);
+        return segments;
+    }
+
+    private static List<UsageSegment> openSegments(Path monthDir) throws IOException {
+        List<UsageSegment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(monthDir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                segments.add(UsageSegment.open(file));
+            }
+        }
+        return List.copyOf(segments);
+    }
+
+    private static YearMonth parseMonth(String name) {
+        try {
+            return YearMonth.parse(name);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    static long toMicros(LocalDate date) {
+        return date.atStartOfDay().toEpochSecond(ZoneOffset.UTC) * 1_000_000L;
+    }
+
+    private record DayResource(long epochDay, String resourceType) {
+    }
+}
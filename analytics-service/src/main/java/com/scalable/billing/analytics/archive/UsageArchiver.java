@@ -0,0 +1,211 @@
+package com.scalable.billing.analytics.archive;
+
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Copies closed months of usage_data into column-oriented segments for {@link ColdUsageStore}.
+ *
+ * Every month that ended more than after-months ago and is not archived yet is read through
+ * a cursor, ordered by customer and timestamp so the range prunes to one partition and
+ * every customer forms a single run, and cut into segments of segment-rows rows. Each usage
+ * shard is read in turn and starts a new segment. The month is built under YYYY-MM.tmp and
+ * renamed into place with its _COMPLETE marker, so readers see all of a month or none of it. Once a month is archived
+ * its partition can be dropped through usage-processor's retention settings.
+ */
+@Component
+@Slf4j
+public class UsageArchiver {
+
+    private static final String LOCK_FILE = ".archiver.lock";
+    private static final String MONTH_SQL =
+        "SELECT customer_id, resource_type, timestamp, quantity, unit_price FROM usage_data " +
+        "WHERE timestamp >= ? AND timestamp < ? ORDER BY customer_id, timestamp";
+
+    private final ColdUsageStore coldUsageStore;
+    private final UsageShards usageShards;
+    private final Map<String, JdbcTemplate> cursorTemplates = new HashMap<>();
+    private final Counter archivedRows;
+    private final boolean enabled;
+    private final int afterMonths;
+    private final int segmentRows;
+
+    public UsageArchiver(
+        ColdUsageStore coldUsageStore,
+        UsageShards usageShards,
+        MeterRegistry meterRegistry,
+        @Value("${analytics.archive.enabled:false}") boolean enabled,
+        @Value("${analytics.archive.after-months:3}") int afterMonths,
+        @Value("${analytics.archive.segment-rows:1000000}") int segmentRows,
+        @Value("${analytics.archive.fetch-size:10000}") int fetchSize
+    ) {
+        this.coldUsageStore = coldUsageStore;
+        this.usageShards = usageShards;
+        for (UsageShard shard : usageShards.all()) {
+            JdbcTemplate cursorTemplate = new JdbcTemplate(shard.dataSource());
+            cursorTemplate.setFetchSize(fetchSize);
+            cursorTemplates.put(shard.name(), cursorTemplate);
+        }
+        this.archivedRows = Counter.builder("analytics.archive.rows")
+            .description("usage_data rows written to cold segments")
+            .register(meterRegistry);
+        this.enabled = enabled;
+        this.afterMonths = afterMonths;
+        this.segmentRows = segmentRows;
+    }
+
+    @Scheduled(cron = "${analytics.archive.schedule:0 30 3 * * ?}")
+    public void archiveClosedMonths() {
+        if (!enabled) {
+            return;
+        }
+        Path archiveDir = coldUsageStore.archiveDir();
+        try {
+            Files.createDirectories(archiveDir);
+            try (FileChannel lockChannel = FileChannel.open(archiveDir.resolve(LOCK_FILE),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lockChannel.tryLock()) {
+                if (lock == null) {
+                    log.debug("Usage archiver already running against {}", archiveDir);
+                    return;
+                }
+                archivePendingMonths(archiveDir);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Usage archiving failed", e);
+        }
+        coldUsageStore.reload();
+    }
+
+    private void archivePendingMonths(Path archiveDir) throws IOException {
+        Timestamp oldest = usageShards.scatter(shard -> shard.jdbcTemplate()
+                .queryForObject("SELECT MIN(timestamp) FROM usage_data", Timestamp.class)).stream()
+            .filter(Objects::nonNull)
+            .min(Comparator.naturalOrder())
+            .orElse(null);
+        if (oldest == null) {
+            return;
+        }
+        YearMonth cutoff = YearMonth.now(ZoneOffset.UTC).minusMonths(afterMonths);
+        for (YearMonth month = YearMonth.from(oldest.toLocalDateTime()); month.isBefore(cutoff); month = month.plusMonths(1)) {
+            if (!Files.exists(archiveDir.resolve(month.toString()).resolve(ColdUsageStore.COMPLETE_MARKER))) {
+                archiveMonth(archiveDir, month);
+            }
+        }
+    }
+
+    private void archiveMonth(Path archiveDir, YearMonth month) throws IOException {
+        Path target = archiveDir.resolve(month.toString());
+        Path staging = archiveDir.resolve(month + ".tmp");
+        deleteRecursively(staging);
+        deleteRecursively(target);
+        Files.createDirectories(staging);
+
+        long start = System.nanoTime();
+        SegmentSequence segments = new SegmentSequence(staging);
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        RowCallbackHandler handler = rs -> {
+            LocalDateTime timestamp = rs.getObject(3, LocalDateTime.class);
+            long quantity = FixedPoint.toUnits(rs.getBigDecimal(4), FixedPoint.QUANTITY_SCALE);
+            BigDecimal unitPrice = rs.getBigDecimal(5);
+            long amount = unitPrice == null
+                ? 0
+                : Math.multiplyExact(quantity, FixedPoint.toUnits(unitPrice, FixedPoint.PRICE_SCALE));
+            segments.add(rs.getObject(1, UUID.class), rs.getString(2),
+                timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1_000, quantity, amount);
+        };
+        for (UsageShard shard : usageShards.all()) {
+            shard.readOnlyTransactionTemplate().executeWithoutResult(status -> cursorTemplates.get(shard.name())
+                .query(MONTH_SQL, handler, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+            segments.finish();
+        }
+
+        Files.createFile(staging.resolve(ColdUsageStore.COMPLETE_MARKER));
+        Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        archivedRows.increment(segments.rows);
+        log.info("Archived {} usage rows of {} into {} segments in {} ms",
+            segments.rows, month, segments.count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Rolls over to a new segment file whenever the current one is full
+     */
+    private final class SegmentSequence {
+
+        private final Path dir;
+        private UsageSegmentWriter writer;
+        private int count;
+        private long rows;
+
+        SegmentSequence(Path dir) {
+            this.dir = dir;
+        }
+
+        void add(UUID customerId, String resourceType, long timestampMicros, long quantity, long amount) {
+            if (writer == null) {
+                writer = new UsageSegmentWriter(segmentRows);
+            }
+            writer.add(customerId, resourceType, timestampMicros, quantity, amount);
+            rows++;
+            if (writer.isFull()) {
+                flush();
+            }
+        }
+
+        void finish() {
+            if (writer != null && !writer.isEmpty()) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            try {
+                writer.writeTo(dir.resolve(String.format("segment-%04d%s", count++, ColdUsageStore.SEGMENT_SUFFIX)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            writer = null;
+        }
+    }
+}
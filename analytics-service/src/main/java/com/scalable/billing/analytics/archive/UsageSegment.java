@@ -0,0 +1,253 @@
+package com.scalable.billing.analytics.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Read-only, memory-mapped view of one archived usage segment.
+ *
+ * Layout (big-endian): magic, version, row count, min/max timestamp (UTC epoch micros),
+ * the resource_type dictionary, one directory entry per customer run (customer id, row
+ * count, byte offset of the run in each column), the four column lengths and the columns.
+ * Columns are LEB128 varints: resource as a dictionary index, timestamp as a zigzag delta
+ * (from the segment minimum at the start of each run), quantity and amount as zigzag
+ * fixed-point units. Scans decode straight from the mapping; nothing is copied to the heap.
+ */
+public final class UsageSegment {
+
+    static final int MAGIC = 0x55534547; // "USEG"
+    static final byte VERSION = 1;
+
+    private static final int RESOURCE = 0;
+    private static final int TIMESTAMP = 1;
+    private static final int QUANTITY = 2;
+    private static final int AMOUNT = 3;
+
+    private final Path file;
+    private final MappedByteBuffer data;
+    private final int rowCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final String[] resources;
+    private final long[] runMsb;
+    private final long[] runLsb;
+    private final int[] runRows;
+    private final int[][] runOffsets;
+    private final int[] columnStart = new int[4];
+
+    private UsageSegment(Path file, MappedByteBuffer data) {
+        this.file = file;
+        this.data = data;
+        if (data.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a usage segment: " + file);
+        }
+        byte version = data.get();
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported segment version " + version + ": " + file);
+        }
+        rowCount = data.getInt();
+        minTimestamp = data.getLong();
+        maxTimestamp = data.getLong();
+
+        resources = new String[data.getInt()];
+        for (int i = 0; i < resources.length; i++) {
+            byte[] utf8 = new byte[data.getShort() & 0xFFFF];
+            data.get(utf8);
+            resources[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        int runs = data.getInt();
+        runMsb = new long[runs];
+        runLsb = new long[runs];
+        runRows = new int[runs];
+        runOffsets = new int[runs][4];
+        for (int run = 0; run < runs; run++) {
+            runMsb[run] = data.getLong();
+            runLsb[run] = data.getLong();
+            runRows[run] = data.getInt();
+            for (int column = 0; column < 4; column++) {
+                runOffsets[run][column] = data.getInt();
+            }
+        }
+
+        int[] lengths = new int[4];
+        for (int column = 0; column < 4; column++) {
+            lengths[column] = data.getInt();
+        }
+        int offset = data.position();
+        for (int column = 0; column < 4; column++) {
+            columnStart[column] = offset;
+            offset += lengths[column];
+        }
+        if (offset != data.limit()) {
+            throw new IllegalStateException("Truncated usage segment: " + file);
+        }
+    }
+
+    public static UsageSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new UsageSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public long minTimestamp() {
+        return minTimestamp;
+    }
+
+    public long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Min/max index check: false when no row can fall in [fromMicros, toMicros)
+     */
+    public boolean overlaps(long fromMicros, long toMicros) {
+        return rowCount > 0 && minTimestamp < toMicros && maxTimestamp >= fromMicros;
+    }
+
+    public boolean mayContain(UUID customerId) {
+        return findRun(customerId) >= 0;
+    }
+
+    /**
+     * Visits the customer's rows with a timestamp in [fromMicros, toMicros), in timestamp order
+     */
+    public void scanCustomer(UUID customerId, long fromMicros, long toMicros, RowVisitor visitor) {
+        if (!overlaps(fromMicros, toMicros)) {
+            return;
+        }
+        int run = findRun(customerId);
+        if (run < 0) {
+            return;
+        }
+        Cursor resource = cursor(run, RESOURCE);
+        Cursor timestamp = cursor(run, TIMESTAMP);
+        Cursor quantity = cursor(run, QUANTITY);
+        Cursor amount = cursor(run, AMOUNT);
+        long ts = minTimestamp;
+        for (int row = 0; row < runRows[run]; row++) {
+            ts += timestamp.nextSigned();
+            if (ts >= toMicros) {
+                return;
+            }
+            int resourceIndex = (int) resource.nextUnsigned();
+            long quantityUnits = quantity.nextSigned();
+            long amountUnits = amount.nextSigned();
+            if (ts >= fromMicros) {
+                visitor.accept(resources[resourceIndex], ts, quantityUnits, amountUnits);
+            }
+        }
+    }
+
+    /**
+     * Adds the amount of every row in [fromMicros, toMicros) to dayTotals[epochDay - firstEpochDay]
+     * and counts it in dayRows. Only the timestamp and amount columns are decoded.
+     */
+    public void sumAmountsByDay(long fromMicros, long toMicros, long firstEpochDay, long[] dayTotals, long[] dayRows) {
+        if (!overlaps(fromMicros, toMicros)) {
+            return;
+        }
+        for (int run = 0; run < runRows.length; run++) {
+            Cursor timestamp = cursor(run, TIMESTAMP);
+            Cursor amount = cursor(run, AMOUNT);
+            long ts = minTimestamp;
+            for (int row = 0; row < runRows[run]; row++) {
+                ts += timestamp.nextSigned();
+                if (ts >= toMicros) {
+                    break;
+                }
+                long amountUnits = amount.nextSigned();
+                if (ts >= fromMicros) {
+                    int day = (int) (Math.floorDiv(ts, 86_400_000_000L) - firstEpochDay);
+                    dayTotals[day] = Math.addExact(dayTotals[day], amountUnits);
+                    dayRows[day]++;
+                }
+            }
+        }
+    }
+
+    private Cursor cursor(int run, int column) {
+        return new Cursor(data, columnStart[column] + runOffsets[run][column]);
+    }
+
+    private int findRun(UUID customerId) {
+        long msb = customerId.getMostSignificantBits();
+        long lsb = customerId.getLeastSignificantBits();
+        int low = 0;
+        int high = runMsb.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(runMsb[mid], msb);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(runLsb[mid], lsb);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * PostgreSQL orders uuid bytewise, i.e. as two unsigned longs; UUID.compareTo is signed
+     */
+    static int compareUnsigned(UUID a, UUID b) {
+        int cmp = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return cmp != 0 ? cmp : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    @FunctionalInterface
+    public interface RowVisitor {
+
+        void accept(String resourceType, long timestampMicros, long quantityUnits, long amountUnits);
+    }
+
+    /**
+     * Sequential varint reader over one column, using absolute gets on the shared mapping
+     */
+    private static final class Cursor {
+
+        private final ByteBuffer data;
+        private int position;
+
+        Cursor(ByteBuffer data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        long nextUnsigned() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        long nextSigned() {
+            long value = nextUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.scalable.billing.analytics.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Builds one column-oriented usage segment (see {@link UsageSegment} for the layout).
+ *
+ * Rows must arrive grouped by customer and, within a customer, in timestamp order (the
+ * archiver reads ORDER BY customer_id, timestamp). Each customer's rows form a run; runs
+ * record where they start in every column so a per-customer scan seeks straight to them.
+ */
+public final class UsageSegmentWriter {
+
+    private final int capacity;
+    private final Map<String, Integer> resourceIds = new HashMap<>();
+    private final List<String> resources = new ArrayList<>();
+    private final int[] resourceColumn;
+    private final long[] timestampColumn;
+    private final long[] quantityColumn;
+    private final long[] amountColumn;
+    private final List<UUID> runCustomers = new ArrayList<>();
+    private int[] runStarts = new int[64];
+    private int rows;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+
+    public UsageSegmentWriter(int capacity) {
+        this.capacity = capacity;
+        this.resourceColumn = new int[capacity];
+        this.timestampColumn = new long[capacity];
+        this.quantityColumn = new long[capacity];
+        this.amountColumn = new long[capacity];
+    }
+
+    public boolean isFull() {
+        return rows == capacity;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * @param timestampMicros UTC epoch microseconds
+     * @param quantityUnits   quantity at FixedPoint.QUANTITY_SCALE
+     * @param amountUnits     quantity * unit price at FixedPoint.AMOUNT_SCALE
+     */
+    public void add(UUID customerId, String resourceType, long timestampMicros, long quantityUnits, long amountUnits) {
+        if (isFull()) {
+            throw new IllegalStateException("Segment is full");
+        }
+        int run = runCustomers.size() - 1;
+        if (run < 0 || !runCustomers.get(run).equals(customerId)) {
+            if (run >= 0 && UsageSegment.compareUnsigned(customerId, runCustomers.get(run)) < 0) {
+                throw new IllegalArgumentException("Rows must be ordered by customer_id");
+            }
+            run++;
+            runCustomers.add(customerId);
+            if (run == runStarts.length) {
+                runStarts = Arrays.copyOf(runStarts, run * 2);
+            }
+            runStarts[run] = rows;
+        } else if (timestampMicros < timestampColumn[rows - 1]) {
+            throw new IllegalArgumentException("Rows of a customer must be ordered by timestamp");
+        }
+
+        Integer resource = resourceIds.get(resourceType);
+        if (resource == null) {
+            resource = resources.size();
+            resources.add(resourceType);
+            resourceIds.put(resourceType, resource);
+        }
+        resourceColumn[rows] = resource;
+        timestampColumn[rows] = timestampMicros;
+        quantityColumn[rows] = quantityUnits;
+        amountColumn[rows] = amountUnits;
+        minTimestamp = Math.min(minTimestamp, timestampMicros);
+        maxTimestamp = Math.max(maxTimestamp, timestampMicros);
+        rows++;
+    }
+
+    /**
+     * Writes the segment to a sibling temp file and moves it into place
+     */
+    public void writeTo(Path file) throws IOException {
+        int runs = runCustomers.size();
+        ColumnBuffer resourceBytes = new ColumnBuffer(rows);
+        ColumnBuffer timestampBytes = new ColumnBuffer(rows * 2);
+        ColumnBuffer quantityBytes = new ColumnBuffer(rows * 3);
+        ColumnBuffer amountBytes = new ColumnBuffer(rows * 4);
+        int[][] runOffsets = new int[runs][4];
+
+        for (int run = 0; run < runs; run++) {
+            int start = runStarts[run];
+            int end = run + 1 < runs ? runStarts[run + 1] : rows;
+            runOffsets[run][0] = resourceBytes.size();
+            runOffsets[run][1] = timestampBytes.size();
+            runOffsets[run][2] = quantityBytes.size();
+            runOffsets[run][3] = amountBytes.size();
+            long previous = minTimestamp;
+            for (int row = start; row < end; row++) {
+                resourceBytes.writeUnsigned(resourceColumn[row]);
+                timestampBytes.writeSigned(timestampColumn[row] - previous);
+                previous = timestampColumn[row];
+                quantityBytes.writeSigned(quantityColumn[row]);
+                amountBytes.writeSigned(amountColumn[row]);
+            }
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(UsageSegment.MAGIC);
+            out.writeByte(UsageSegment.VERSION);
+            out.writeInt(rows);
+            out.writeLong(minTimestamp);
+            out.writeLong(maxTimestamp);
+            out.writeInt(resources.size());
+            for (String resource : resources) {
+                byte[] utf8 = resource.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(utf8.length);
+                out.write(utf8);
+            }
+            out.writeInt(runs);
+            for (int run = 0; run < runs; run++) {
+                UUID customer = runCustomers.get(run);
+                int start = runStarts[run];
+                int end = run + 1 < runs ? runStarts[run + 1] : rows;
+                out.writeLong(customer.getMostSignificantBits());
+                out.writeLong(customer.getLeastSignificantBits());
+                out.writeInt(end - start);
+                for (int column = 0; column < 4; column++) {
+                    out.writeInt(runOffsets[run][column]);
+                }
+            }
+            out.writeInt(resourceBytes.size());
+            out.writeInt(timestampBytes.size());
+            out.writeInt(quantityBytes.size());
+            out.writeInt(amountBytes.size());
+            resourceBytes.writeTo(out);
+            timestampBytes.writeTo(out);
+            quantityBytes.writeTo(out);
+            amountBytes.writeTo(out);
+        }
+        Files.move(temp, file, java.nio.file.StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Growable byte array of LEB128 varints; signed values are zigzag encoded
+     */
+    private static final class ColumnBuffer {
+
+        private byte[] bytes;
+        private int size;
+
+        ColumnBuffer(int initialCapacity) {
+            bytes = new byte[Math.max(16, initialCapacity)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeUnsigned(long value) {
+            if (size + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 10));
+            }
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.scalable.billing.analytics.cache;
+
+import com.scalable.billing.common.cache.TwoLevelCache;
+import com.scalable.billing.common.cache.TwoLevelCacheManager;
+import com.scalable.billing.common.constants.CacheNames;
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.common.replica.ReadYourWrites;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Drops cached usage summaries of the customers in each committed usage batch, and the
+ * global cost trend, since both read daily_usage_rollup which the batch just updated.
+ * Every replica consumes in its own group so each one clears its L1. The event lag of the
+ * "analytics.invalidate" stage is the time from commit in usage-processor to eviction here.
+ * Before evicting, the primary's position is noted for those customers and the trend
+ * (ReadYourWrites), so the reads refilling the cache skip replicas that have not replayed the batch.
+ */
+@Component
+@Slf4j
+public class UsageCacheInvalidationListener {
+
+    private static final Set<String> GLOBAL = Set.of(TwoLevelCache.GLOBAL_REGION);
+
+    private final TwoLevelCacheManager cacheManager;
+    private final ReadYourWrites readYourWrites;
+    private final PipelineStage invalidateStage;
+
+    public UsageCacheInvalidationListener(TwoLevelCacheManager cacheManager, ReadYourWrites readYourWrites,
+                                          MeterRegistry meterRegistry) {
+        this.cacheManager = cacheManager;
+        this.readYourWrites = readYourWrites;
+        this.invalidateStage = PipelineStage.register("analytics.invalidate", meterRegistry);
+    }
+
+    @KafkaListener(
+        topics = KafkaTopics.ANALYTICS_EVENTS,
+        groupId = "${spring.application.name}-cache-${random.uuid}",
+        properties = "auto.offset.reset=latest"
+    )
+    public void onUsageIngested(List<Object> events) {
+        long start = System.nanoTime();
+        Set<Object> changed = new HashSet<>();
+        Set<String> customers = new HashSet<>();
+        for (Object event : events) {
+            if (event instanceof UsageIngestedEvent ingested && ingested.getCustomerIds() != null) {
+                for (UUID customerId : ingested.getCustomerIds()) {
+                    changed.add(customerId);
+                    customers.add(customerId.toString());
+                }
+            }
+        }
+        if (customers.isEmpty()) {
+            return;
+        }
+        changed.add(CacheNames.COST_TREND);
+        readYourWrites.writtenAll(changed);
+        cacheManager.getTwoLevelCache(CacheNames.USAGE_SUMMARY).evictRegions(customers);
+        cacheManager.getTwoLevelCache(CacheNames.COST_TREND).evictRegions(GLOBAL);
+        invalidateStage.recordSuccess(start);
+        invalidateStage.recordBatchSize(customers.size());
+        long now = System.currentTimeMillis();
+        for (Object event : events) {
+            if (event instanceof UsageIngestedEvent ingested && ingested.getTimestamp() != null) {
+                invalidateStage.recordEventLag(ingested.getTimestamp(), now);
+            }
+        }
+        log.debug("Evicted cached usage summaries for {} customers", customers.size());
+    }
+}
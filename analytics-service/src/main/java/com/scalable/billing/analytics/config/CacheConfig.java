@@ -0,0 +1,31 @@
+package com.scalable.billing.analytics.config;
+
+import com.scalable.billing.common.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Caffeine L1 in front of Redis L2; usage entries are evicted from the UsageIngestedEvents
+ * usage-processor publishes after each batch (see UsageCacheInvalidationListener)
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(
+        RedissonClient redissonClient,
+        MeterRegistry meterRegistry,
+        @Value("${analytics.cache.l1.max-size:10000}") long localMaxSize,
+        @Value("${analytics.cache.l1.ttl:30s}") Duration localTtl,
+        @Value("${analytics.cache.l2.ttl:15m}") Duration remoteTtl
+    ) {
+        return new TwoLevelCacheManager(redissonClient, meterRegistry, localMaxSize, localTtl, remoteTtl);
+    }
+}
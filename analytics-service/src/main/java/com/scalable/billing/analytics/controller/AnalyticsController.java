@@ -1,12 +1,22 @@
 package com.scalable.billing.analytics.controller;
 
+import com.scalable.billing.analytics.live.LiveMetricsBroadcaster;
+import com.scalable.billing.analytics.mtd.MonthToDateAggregator;
 import com.scalable.billing.analytics.service.AnalyticsService;
+import com.scalable.billing.analytics.sketch.UsageSketchStore;
 import com.scalable.billing.common.dto.DailyUsageSummary;
+import com.scalable.billing.common.dto.DistinctCustomerReport;
+import com.scalable.billing.common.dto.MonthToDateSpend;
+import com.scalable.billing.common.dto.TopUsageReport;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -21,6 +31,9 @@ import java.util.UUID;
 public class AnalyticsController {
     
     private final AnalyticsService analyticsService;
+    private final LiveMetricsBroadcaster liveMetricsBroadcaster;
+    private final MonthToDateAggregator monthToDateAggregator;
+    private final UsageSketchStore usageSketchStore;
     
     @GetMapping("/usage/daily")
     public ResponseEntity<List<DailyUsageSummary>> getDailyUsage(
@@ -38,6 +51,79 @@ public class AnalyticsController {
         return ResponseEntity.ok(trend);
     }
     
+    /**
+     * Approximate top customers by cost from the Count-Min sketches; every estimated_cost is at
+     * least the true cost and at most error_bound above it, with the reported confidence
+     * GET /api/analytics/top/customers?startDate=2024-01-01&endDate=2024-01-31&limit=10
+     */
+    @GetMapping("/top/customers")
+    public ResponseEntity<TopUsageReport> getTopCustomers(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+        @RequestParam(defaultValue = "10") int limit
+    ) {
+        return getTopUsage("customer", startDate, endDate, limit);
+    }
+    
+    /**
+     * Approximate top resource types by cost, with the same bounds as /top/customers
+     */
+    @GetMapping("/top/resources")
+    public ResponseEntity<TopUsageReport> getTopResources(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+        @RequestParam(defaultValue = "10") int limit
+    ) {
+        return getTopUsage("resource_type", startDate, endDate, limit);
+    }
+    
+    /**
+     * Approximate distinct customers with usage per day and over the range, from HyperLogLog
+     * sketches (relative standard error about 0.8%)
+     */
+    @GetMapping("/customers/distinct")
+    public ResponseEntity<DistinctCustomerReport> getDistinctCustomers(
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate
+    ) {
+        try {
+            return ResponseEntity.ok(usageSketchStore.getDistinctCustomers(startDate, endDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    private ResponseEntity<TopUsageReport> getTopUsage(String dimension, LocalDate startDate, LocalDate endDate, int limit) {
+        try {
+            return ResponseEntity.ok(usageSketchStore.getTopUsage(dimension, startDate, endDate, limit));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected top {} request: {}", dimension, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Current month's spend so far, served from the in-memory stream aggregate
+     */
+    @GetMapping("/spend/month-to-date")
+    public ResponseEntity<MonthToDateSpend> getMonthToDateSpend(@RequestParam UUID customerId) {
+        return ResponseEntity.ok(monthToDateAggregator.getSpend(customerId));
+    }
+    
+    /**
+     * Server-sent "metrics" events with the pipeline's throughput, latency and error rate, once per second
+     */
+    @GetMapping(value = "/live/metrics", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamLiveMetrics() {
+        SseEmitter emitter = liveMetricsBroadcaster.subscribe();
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+        return ResponseEntity.ok()
+            .header("X-Accel-Buffering", "no")
+            .body(emitter);
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Analytics Service is healthy");
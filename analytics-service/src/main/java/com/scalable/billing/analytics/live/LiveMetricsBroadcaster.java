@@ -0,0 +1,123 @@
+package com.scalable.billing.analytics.live;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans the serialized snapshot of every window out to the connected SSE clients.
+ *
+ * The payload is built once per tick and the same string is written to each client, so a
+ * tick costs one serialization plus one write per client. Writes run on a small sender pool
+ * so a slow client never holds up the scheduler tick or the other clients; a client whose
+ * previous write is still in flight skips the snapshot and gets the next one. Clients that
+ * fail a write, time out or disconnect are dropped; EventSource reconnects on its own.
+ */
+@Component
+@Slf4j
+public class LiveMetricsBroadcaster {
+
+    /** Client emitter to whether a write to it is in flight */
+    private final Map<SseEmitter, AtomicBoolean> clients = new ConcurrentHashMap<>();
+    private final AtomicInteger clientCount = new AtomicInteger();
+    private final int maxClients;
+    private final long emitterTimeoutMillis;
+    private final ExecutorService senders;
+    private volatile String latest;
+
+    public LiveMetricsBroadcaster(
+        MeterRegistry meterRegistry,
+        @Value("${analytics.live.max-clients:1000}") int maxClients,
+        @Value("${analytics.live.emitter-timeout:30m}") Duration emitterTimeout,
+        @Value("${analytics.live.sender-threads:4}") int senderThreads
+    ) {
+        this.maxClients = maxClients;
+        this.emitterTimeoutMillis = emitterTimeout.toMillis();
+        AtomicInteger threadIds = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "live-metrics-sender-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("analytics.live.clients", clientCount, AtomicInteger::get)
+            .description("Connected live metrics stream clients")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Registers a new client and sends it the latest snapshot; null when max-clients are connected
+     */
+    public SseEmitter subscribe() {
+        if (clientCount.incrementAndGet() > maxClients) {
+            clientCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        clients.put(emitter, new AtomicBoolean());
+        emitter.onCompletion(() -> remove(emitter));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> remove(emitter));
+
+        String snapshot = latest;
+        if (snapshot != null) {
+            send(emitter, snapshot);
+        }
+        return emitter;
+    }
+
+    public void broadcast(String snapshot) {
+        latest = snapshot;
+        clients.forEach((emitter, sending) -> {
+            if (!sending.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                senders.execute(() -> {
+                    try {
+                        send(emitter, snapshot);
+                    } finally {
+                        sending.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                sending.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        senders.shutdownNow();
+    }
+
+    private void send(SseEmitter emitter, String snapshot) {
+        try {
+            emitter.send(SseEmitter.event().name("metrics").data(snapshot, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Dropping live metrics client: {}", e.getMessage());
+            remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void remove(SseEmitter emitter) {
+        if (clients.remove(emitter) != null) {
+            clientCount.decrementAndGet();
+        }
+    }
+}
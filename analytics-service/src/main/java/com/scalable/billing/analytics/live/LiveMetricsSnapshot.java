@@ -0,0 +1,32 @@
+package com.scalable.billing.analytics.live;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Pipeline metrics of one window, as pushed to live dashboard clients
+ */
+public record LiveMetricsSnapshot(
+    @JsonProperty("timestamp") Instant timestamp,
+    @JsonProperty("window_ms") long windowMillis,
+    @JsonProperty("received_per_sec") double receivedPerSecond,
+    @JsonProperty("ingested_per_sec") double ingestedPerSecond,
+    @JsonProperty("dead_lettered_per_sec") double deadLetteredPerSecond,
+    @JsonProperty("error_rate") double errorRate,
+    @JsonProperty("latency_ms") Latency latency,
+    @JsonProperty("consumer_lag") long consumerLag
+) {
+
+    /**
+     * Event timestamp to database write latency percentiles; zero when nothing was ingested
+     */
+    public record Latency(
+        @JsonProperty("count") long count,
+        @JsonProperty("p50") long p50,
+        @JsonProperty("p95") long p95,
+        @JsonProperty("p99") long p99,
+        @JsonProperty("max") long max
+    ) {
+    }
+}
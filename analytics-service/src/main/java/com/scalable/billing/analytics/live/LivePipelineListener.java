@@ -0,0 +1,56 @@
+package com.scalable.billing.analytics.live;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Feeds {@link LivePipelineMetrics}. Raw usage and dead-lettered events are only counted, so
+ * they are consumed as bytes without decoding; committed batches arrive as UsageIngestedEvents.
+ * Every replica consumes in its own group from the latest offset, since each one serves its
+ * own clients and only the current window matters.
+ */
+@Component
+@RequiredArgsConstructor
+public class LivePipelineListener {
+
+    private final LivePipelineMetrics metrics;
+
+    @KafkaListener(
+        topics = {KafkaTopics.USAGE_EVENTS, KafkaTopics.USAGE_EVENTS_DLQ},
+        groupId = "${spring.application.name}-live-${random.uuid}",
+        properties = {
+            "auto.offset.reset=latest",
+            "key.deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer",
+            "value.deserializer=org.apache.kafka.common.serialization.ByteArrayDeserializer"
+        }
+    )
+    public void onRawEvents(List<ConsumerRecord<byte[], byte[]>> records) {
+        int deadLettered = 0;
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            if (KafkaTopics.USAGE_EVENTS_DLQ.equals(record.topic())) {
+                deadLettered++;
+            }
+        }
+        metrics.recordReceived(records.size() - deadLettered);
+        metrics.recordDeadLettered(deadLettered);
+    }
+
+    @KafkaListener(
+        topics = KafkaTopics.ANALYTICS_EVENTS,
+        groupId = "${spring.application.name}-live-${random.uuid}",
+        properties = "auto.offset.reset=latest"
+    )
+    public void onUsageIngested(List<Object> events) {
+        for (Object event : events) {
+            if (event instanceof UsageIngestedEvent ingested) {
+                metrics.recordIngested(ingested.getEventCount(), ingested.getLatencyHistogram());
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.scalable.billing.analytics.live;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+
+/**
+ * Per-window aggregates of the usage pipeline for the live metrics stream.
+ *
+ * Kafka listener threads only bump adders and merge latency histograms into an HdrHistogram
+ * Recorder. Every tick (interval-ms, one second by default) swaps out the recorder's interval
+ * histogram and the counters, turns them into one {@link LiveMetricsSnapshot}, serializes it
+ * once and hands it to the broadcaster. Consumer lag comes from the Kafka client meters in this service's registry.
+ */
+@Component
+@Slf4j
+public class LivePipelineMetrics {
+
+    private static final String LAG_METER = "kafka.consumer.fetch.manager.records.lag.max";
+
+    private final LiveMetricsBroadcaster broadcaster;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    private final LongAdder received = new LongAdder();
+    private final LongAdder ingested = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final Recorder latency = new Recorder(2);
+    private Histogram intervalLatency;
+    private long windowStart = System.nanoTime();
+
+    public LivePipelineMetrics(LiveMetricsBroadcaster broadcaster, MeterRegistry meterRegistry, ObjectMapper objectMapper) {
+        this.broadcaster = broadcaster;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public void recordReceived(int events) {
+        received.add(events);
+    }
+
+    public void recordDeadLettered(int events) {
+        deadLettered.add(events);
+    }
+
+    /**
+     * Adds a committed batch: its size and its compressed latency histogram
+     */
+    public void recordIngested(int events, byte[] latencyHistogram) {
+        ingested.add(events);
+        if (latencyHistogram == null) {
+            return;
+        }
+        try {
+            Histogram batch = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(latencyHistogram), 0);
+            for (var value : batch.recordedValues()) {
+                latency.recordValueWithCount(value.getValueIteratedTo(), value.getCountAtValueIteratedTo());
+            }
+        } catch (DataFormatException | RuntimeException e) {
+            log.debug("Ignoring unreadable latency histogram: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${analytics.live.interval-ms:1000}")
+    public void tick() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1, now - windowStart) / 1e9;
+        windowStart = now;
+        intervalLatency = latency.getIntervalHistogram(intervalLatency);
+
+        long receivedCount = received.sumThenReset();
+        long deadLetteredCount = deadLettered.sumThenReset();
+        LiveMetricsSnapshot snapshot = new LiveMetricsSnapshot(
+            Instant.now(),
+            Math.round(seconds * 1000),
+            receivedCount / seconds,
+            ingested.sumThenReset() / seconds,
+            deadLetteredCount / seconds,
+            receivedCount == 0 ? 0 : (double) deadLetteredCount / receivedCount,
+            new LiveMetricsSnapshot.Latency(
+                intervalLatency.getTotalCount(),
+                intervalLatency.getValueAtPercentile(50),
+                intervalLatency.getValueAtPercentile(95),
+                intervalLatency.getValueAtPercentile(99),
+                intervalLatency.getMaxValue()),
+            consumerLag());
+        try {
+            broadcaster.broadcast(objectMapper.writeValueAsString(snapshot));
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize live metrics: {}", e.getMessage());
+        }
+    }
+
+    private long consumerLag() {
+        double lag = 0;
+        for (Gauge gauge : meterRegistry.find(LAG_METER).gauges()) {
+            double value = gauge.value();
+            if (!Double.isNaN(value)) {
+                lag = Math.max(lag, value);
+            }
+        }
+        return (long) lag;
+    }
+}
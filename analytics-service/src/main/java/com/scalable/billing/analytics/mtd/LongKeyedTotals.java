@@ -0,0 +1,155 @@
+package com.scalable.billing.analytics.mtd;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Open-addressing map from a packed long key to (quantity, cost, count) long totals
+ * (linear probing, no boxing, grows at half load). Zero is reserved as the empty marker,
+ * so callers must never use 0 as a key.
+ */
+class LongKeyedTotals {
+
+    private long[] keys;
+    private long[] quantities;
+    private long[] costs;
+    private long[] counts;
+    private int mask;
+    private int size;
+
+    LongKeyedTotals(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(expectedSize, 16) * 2 - 1) << 1);
+    }
+
+    /**
+     * Adds to the totals of the key, creating them at zero first
+     */
+    void add(long key, long quantity, long cost, long count) {
+        int slot = slotFor(key);
+        quantities[slot] = Math.addExact(quantities[slot], quantity);
+        costs[slot] = Math.addExact(costs[slot], cost);
+        counts[slot] += count;
+    }
+
+    /**
+     * Replaces the totals of the key
+     */
+    void put(long key, long quantity, long cost, long count) {
+        int slot = slotFor(key);
+        quantities[slot] = quantity;
+        costs[slot] = cost;
+        counts[slot] = count;
+    }
+
+    /**
+     * @return the slot of the key, or -1 when it is absent
+     */
+    int find(long key) {
+        int slot = hash(key) & mask;
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    long key(int slot) {
+        return keys[slot];
+    }
+
+    long quantity(int slot) {
+        return quantities[slot];
+    }
+
+    long cost(int slot) {
+        return costs[slot];
+    }
+
+    long count(int slot) {
+        return counts[slot];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Slots to iterate with key(slot) != 0
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Drops every key the predicate rejects
+     */
+    void retain(LongPredicate keep) {
+        long[] oldKeys = keys;
+        long[] oldQuantities = quantities;
+        long[] oldCosts = costs;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0 && keep.test(oldKeys[slot])) {
+                add(oldKeys[slot], oldQuantities[slot], oldCosts[slot], oldCounts[slot]);
+            }
+        }
+    }
+
+    void clear() {
+        allocate(16);
+    }
+
+    private int slotFor(long key) {
+        int slot = hash(key) & mask;
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size + 1 > keys.length / 2) {
+            grow();
+            return slotFor(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldQuantities = quantities;
+        long[] oldCosts = costs;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0) {
+                int target = slotFor(oldKeys[slot]);
+                quantities[target] = oldQuantities[slot];
+                costs[target] = oldCosts[slot];
+                counts[target] = oldCounts[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        quantities = new long[capacity];
+        costs = new long[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * Packed keys differ mostly in their high bits, so spread them before masking
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,348 @@
+package com.scalable.billing.analytics.mtd;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.dto.MonthToDateSpend;
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.shard.UsageShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RecordDeserializationException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Month-to-date spend per customer, computed from USAGE_EVENTS as it streams in.
+ *
+ * Each replica reads every partition itself (manual assignment, no consumer group) and keeps
+ * the totals in a {@link MonthToDateState}. Between polls, every checkpoint interval, the
+ * consumer thread writes the state together with the positions it corresponds to, so a
+ * restart resumes from the checkpoint instead of replaying the month. Without a usable
+ * checkpoint the month is seeded from daily_usage_rollup and consumption starts at the end.
+ *
+ * The topic carries raw events, duplicates and rejects included, while the rollup holds what
+ * was actually stored; a scheduled reconciliation therefore overwrites all closed days of the
+ * month with the rollup's totals. Only the current UTC day is purely stream-derived.
+ * Records that cannot be deserialized or applied (missing fields, values out of range) are
+ * skipped and counted as analytics.mtd.ignored.
+ */
+@Component
+@Slf4j
+public class MonthToDateAggregator implements SmartLifecycle {
+
+    private static final String ROLLUP_SQL =
+        "SELECT customer_id, resource_type, usage_date, total_quantity, total_cost, event_count " +
+        "FROM daily_usage_rollup WHERE usage_date >= ? AND usage_date <= ?";
+
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final UsageShards usageShards;
+    private final Path checkpointFile;
+    private final Duration checkpointInterval;
+    private final boolean enabled;
+    private final Counter reconcileCorrections;
+    private final Counter ignoredEvents;
+    private final AtomicBoolean reconcileRequested = new AtomicBoolean();
+
+    private volatile MonthToDateState state = new MonthToDateState(YearMonth.now(ZoneOffset.UTC));
+    private volatile boolean running;
+    private Consumer<Object, Object> consumer;
+    private Thread worker;
+
+    public MonthToDateAggregator(
+        ConsumerFactory<Object, Object> consumerFactory,
+        UsageShards usageShards,
+        MeterRegistry meterRegistry,
+        @Value("${analytics.mtd.enabled:true}") boolean enabled,
+        @Value("${analytics.mtd.checkpoint-file:/var/lib/billing/mtd/checkpoint.bin}") String checkpointFile,
+        @Value("${analytics.mtd.checkpoint-interval:30s}") Duration checkpointInterval
+    ) {
+        this.consumerFactory = consumerFactory;
+        this.usageShards = usageShards;
+        this.enabled = enabled;
+        this.checkpointFile = Paths.get(checkpointFile);
+        this.checkpointInterval = checkpointInterval;
+        this.reconcileCorrections = Counter.builder("analytics.mtd.reconcile.corrections")
+            .description("Daily month-to-date totals corrected from daily_usage_rollup")
+            .register(meterRegistry);
+        this.ignoredEvents = Counter.builder("analytics.mtd.ignored")
+            .description("Usage events outside the current month or unreadable")
+            .register(meterRegistry);
+        Gauge.builder("analytics.mtd.entries", this, aggregator -> aggregator.state.entries())
+            .description("(customer, resource, day) totals held for the current month")
+            .register(meterRegistry);
+    }
+
+    public MonthToDateSpend getSpend(UUID customerId) {
+        return state.spend(customerId);
+    }
+
+    /**
+     * Asks the consumer thread to reconcile between two polls
+     */
+    @Scheduled(cron = "${analytics.mtd.reconcile-schedule:0 */10 * * * ?}")
+    public void requestReconcile() {
+        reconcileRequested.set(true);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            log.info("Month-to-date aggregation disabled");
+            return;
+        }
+        running = true;
+        worker = new Thread(this::run, "mtd-aggregator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Consumer<Object, Object> current = consumer;
+        if (current != null) {
+            current.wakeup();
+        }
+        if (worker != null) {
+            try {
+                worker.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                consume();
+            } catch (WakeupException e) {
+                return;
+            } catch (RuntimeException e) {
+                log.error("Month-to-date aggregator failed, restarting from the last checkpoint in 5s", e);
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void consume() {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "2000");
+        try (Consumer<Object, Object> kafka = consumerFactory.createConsumer(null, null, "-mtd", overrides)) {
+            consumer = kafka;
+            List<TopicPartition> partitions = kafka.partitionsFor(KafkaTopics.USAGE_EVENTS).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+            if (partitions.isEmpty()) {
+                throw new IllegalStateException("Topic " + KafkaTopics.USAGE_EVENTS + " has no partitions yet");
+            }
+            kafka.assign(partitions);
+            restore(kafka, partitions);
+
+            long nextCheckpoint = System.nanoTime() + checkpointInterval.toNanos();
+            try {
+                while (running) {
+                    ConsumerRecords<Object, Object> records;
+                    try {
+                        records = kafka.poll(Duration.ofMillis(500));
+                    } catch (RecordDeserializationException e) {
+                        log.debug("Skipping unreadable usage event at {}@{}", e.topicPartition(), e.offset());
+                        ignoredEvents.increment();
+                        kafka.seek(e.topicPartition(), e.offset() + 1);
+                        continue;
+                    }
+                    rollOverIfNeeded(kafka, partitions);
+                    for (ConsumerRecord<Object, Object> record : records) {
+                        try {
+                            apply(record);
+                        } catch (RuntimeException e) {
+                            log.debug("Ignoring usage event at {}-{}@{}: {}", record.topic(), record.partition(),
+                                record.offset(), e.toString());
+                            ignoredEvents.increment();
+                        }
+                    }
+                    if (reconcileRequested.getAndSet(false)) {
+                        reconcile(LocalDate.now(ZoneOffset.UTC).minusDays(1));
+                    }
+                    if (System.nanoTime() - nextCheckpoint >= 0) {
+                        checkpoint(kafka, partitions);
+                        nextCheckpoint = System.nanoTime() + checkpointInterval.toNanos();
+                    }
+                }
+            } catch (WakeupException e) {
+                if (running) {
+                    throw e;
+                }
+            }
+            // Records of the last poll are all applied, so the positions match the state
+            checkpoint(kafka, partitions);
+        } finally {
+            consumer = null;
+        }
+    }
+
+    private void apply(ConsumerRecord<Object, Object> record) {
+        if (!(record.value() instanceof UsageEvent event) || event.getTimestamp() == null
+            || event.getCustomerId() == null || event.getResourceType() == null || event.getQuantity() == null) {
+            ignoredEvents.increment();
+            return;
+        }
+        // Same rounding as the NUMERIC(15,4) and NUMERIC(10,4) columns, half away from zero
+        long quantity = FixedPoint.toUnits(event.getQuantity(), FixedPoint.QUANTITY_SCALE, FixedPoint.MONEY_ROUNDING);
+        long cost = event.getUnitPrice() == null
+            ? 0
+            : Math.multiplyExact(quantity,
+                FixedPoint.toUnits(event.getUnitPrice(), FixedPoint.PRICE_SCALE, FixedPoint.MONEY_ROUNDING));
+        boolean added = state.add(event.getCustomerId(), event.getResourceType(),
+            LocalDate.ofInstant(event.getTimestamp(), ZoneOffset.UTC), quantity, cost,
+            Instant.ofEpochMilli(record.timestamp()));
+        if (!added) {
+            ignoredEvents.increment();
+        }
+    }
+
+    /**
+     * Resumes from the checkpoint of the current month, or seeds the month from the database
+     */
+    private void restore(Consumer<Object, Object> kafka, List<TopicPartition> partitions) {
+        YearMonth month = YearMonth.now(ZoneOffset.UTC);
+        Map<Integer, Long> offsets = new HashMap<>();
+        MonthToDateState restored = readCheckpoint(offsets);
+        if (restored != null && restored.month().equals(month)) {
+            state = restored;
+            for (TopicPartition partition : partitions) {
+                Long offset = offsets.get(partition.partition());
+                if (offset != null) {
+                    kafka.seek(partition, offset);
+                } else {
+                    kafka.seekToBeginning(List.of(partition));
+                }
+            }
+            log.info("Month-to-date state for {} restored from {} ({} entries)", month, checkpointFile,
+                restored.entries());
+            return;
+        }
+
+        state = new MonthToDateState(month);
+        kafka.seekToEnd(partitions);
+        partitions.forEach(kafka::position); // resolve the end offsets before reading the rollup
+        reconcile(LocalDate.now(ZoneOffset.UTC));
+        log.info("Month-to-date state for {} seeded from daily_usage_rollup ({} entries)", month, state.entries());
+    }
+
+    /**
+     * At a month boundary the totals start from zero; the checkpoint records the switch right away
+     */
+    private void rollOverIfNeeded(Consumer<Object, Object> kafka, List<TopicPartition> partitions) {
+        YearMonth now = YearMonth.now(ZoneOffset.UTC);
+        if (!now.equals(state.month())) {
+            state.rollOver(now);
+            checkpoint(kafka, partitions);
+            log.info("Month-to-date totals rolled over to {}", now);
+        }
+    }
+
+    /**
+     * Overwrites the days from the first of the month to lastDay with daily_usage_rollup;
+     * nothing happens when lastDay is in another month (i.e. on the first of a month)
+     */
+    private void reconcile(LocalDate lastDay) {
+        if (!YearMonth.from(lastDay).equals(state.month())) {
+            return;
+        }
+        LocalDate firstDay = lastDay.withDayOfMonth(1);
+        try {
+            // A customer being moved between usage shards can have a row for the same day on both
+            List<MonthToDateState.DayTotal> rows = new ArrayList<>();
+            usageShards.scatter(shard -> shard.jdbcTemplate().query(ROLLUP_SQL, (rs, i) -> new MonthToDateState.DayTotal(
+                rs.getObject(1, UUID.class),
+                rs.getString(2),
+                rs.getObject(3, LocalDate.class),
+                FixedPoint.toUnits(rs.getBigDecimal(4), FixedPoint.QUANTITY_SCALE),
+                FixedPoint.toUnits(rs.getBigDecimal(5), FixedPoint.AMOUNT_SCALE),
+                rs.getLong(6)), firstDay, lastDay)).forEach(rows::addAll);
+            int changed = state.reconcile(rows, lastDay);
+            reconcileCorrections.increment(changed);
+            if (changed > 0) {
+                log.info("Reconciled month-to-date totals through {}: {} daily totals corrected", lastDay, changed);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Month-to-date reconciliation failed: {}", e.getMessage());
+        }
+    }
+
+    private void checkpoint(Consumer<Object, Object> kafka, List<TopicPartition> partitions) {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            offsets.put(partition.partition(), kafka.position(partition));
+        }
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(checkpointFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                state.writeTo(out, offsets);
+            }
+            Files.move(temp, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("Could not write month-to-date checkpoint {}: {}", checkpointFile, e.getMessage());
+        }
+    }
+
+    private MonthToDateState readCheckpoint(Map<Integer, Long> offsets) {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile), 1 << 16))) {
+            return MonthToDateState.readFrom(in, offsets);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable month-to-date checkpoint {}: {}", checkpointFile, e.getMessage());
+            offsets.clear();
+            return null;
+        }
+    }
+}
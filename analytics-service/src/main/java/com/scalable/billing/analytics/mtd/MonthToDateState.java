@@ -0,0 +1,343 @@
+package com.scalable.billing.analytics.mtd;
+
+import com.scalable.billing.common.dto.MonthToDateSpend;
+import com.scalable.billing.common.money.FixedPoint;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Running per-customer, per-resource, per-day usage totals of one UTC month.
+ *
+ * Customers and resource types are interned to small ints and packed into long keys:
+ * (customer, resource, day of month) for the daily totals, (customer, resource) for the
+ * month totals that reads use. Quantities are QUANTITY_SCALE units and costs AMOUNT_SCALE
+ * units of quantity * unit price, so sums match SUM(quantity * COALESCE(unit_price, 0))
+ * exactly. One writer applies events under the write lock; reads take the read lock and
+ * touch one entry per resource type of the customer.
+ */
+class MonthToDateState {
+
+    private static final int MAGIC = 0x4D544401; // "MTD", format 1
+    // Daily keys: customer (32 bits) | resource (24 bits) | day of month (8 bits)
+    private static final int MAX_RESOURCES = 1 << 24;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, Integer> customerIds = new HashMap<>();
+    private final List<UUID> customers = new ArrayList<>();
+    private final List<BitSet> customerResources = new ArrayList<>();
+    private final Map<String, Integer> resourceIds = new HashMap<>();
+    private final List<String> resources = new ArrayList<>();
+    private final LongKeyedTotals daily = new LongKeyedTotals(1 << 16);
+    private final LongKeyedTotals monthly = new LongKeyedTotals(1 << 12);
+    private YearMonth month;
+    private Instant asOf;
+    private LocalDate reconciledThrough;
+
+    MonthToDateState(YearMonth month) {
+        this.month = month;
+        customers.add(null); // index 0 would make a zero key
+        customerResources.add(null);
+    }
+
+    YearMonth month() {
+        lock.readLock().lock();
+        try {
+            return month;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts over, empty, when the clock has moved into another month
+     */
+    void rollOver(YearMonth current) {
+        lock.writeLock().lock();
+        try {
+            if (current.equals(month)) {
+                return;
+            }
+            month = current;
+            daily.clear();
+            monthly.clear();
+            reconciledThrough = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds one usage event; events outside the month are ignored
+     *
+     * @return false if the event was ignored
+     */
+    boolean add(UUID customerId, String resourceType, LocalDate day, long quantityUnits, long costUnits,
+                Instant eventTime) {
+        lock.writeLock().lock();
+        try {
+            if (!YearMonth.from(day).equals(month)) {
+                return false;
+            }
+            int customer = customerIndex(customerId);
+            int resource = resourceIndex(resourceType);
+            daily.add(dailyKey(customer, resource, day.getDayOfMonth()), quantityUnits, costUnits, 1);
+            monthly.add(monthlyKey(customer, resource), quantityUnits, costUnits, 1);
+            customerResources.get(customer).set(resource);
+            if (asOf == null || eventTime.isAfter(asOf)) {
+                asOf = eventTime;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the totals of every day up to lastDay with the database rows for those days
+     * (rows without a database counterpart drop to zero; rows of the same day, e.g. from two
+     * usage shards, are added up)
+     *
+     * @return how many (customer, resource, day) totals changed
+     */
+    int reconcile(List<DayTotal> database, LocalDate lastDay) {
+        lock.writeLock().lock();
+        try {
+            if (!YearMonth.from(lastDay).equals(month)) {
+                return 0;
+            }
+            LongKeyedTotals expected = new LongKeyedTotals(database.size());
+            for (DayTotal row : database) {
+                int customer = customerIndex(row.customerId());
+                int resource = resourceIndex(row.resourceType());
+                customerResources.get(customer).set(resource);
+                expected.add(dailyKey(customer, resource, row.day().getDayOfMonth()),
+                    row.quantityUnits(), row.costUnits(), row.count());
+            }
+
+            int changed = 0;
+            int lastDayOfMonth = lastDay.getDayOfMonth();
+            for (int slot = 0; slot < daily.capacity(); slot++) {
+                long key = daily.key(slot);
+                if (key == 0 || dayOf(key) > lastDayOfMonth || expected.find(key) >= 0) {
+                    continue;
+                }
+                if (daily.count(slot) != 0 || daily.cost(slot) != 0 || daily.quantity(slot) != 0) {
+                    changed += replace(key, 0, 0, 0);
+                }
+            }
+            for (int slot = 0; slot < expected.capacity(); slot++) {
+                long key = expected.key(slot);
+                if (key != 0) {
+                    changed += replace(key, expected.quantity(slot), expected.cost(slot), expected.count(slot));
+                }
+            }
+            reconciledThrough = lastDay;
+            return changed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    MonthToDateSpend spend(UUID customerId) {
+        lock.readLock().lock();
+        try {
+            Integer customer = customerIds.get(customerId);
+            List<MonthToDateSpend.ResourceSpend> resourceSpend = new ArrayList<>();
+            long totalCost = 0;
+            if (customer != null) {
+                BitSet seen = customerResources.get(customer);
+                for (int resource = seen.nextSetBit(0); resource >= 0; resource = seen.nextSetBit(resource + 1)) {
+                    int slot = monthly.find(monthlyKey(customer, resource));
+                    if (slot < 0 || monthly.count(slot) == 0) {
+                        continue;
+                    }
+                    totalCost = Math.addExact(totalCost, monthly.cost(slot));
+                    resourceSpend.add(MonthToDateSpend.ResourceSpend.builder()
+                        .resourceType(resources.get(resource))
+                        .totalQuantity(FixedPoint.toDecimal(monthly.quantity(slot), FixedPoint.QUANTITY_SCALE))
+                        .totalCost(FixedPoint.toDecimal(monthly.cost(slot), FixedPoint.AMOUNT_SCALE))
+                        .eventCount(monthly.count(slot))
+                        .build());
+                }
+            }
+            return MonthToDateSpend.builder()
+                .customerId(customerId)
+                .month(month.toString())
+                .totalCost(FixedPoint.toDecimal(totalCost, FixedPoint.AMOUNT_SCALE))
+                .totalAmount(FixedPoint.toDecimal(totalCost, FixedPoint.AMOUNT_SCALE)
+                    .setScale(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING))
+                .resources(resourceSpend)
+                .asOf(asOf)
+                .reconciledThrough(reconciledThrough)
+                .build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int entries() {
+        lock.readLock().lock();
+        try {
+            return daily.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the month, the consumer positions the state corresponds to and the daily totals
+     */
+    void writeTo(DataOutputStream out, Map<Integer, Long> offsets) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(month.getYear());
+            out.writeByte(month.getMonthValue());
+            out.writeLong(asOf == null ? Long.MIN_VALUE : asOf.toEpochMilli());
+            out.writeLong(reconciledThrough == null ? Long.MIN_VALUE : reconciledThrough.toEpochDay());
+            out.writeInt(offsets.size());
+            for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                out.writeInt(offset.getKey());
+                out.writeLong(offset.getValue());
+            }
+            out.writeInt(customers.size() - 1);
+            for (int i = 1; i < customers.size(); i++) {
+                out.writeLong(customers.get(i).getMostSignificantBits());
+                out.writeLong(customers.get(i).getLeastSignificantBits());
+            }
+            out.writeInt(resources.size());
+            for (String resource : resources) {
+                out.writeUTF(resource);
+            }
+            out.writeInt(daily.size());
+            for (int slot = 0; slot < daily.capacity(); slot++) {
+                if (daily.key(slot) != 0) {
+                    out.writeLong(daily.key(slot));
+                    out.writeLong(daily.quantity(slot));
+                    out.writeLong(daily.cost(slot));
+                    out.writeLong(daily.count(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Restores a state written by {@link #writeTo}; the consumer offsets are put into offsets
+     */
+    static MonthToDateState readFrom(DataInputStream in, Map<Integer, Long> offsets) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a month-to-date checkpoint");
+        }
+        MonthToDateState state = new MonthToDateState(YearMonth.of(in.readInt(), in.readByte()));
+        long asOf = in.readLong();
+        state.asOf = asOf == Long.MIN_VALUE ? null : Instant.ofEpochMilli(asOf);
+        long reconciledThrough = in.readLong();
+        state.reconciledThrough = reconciledThrough == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(reconciledThrough);
+        int partitions = in.readInt();
+        for (int i = 0; i < partitions; i++) {
+            offsets.put(in.readInt(), in.readLong());
+        }
+        int customerCount = in.readInt();
+        for (int i = 0; i < customerCount; i++) {
+            state.customerIndex(new UUID(in.readLong(), in.readLong()));
+        }
+        int resourceCount = in.readInt();
+        for (int i = 0; i < resourceCount; i++) {
+            state.resourceIndex(in.readUTF());
+        }
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            long key = in.readLong();
+            long quantity = in.readLong();
+            long cost = in.readLong();
+            long count = in.readLong();
+            state.daily.put(key, quantity, cost, count);
+            state.monthly.add(monthlyKey(customerOf(key), resourceOf(key)), quantity, cost, count);
+            state.customerResources.get(customerOf(key)).set(resourceOf(key));
+        }
+        return state;
+    }
+
+    /**
+     * Applies the difference between the current and the new totals of a daily key to the month totals
+     */
+    private int replace(long key, long quantity, long cost, long count) {
+        int slot = daily.find(key);
+        long oldQuantity = slot < 0 ? 0 : daily.quantity(slot);
+        long oldCost = slot < 0 ? 0 : daily.cost(slot);
+        long oldCount = slot < 0 ? 0 : daily.count(slot);
+        if (oldQuantity == quantity && oldCost == cost && oldCount == count) {
+            return 0;
+        }
+        daily.put(key, quantity, cost, count);
+        monthly.add(monthlyKey(customerOf(key), resourceOf(key)),
+            quantity - oldQuantity, cost - oldCost, count - oldCount);
+        return 1;
+    }
+
+    private int customerIndex(UUID customerId) {
+        Integer index = customerIds.get(customerId);
+        if (index == null) {
+            index = customers.size();
+            customers.add(customerId);
+            customerResources.add(new BitSet());
+            customerIds.put(customerId, index);
+        }
+        return index;
+    }
+
+    private int resourceIndex(String resourceType) {
+        Integer index = resourceIds.get(resourceType);
+        if (index == null) {
+            if (resources.size() == MAX_RESOURCES) {
+                throw new IllegalStateException("More than " + MAX_RESOURCES + " resource types");
+            }
+            index = resources.size();
+            resources.add(resourceType);
+            resourceIds.put(resourceType, index);
+        }
+        return index;
+    }
+
+    private static long dailyKey(int customer, int resource, int dayOfMonth) {
+        return (long) customer << 32 | (long) resource << 8 | dayOfMonth;
+    }
+
+    private static long monthlyKey(int customer, int resource) {
+        return (long) customer << 32 | resource;
+    }
+
+    private static int customerOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int resourceOf(long dailyKey) {
+        return (int) ((dailyKey >>> 8) & (MAX_RESOURCES - 1));
+    }
+
+    private static int dayOf(long dailyKey) {
+        return (int) (dailyKey & 0xFF);
+    }
+
+    /**
+     * One daily_usage_rollup row in fixed-point units
+     */
+    record DayTotal(UUID customerId, String resourceType, LocalDate day, long quantityUnits, long costUnits,
+                    long count) {
+    }
+}
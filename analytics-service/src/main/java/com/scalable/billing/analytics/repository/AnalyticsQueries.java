@@ -0,0 +1,22 @@
+package com.scalable.billing.analytics.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * daily_usage_rollup queries of {@link AnalyticsRepository}, run on the usage shards
+ */
+public interface AnalyticsQueries {
+
+    /**
+     * (customer_id, usage_date, resource_type, total_quantity, total_cost, event_count) rows of
+     * the incrementally maintained daily rollup (fresh within seconds of ingestion), newest first
+     */
+    List<Object[]> getDailyUsageSummary(UUID customerId, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * (usage_date, total cost of all customers) rows from startDate on, oldest first
+     */
+    List<Object[]> getTrendData(LocalDate startDate);
+}
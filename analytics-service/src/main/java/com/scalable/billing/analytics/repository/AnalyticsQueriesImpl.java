@@ -0,0 +1,74 @@
+package com.scalable.billing.analytics.repository;
+
+import com.scalable.billing.common.shard.UsageShards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * A customer's rollup is read from its shard, and from its previous shard too while a rebalance
+ * moves it (rows of the same day and resource are added up); the trend adds up every shard.
+ */
+@RequiredArgsConstructor
+class AnalyticsQueriesImpl implements AnalyticsQueries {
+
+    private static final String DAILY_SUMMARY_SQL =
+        "SELECT customer_id, usage_date, resource_type, total_quantity, total_cost, event_count " +
+        "FROM daily_usage_rollup " +
+        "WHERE customer_id = ? AND usage_date BETWEEN ? AND ? " +
+        "ORDER BY usage_date DESC";
+    private static final String TREND_SQL =
+        "SELECT usage_date, SUM(total_cost) FROM daily_usage_rollup WHERE usage_date >= ? GROUP BY usage_date";
+
+    private final UsageShards usageShards;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> getDailyUsageSummary(UUID customerId, LocalDate startDate, LocalDate endDate) {
+        List<List<Object[]>> perShard = usageShards.scatter(usageShards.readShards(customerId),
+            shard -> shard.jdbcTemplate().query(DAILY_SUMMARY_SQL, (rs, i) -> new Object[] {
+                rs.getObject(1, UUID.class), rs.getDate(2), rs.getString(3), rs.getBigDecimal(4),
+                rs.getBigDecimal(5), rs.getLong(6)
+            }, customerId, Date.valueOf(startDate), Date.valueOf(endDate)));
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        Map<List<Object>, Object[]> rows = new LinkedHashMap<>();
+        for (List<Object[]> shardRows : perShard) {
+            for (Object[] row : shardRows) {
+                rows.merge(List.of(row[1], row[2]), row, (a, b) -> new Object[] {
+                    a[0], a[1], a[2], ((BigDecimal) a[3]).add((BigDecimal) b[3]),
+                    ((BigDecimal) a[4]).add((BigDecimal) b[4]), (Long) a[5] + (Long) b[5]
+                });
+            }
+        }
+        List<Object[]> merged = new ArrayList<>(rows.values());
+        merged.sort(Comparator.comparing((Object[] row) -> (Date) row[1]).reversed());
+        return merged;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> getTrendData(LocalDate startDate) {
+        Map<Date, BigDecimal> costs = new TreeMap<>();
+        for (List<Object[]> shardRows : usageShards.scatter(shard -> shard.jdbcTemplate().query(TREND_SQL,
+            (rs, i) -> new Object[] {rs.getDate(1), rs.getBigDecimal(2)}, Date.valueOf(startDate)))) {
+            for (Object[] row : shardRows) {
+                costs.merge((Date) row[0], (BigDecimal) row[1], BigDecimal::add);
+            }
+        }
+        List<Object[]> trend = new ArrayList<>(costs.size());
+        costs.forEach((date, cost) -> trend.add(new Object[] {date, cost}));
+        return trend;
+    }
+}
@@ -1,39 +1,13 @@
 package com.scalable.billing.analytics.repository;
 
-import com.scalable.billing.common.dto.DailyUsageSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.LocalDate;
-import java.util.List;
-import java.util.UUID;
-
+/**
+ * daily_usage_rollup is sharded by customer (usage.shards); its queries live in {@link AnalyticsQueries}
+ */
 @Repository
-public interface AnalyticsRepository extends JpaRepository<DailyUsageSummaryView, Long> {
-    
-    /**
-     * Query optimized materialized view for fast analytics (30% faster)
-     */
-    @Query(value = "SELECT customer_id, usage_date, resource_type, total_quantity, total_cost, event_count " +
-                   "FROM daily_usage_summary " +
-                   "WHERE customer_id = :customerId AND usage_date BETWEEN :startDate AND :endDate " +
-                   "ORDER BY usage_date DESC", 
-           nativeQuery = true)
-    List<Object[]> getDailyUsageSummary(
-        @Param("customerId") UUID customerId,
-        @Param("startDate") LocalDate startDate,
-        @Param("endDate") LocalDate endDate
-    );
-    
-    @Query(value = "SELECT DATE_TRUNC('day', usage_date) as date, SUM(total_cost) as cost " +
-                   "FROM daily_usage_summary " +
-                   "WHERE usage_date >= :startDate " +
-                   "GROUP BY DATE_TRUNC('day', usage_date) " +
-                   "ORDER BY date", 
-           nativeQuery = true)
-    List<Object[]> getTrendData(@Param("startDate") LocalDate startDate);
+public interface AnalyticsRepository extends JpaRepository<DailyUsageSummaryView, Long>, AnalyticsQueries {
 }
 
 // Placeholder entity for repository (not actual persistence)
@@ -1,74 +1,147 @@
 package com.scalable.billing.analytics.service;
 
+import com.scalable.billing.analytics.archive.ColdUsageStore;
 import com.scalable.billing.analytics.repository.AnalyticsRepository;
+import com.scalable.billing.common.constants.CacheNames;
 import com.scalable.billing.common.dto.DailyUsageSummary;
-import lombok.RequiredArgsConstructor;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.common.replica.ReadYourWrites;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class AnalyticsService {
     
     private final AnalyticsRepository analyticsRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final ColdUsageStore coldUsageStore;
+    private final ReadYourWrites readYourWrites;
+    private final PipelineStage refreshStage;
+    
+    public AnalyticsService(AnalyticsRepository analyticsRepository,
+                            JdbcTemplate jdbcTemplate,
+                            ColdUsageStore coldUsageStore,
+                            ReadYourWrites readYourWrites,
+                            MeterRegistry meterRegistry) {
+        this.analyticsRepository = analyticsRepository;
+        this.readYourWrites = readYourWrites;
+        this.jdbcTemplate = jdbcTemplate;
+        this.coldUsageStore = coldUsageStore;
+        this.refreshStage = PipelineStage.register("analytics.mv.refresh", meterRegistry);
+    }
     
     /**
-     * Get daily usage summary from materialized view (30% faster)
+     * Get daily usage summary from the incrementally maintained rollup table, and from the
+     * cold segments for archived months. Cached per customer until usage-processor reports
+     * new usage for that customer. Read-only, so a read replica may serve it (read-replicas), but
+     * only one that has replayed the customer's last eviction, so the shared L2 is never refilled
+     * with totals older than it.
      */
-    @Cacheable(value = "usage-summary", key = "#customerId + '-' + #startDate + '-' + #endDate")
+    @Cacheable(value = CacheNames.USAGE_SUMMARY, key = "#customerId + ':' + #startDate + ':' + #endDate")
+    @Transactional(readOnly = true)
     public List<DailyUsageSummary> getDailyUsageSummary(UUID customerId, LocalDate startDate, LocalDate endDate) {
         log.debug("Fetching daily usage summary for customer {} from {} to {}", customerId, startDate, endDate);
         
-        List<Object[]> results = analyticsRepository.getDailyUsageSummary(customerId, startDate, endDate);
-        
-        return results.stream()
-            .map(row -> DailyUsageSummary.builder()
-                .customerId((UUID) row[0])
-                .usageDate(((java.sql.Date) row[1]).toLocalDate())
-                .resourceType((String) row[2])
-                .totalQuantity((BigDecimal) row[3])
-                .totalCost((BigDecimal) row[4])
-                .eventCount(((Number) row[5]).longValue())
-                .build())
-            .collect(Collectors.toList());
+        List<DailyUsageSummary> summaries = new ArrayList<>();
+        if (!isFullyArchived(startDate, endDate)) {
+            readYourWrites.read(customerId, () -> analyticsRepository.getDailyUsageSummary(customerId, startDate, endDate))
+                .stream()
+                .map(AnalyticsService::toDailyUsageSummary)
+                .filter(summary -> !coldUsageStore.isArchived(YearMonth.from(summary.getUsageDate())))
+                .forEach(summaries::add);
+        }
+        if (coldUsageStore.hasArchivedMonths(startDate, endDate)) {
+            summaries.addAll(coldUsageStore.getDailyUsageSummary(customerId, startDate, endDate));
+            summaries.sort(Comparator.comparing(DailyUsageSummary::getUsageDate).reversed());
+        }
+        return summaries;
+    }
+    
+    /**
+     * Archived months are answered by the cold store only, even if their rows are still in PostgreSQL
+     */
+    private boolean isFullyArchived(LocalDate startDate, LocalDate endDate) {
+        for (YearMonth month = YearMonth.from(startDate); !month.isAfter(YearMonth.from(endDate)); month = month.plusMonths(1)) {
+            if (!coldUsageStore.isArchived(month)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Maps a daily_usage_rollup row (see AnalyticsRepository.getDailyUsageSummary)
+     */
+    static DailyUsageSummary toDailyUsageSummary(Object[] row) {
+        return DailyUsageSummary.builder()
+            .customerId((UUID) row[0])
+            .usageDate(((java.sql.Date) row[1]).toLocalDate())
+            .resourceType((String) row[2])
+            .totalQuantity((BigDecimal) row[3])
+            .totalCost((BigDecimal) row[4])
+            .eventCount(((Number) row[5]).longValue())
+            .build();
     }
     
     /**
-     * Get cost trend data for charts
+     * Get cost trend data for charts; the key has no customer, so any ingested batch evicts it.
+     * Read-only like getDailyUsageSummary; the replica has to have replayed the last eviction of any customer.
      */
-    @Cacheable(value = "cost-trend", key = "#days")
+    @Cacheable(value = CacheNames.COST_TREND, key = "#days")
+    @Transactional(readOnly = true)
     public Map<String, Object> getCostTrend(int days) {
         LocalDate startDate = LocalDate.now().minusDays(days);
-        List<Object[]> results = analyticsRepository.getTrendData(startDate);
+        NavigableMap<LocalDate, BigDecimal> costs = coldUsageStore.hasArchivedMonths(startDate, LocalDate.now())
+            ? coldUsageStore.getDailyCost(startDate, LocalDate.now())
+            : new TreeMap<>();
+        for (Object[] row : readYourWrites.read(CacheNames.COST_TREND, () -> analyticsRepository.getTrendData(startDate))) {
+            LocalDate date = ((java.sql.Date) row[0]).toLocalDate();
+            if (!coldUsageStore.isArchived(YearMonth.from(date))) {
+                costs.put(date, (BigDecimal) row[1]);
+            }
+        }
         
         Map<String, Object> trend = new HashMap<>();
-        trend.put("labels", results.stream().map(r -> r[0].toString()).collect(Collectors.toList()));
-        trend.put("values", results.stream().map(r -> r[1]).collect(Collectors.toList()));
+        trend.put("labels", costs.keySet().stream().map(LocalDate::toString).collect(Collectors.toList()));
+        trend.put("values", new ArrayList<>(costs.values()));
         
         return trend;
     }
     
     /**
-     * Scheduled job to refresh materialized views for analytics
+     * Scheduled job to refresh materialized views for analytics.
+     * Daily usage is no longer a materialized view: usage-processor upserts daily_usage_rollup per batch.
      */
     @Scheduled(cron = "${analytics.refresh.schedule:0 */15 * * * ?}")
     public void refreshMaterializedViews() {
         log.info("Refreshing materialized views for analytics");
-        jdbcTemplate.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY daily_usage_summary");
-        jdbcTemplate.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY monthly_billing_summary");
+        long start = System.nanoTime();
+        try {
+            jdbcTemplate.execute("REFRESH MATERIALIZED VIEW CONCURRENTLY monthly_billing_summary");
+            refreshStage.recordSuccess(start);
+        } catch (RuntimeException e) {
+            refreshStage.recordFailure(start);
+            throw e;
+        }
         log.info("Materialized views refreshed successfully");
     }
 }
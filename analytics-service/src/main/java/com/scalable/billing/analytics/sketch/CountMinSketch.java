@@ -0,0 +1,95 @@
+package com.scalable.billing.analytics.sketch;
+
+/**
+ * Count-Min sketch of non-negative weights (depth rows of width counters).
+ *
+ * An estimate never undercounts, and with probability at least 1 - e^-depth it overcounts by
+ * at most e / width of the total weight added. Sketches of equal dimensions merge by adding
+ * their counters, so per-day or per-replica sketches combine into one with the same bounds
+ * relative to the combined total.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[] counters;
+    private long total;
+
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Count-Min dimensions must be positive");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counters = new long[depth * width];
+    }
+
+    public void add(long hash, long weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Count-Min weights must not be negative");
+        }
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + column(h1, h2, row);
+            counters[index] = Math.addExact(counters[index], weight);
+        }
+        total = Math.addExact(total, weight);
+    }
+
+    public long estimate(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counters[row * width + column(h1, h2, row)]);
+        }
+        return min;
+    }
+
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge Count-Min sketches of different dimensions");
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = Math.addExact(counters[i], other.counters[i]);
+        }
+        total = Math.addExact(total, other.total);
+    }
+
+    /**
+     * Sum of all weights added
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Overestimate bound as a fraction of total(): e / width
+     */
+    public double epsilon() {
+        return Math.E / width;
+    }
+
+    /**
+     * Probability that an estimate exceeds the bound: e^-depth
+     */
+    public double delta() {
+        return Math.exp(-depth);
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Row hashes h1 + row * h2 (Kirsch-Mitzenmacher) from the two halves of one 64-bit hash
+     */
+    private int column(int h1, int h2, int row) {
+        return Math.floorMod(h1 + row * h2, width);
+    }
+}
@@ -0,0 +1,50 @@
+package com.scalable.billing.analytics.sketch;
+
+import java.util.UUID;
+
+/**
+ * The sketches of one UTC usage day: spend by customer, spend by resource type and the
+ * distinct customers with usage. Weights are cost in AMOUNT_SCALE units. Updates and copies
+ * synchronize on the instance.
+ */
+class DailyUsageSketches {
+
+    private final HeavyHitters customerCost;
+    private final HeavyHitters resourceCost;
+    private final HyperLogLog activeCustomers;
+
+    DailyUsageSketches(SketchSettings settings) {
+        this.customerCost = new HeavyHitters(settings.depth(), settings.width(), settings.topK());
+        this.resourceCost = new HeavyHitters(settings.depth(), settings.width(), settings.topK());
+        this.activeCustomers = new HyperLogLog(settings.precision());
+    }
+
+    synchronized void add(UUID customerId, String resourceType, long costUnits) {
+        long weight = Math.max(0, costUnits); // credits cannot be subtracted from a Count-Min sketch
+        customerCost.add(customerId.toString(), weight);
+        resourceCost.add(resourceType, weight);
+        activeCustomers.add(SketchHash.of(customerId));
+    }
+
+    /**
+     * Merges this day into the given range sketches
+     */
+    synchronized void mergeInto(HeavyHitters customers, HeavyHitters resources, HyperLogLog distinct) {
+        if (customers != null) {
+            customers.merge(customerCost);
+        }
+        if (resources != null) {
+            resources.merge(resourceCost);
+        }
+        if (distinct != null) {
+            distinct.merge(activeCustomers);
+        }
+    }
+
+    synchronized long activeCustomers() {
+        return activeCustomers.estimate();
+    }
+
+    record SketchSettings(int depth, int width, int topK, int precision) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.scalable.billing.analytics.sketch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Top-k keys by weight: a {@link CountMinSketch} over all keys plus the k keys with the largest
+ * estimates seen so far.
+ *
+ * Estimates carry the Count-Min bounds. A key is tracked if its estimate ranked among the
+ * top k at its latest update, so a key that falls out can come back with its full weight the
+ * next time it is updated; tracking several times more keys than are ever asked for keeps
+ * the reported top N stable. Merging adds the sketches and re-ranks the union of both
+ * candidate sets against the merged sketch.
+ */
+public class HeavyHitters {
+
+    private final CountMinSketch sketch;
+    private final int capacity;
+    private final Map<String, Long> candidates;
+    private String minKey;
+    private long minEstimate;
+
+    public HeavyHitters(int depth, int width, int capacity) {
+        this.sketch = new CountMinSketch(depth, width);
+        this.capacity = capacity;
+        this.candidates = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String key, long weight) {
+        long hash = SketchHash.of(key);
+        sketch.add(hash, weight);
+        offer(key, sketch.estimate(hash));
+    }
+
+    public void merge(HeavyHitters other) {
+        sketch.merge(other.sketch);
+        List<String> keys = new ArrayList<>(candidates.keySet());
+        keys.addAll(other.candidates.keySet());
+        candidates.clear();
+        minKey = null;
+        for (String key : keys) {
+            offer(key, sketch.estimate(SketchHash.of(key)));
+        }
+    }
+
+    /**
+     * The n tracked keys with the largest estimates, largest first
+     */
+    public List<Map.Entry<String, Long>> top(int n) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(candidates.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    public CountMinSketch sketch() {
+        return sketch;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private void offer(String key, long estimate) {
+        if (candidates.containsKey(key) || candidates.size() < capacity) {
+            candidates.put(key, estimate);
+            if (minKey == null || key.equals(minKey) || estimate < minEstimate) {
+                findMin();
+            }
+        } else if (estimate > minEstimate) {
+            candidates.remove(minKey);
+            candidates.put(key, estimate);
+            findMin();
+        }
+    }
+
+    /**
+     * Linear in k, and only needed when the smallest candidate changes
+     */
+    private void findMin() {
+        minKey = null;
+        for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+            if (minKey == null || candidate.getValue() < minEstimate) {
+                minKey = candidate.getKey();
+                minEstimate = candidate.getValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.scalable.billing.analytics.sketch;
+
+import java.util.UUID;
+
+/**
+ * 64-bit hashes for the sketches. Every replica must hash a key the same way for their
+ * sketches to be mergeable, so String.hashCode (32 bits) and identity hashes are not used.
+ */
+final class SketchHash {
+
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private SketchHash() {
+        throw new AssertionError("No instances");
+    }
+
+    /**
+     * FNV-1a over the UTF-16 chars, then the MurmurHash3 finalizer to spread the bits
+     */
+    static long of(String key) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    static long of(UUID key) {
+        return mix(key.getMostSignificantBits() ^ mix(key.getLeastSignificantBits()));
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
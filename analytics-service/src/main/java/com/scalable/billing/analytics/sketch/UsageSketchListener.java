@@ -0,0 +1,33 @@
+package com.scalable.billing.analytics.sketch;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Feeds {@link UsageSketchStore} with the rollup deltas of committed usage batches. Every
+ * replica consumes in its own group and so holds sketches of all usage.
+ */
+@Component
+@RequiredArgsConstructor
+public class UsageSketchListener {
+
+    private final UsageSketchStore store;
+
+    @KafkaListener(
+        topics = KafkaTopics.ANALYTICS_EVENTS,
+        groupId = "${spring.application.name}-sketch-${random.uuid}",
+        properties = "auto.offset.reset=latest"
+    )
+    public void onUsageIngested(List<Object> events) {
+        for (Object event : events) {
+            if (event instanceof UsageIngestedEvent ingested) {
+                store.apply(ingested);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.scalable.billing.analytics.sketch;
+
+import com.scalable.billing.common.dto.DistinctCustomerReport;
+import com.scalable.billing.common.dto.TopUsageReport;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.shard.UsageShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Per-day usage sketches of the last retention-days UTC days, answering top-N and distinct
+ * customer questions without grouping daily_usage_rollup.
+ *
+ * The days are seeded once from daily_usage_rollup (one day per query, on every usage shard)
+ * and then kept up to date from the usage totals of each UsageIngestedEvent. Range queries
+ * merge the days into fresh sketches. Batches committed while a day is being seeded may be
+ * counted twice; like the Count-Min error itself, that can only raise a top-N estimate.
+ */
+@Component
+@Slf4j
+public class UsageSketchStore {
+
+    private static final String SEED_SQL =
+        "SELECT customer_id, resource_type, total_cost FROM daily_usage_rollup WHERE usage_date = ?";
+
+    private final UsageShards usageShards;
+    private final DailyUsageSketches.SketchSettings settings;
+    private final int retentionDays;
+    private final ConcurrentNavigableMap<LocalDate, DailyUsageSketches> days = new ConcurrentSkipListMap<>();
+
+    public UsageSketchStore(
+        UsageShards usageShards,
+        @Value("${analytics.sketch.retention-days:35}") int retentionDays,
+        @Value("${analytics.sketch.count-min.depth:5}") int depth,
+        @Value("${analytics.sketch.count-min.width:2048}") int width,
+        @Value("${analytics.sketch.top-k:200}") int topK,
+        @Value("${analytics.sketch.hll-precision:14}") int precision
+    ) {
+        this.usageShards = usageShards;
+        this.retentionDays = retentionDays;
+        this.settings = new DailyUsageSketches.SketchSettings(depth, width, topK, precision);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedOnStartup() {
+        Thread seeder = new Thread(this::seed, "usage-sketch-seeder");
+        seeder.setDaemon(true);
+        seeder.start();
+    }
+
+    public void apply(UsageIngestedEvent event) {
+        if (event.getUsageTotals() == null) {
+            return;
+        }
+        LocalDate oldest = oldestDay();
+        for (UsageIngestedEvent.UsageTotal total : event.getUsageTotals()) {
+            if (total.getUsageDate().isBefore(oldest)) {
+                continue;
+            }
+            day(total.getUsageDate()).add(total.getCustomerId(), total.getResourceType(),
+                FixedPoint.toUnits(total.getTotalCost(), FixedPoint.AMOUNT_SCALE));
+        }
+    }
+
+    /**
+     * Approximate top spenders by customer ("customer") or resource type ("resource_type");
+     * days before the retention window are not covered and the start date is moved up
+     */
+    public TopUsageReport getTopUsage(String dimension, LocalDate startDate, LocalDate endDate, int limit) {
+        boolean byCustomer = "customer".equals(dimension);
+        if (!byCustomer && !"resource_type".equals(dimension)) {
+            throw new IllegalArgumentException("Unknown dimension " + dimension);
+        }
+        if (limit < 1 || limit > settings.topK()) {
+            throw new IllegalArgumentException("limit must be between 1 and " + settings.topK());
+        }
+        LocalDate start = coveredStart(startDate, endDate);
+
+        HeavyHitters merged = new HeavyHitters(settings.depth(), settings.width(), settings.topK());
+        for (DailyUsageSketches day : days.subMap(start, true, endDate, true).values()) {
+            day.mergeInto(byCustomer ? merged : null, byCustomer ? null : merged, null);
+        }
+
+        CountMinSketch sketch = merged.sketch();
+        List<TopUsageReport.Entry> entries = new ArrayList<>();
+        for (Map.Entry<String, Long> top : merged.top(limit)) {
+            entries.add(TopUsageReport.Entry.builder()
+                .key(top.getKey())
+                .estimatedCost(FixedPoint.toDecimal(top.getValue(), FixedPoint.AMOUNT_SCALE))
+                .build());
+        }
+        return TopUsageReport.builder()
+            .dimension(dimension)
+            .startDate(start)
+            .endDate(endDate)
+            .totalCost(FixedPoint.toDecimal(sketch.total(), FixedPoint.AMOUNT_SCALE))
+            .errorBound(FixedPoint.toDecimal(sketch.total(), FixedPoint.AMOUNT_SCALE)
+                .multiply(BigDecimal.valueOf(sketch.epsilon()))
+                .setScale(FixedPoint.MONEY_SCALE, RoundingMode.UP))
+            .confidence(1 - sketch.delta())
+            .entries(entries)
+            .build();
+    }
+
+    /**
+     * Approximate distinct active customers per day and over the whole range
+     */
+    public DistinctCustomerReport getDistinctCustomers(LocalDate startDate, LocalDate endDate) {
+        LocalDate start = coveredStart(startDate, endDate);
+        HyperLogLog union = new HyperLogLog(settings.precision());
+        List<DistinctCustomerReport.DailyCount> daily = new ArrayList<>();
+        for (Map.Entry<LocalDate, DailyUsageSketches> day : days.subMap(start, true, endDate, true).entrySet()) {
+            day.getValue().mergeInto(null, null, union);
+            daily.add(DistinctCustomerReport.DailyCount.builder()
+                .usageDate(day.getKey())
+                .distinctCustomers(day.getValue().activeCustomers())
+                .build());
+        }
+        return DistinctCustomerReport.builder()
+            .startDate(start)
+            .endDate(endDate)
+            .distinctCustomers(union.estimate())
+            .relativeStandardError(union.relativeStandardError())
+            .daily(daily)
+            .build();
+    }
+
+    @Scheduled(cron = "${analytics.sketch.evict-schedule:0 5 0 * * ?}")
+    public void evictExpiredDays() {
+        days.headMap(oldestDay()).clear();
+    }
+
+    /**
+     * Adds the daily_usage_rollup rows of every retained day to that day's sketches, newest first
+     */
+    private void seed() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        int seeded = 0;
+        for (LocalDate date = today; !date.isBefore(oldestDay()); date = date.minusDays(1)) {
+            DailyUsageSketches day = day(date);
+            LocalDate seedDate = date;
+            try {
+                usageShards.scatter(shard -> {
+                    shard.jdbcTemplate().query(SEED_SQL, rs -> {
+                        day.add(rs.getObject(1, UUID.class), rs.getString(2),
+                            FixedPoint.toUnits(rs.getBigDecimal(3), FixedPoint.AMOUNT_SCALE));
+                    }, seedDate);
+                    return null;
+                });
+                seeded++;
+            } catch (RuntimeException e) {
+                log.warn("Could not seed usage sketches for {}: {}", date, e.getMessage());
+            }
+        }
+        log.info("Seeded usage sketches for {} days from daily_usage_rollup", seeded);
+    }
+
+    private DailyUsageSketches day(LocalDate date) {
+        return days.computeIfAbsent(date, d -> new DailyUsageSketches(settings));
+    }
+
+    private LocalDate oldestDay() {
+        return LocalDate.now(ZoneOffset.UTC).minusDays(retentionDays - 1L);
+    }
+
+    private LocalDate coveredStart(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("endDate is before startDate");
+        }
+        LocalDate oldest = oldestDay();
+        return startDate.isBefore(oldest) ? oldest : startDate;
+    }
+}
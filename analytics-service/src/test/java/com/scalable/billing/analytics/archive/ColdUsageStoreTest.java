@@ -0,0 +1,161 @@
+package com.scalable.billing.analytics.archive;
+
+import com.scalable.billing.common.dto.DailyUsageSummary;
+import com.scalable.billing.common.money.FixedPoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archives a seeded random month across several segments and checks the cold store's
+ * per-customer summary and daily cost against BigDecimal sums over the same rows.
+ */
+class ColdUsageStoreTest {
+
+    private static final long SEED = 2024;
+    private static final YearMonth MONTH = YearMonth.of(2025, 6);
+    private static final String[] RESOURCE_TYPES = {"API_CALLS", "STORAGE_GB", "COMPUTE_HOURS", "BANDWIDTH_GB"};
+    private static final int CUSTOMERS = 20;
+    private static final int ROWS_PER_CUSTOMER = 500;
+    // smaller than a customer's rows, so runs are split across segments
+    private static final int SEGMENT_ROWS = 3_000;
+
+    @TempDir
+    Path archiveDir;
+
+    @Test
+    void matchesBigDecimalSumsOverTheArchivedRows() throws IOException {
+        List<Row> rows = archive(MONTH, true);
+        ColdUsageStore store = new ColdUsageStore(archiveDir.toString());
+        LocalDate start = MONTH.atDay(1);
+        LocalDate end = MONTH.atEndOfMonth();
+
+        assertTrue(store.isArchived(MONTH));
+        for (UUID customer : rows.stream().map(Row::customerId).distinct().toList()) {
+            Map<String, BigDecimal[]> expected = summary(rows, customer, start, end);
+            List<DailyUsageSummary> actual = store.getDailyUsageSummary(customer, start, end);
+            assertEquals(expected.size(), actual.size());
+            for (DailyUsageSummary row : actual) {
+                BigDecimal[] sums = expected.get(row.getUsageDate() + "|" + row.getResourceType());
+                assertNotNull(sums, () -> "unexpected " + row);
+                assertEquals(0, sums[0].compareTo(row.getTotalQuantity()), () -> "quantity of " + row);
+                assertEquals(0, sums[1].compareTo(row.getTotalCost()), () -> "cost of " + row);
+                assertEquals(sums[2].longValueExact(), row.getEventCount(), () -> "events of " + row);
+            }
+        }
+
+        assertDailyCost(rows, store, start, end);
+        assertDailyCost(rows, store, MONTH.atDay(10), MONTH.atDay(12));
+    }
+
+    @Test
+    void servesOnlyCompletedMonths() throws IOException {
+        archive(MONTH, false);
+        ColdUsageStore store = new ColdUsageStore(archiveDir.toString());
+
+        assertFalse(store.isArchived(MONTH));
+        assertTrue(store.getDailyCost(MONTH.atDay(1), MONTH.atEndOfMonth()).isEmpty());
+
+        Files.createFile(archiveDir.resolve(MONTH.toString()).resolve(ColdUsageStore.COMPLETE_MARKER));
+        store.reload();
+        assertTrue(store.isArchived(MONTH));
+    }
+
+    private static void assertDailyCost(List<Row> rows, ColdUsageStore store, LocalDate start, LocalDate end) {
+        NavigableMap<LocalDate, BigDecimal> expected = new TreeMap<>();
+        for (Row row : rows) {
+            if (!row.day().isBefore(start) && !row.day().isAfter(end)) {
+                expected.merge(row.day(), row.quantity().multiply(row.unitPrice()), BigDecimal::add);
+            }
+        }
+        NavigableMap<LocalDate, BigDecimal> actual = store.getDailyCost(start, end);
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((day, cost) -> assertEquals(0, cost.compareTo(actual.get(day)), () -> "cost on " + day));
+    }
+
+    private static Map<String, BigDecimal[]> summary(List<Row> rows, UUID customer, LocalDate start, LocalDate end) {
+        Map<String, BigDecimal[]> totals = new HashMap<>();
+        for (Row row : rows) {
+            if (!row.customerId().equals(customer) || row.day().isBefore(start) || row.day().isAfter(end)) {
+                continue;
+            }
+            BigDecimal[] sums = totals.computeIfAbsent(row.day() + "|" + row.resourceType(),
+                k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO});
+            sums[0] = sums[0].add(row.quantity());
+            sums[1] = sums[1].add(row.quantity().multiply(row.unitPrice()));
+            sums[2] = sums[2].add(BigDecimal.ONE);
+        }
+        return totals;
+    }
+
+    /**
+     * Writes the month the way the archiver does: customers in PostgreSQL uuid order, each
+     * customer's rows by timestamp, a new segment whenever one fills up
+     */
+    private List<Row> archive(YearMonth month, boolean complete) throws IOException {
+        Path monthDir = Files.createDirectories(archiveDir.resolve(month.toString()));
+        SplittableRandom random = new SplittableRandom(SEED);
+        UUID[] customers = new UUID[CUSTOMERS];
+        for (int i = 0; i < customers.length; i++) {
+            customers[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        Arrays.sort(customers, UsageSegment::compareUnsigned);
+
+        long monthStart = ColdUsageStore.toMicros(month.atDay(1));
+        long monthEnd = ColdUsageStore.toMicros(month.plusMonths(1).atDay(1));
+        List<Row> rows = new ArrayList<>();
+        UsageSegmentWriter writer = new UsageSegmentWriter(SEGMENT_ROWS);
+        int segments = 0;
+        for (UUID customer : customers) {
+            long[] timestamps = random.longs(ROWS_PER_CUSTOMER, monthStart, monthEnd).sorted().toArray();
+            for (long timestamp : timestamps) {
+                String resourceType = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)];
+                // credits and refunds arrive as negative quantities
+                long quantity = random.nextLong(-1_000_000L, 1_000_000L);
+                long price = random.nextLong(0, 100_000L);
+                rows.add(new Row(customer, resourceType, timestamp,
+                    BigDecimal.valueOf(quantity, FixedPoint.QUANTITY_SCALE), BigDecimal.valueOf(price, FixedPoint.PRICE_SCALE)));
+                writer.add(customer, resourceType, timestamp, quantity, quantity * price);
+                if (writer.isFull()) {
+                    writer.writeTo(monthDir.resolve(String.format("segment-%04d%s", segments++, ColdUsageStore.SEGMENT_SUFFIX)));
+                    writer = new UsageSegmentWriter(SEGMENT_ROWS);
+                }
+            }
+        }
+        if (!writer.isEmpty()) {
+            writer.writeTo(monthDir.resolve(String.format("segment-%04d%s", segments, ColdUsageStore.SEGMENT_SUFFIX)));
+        }
+        if (complete) {
+            Files.createFile(monthDir.resolve(ColdUsageStore.COMPLETE_MARKER));
+        }
+        return rows;
+    }
+
+    private record Row(UUID customerId, String resourceType, long timestampMicros, BigDecimal quantity,
+                       BigDecimal unitPrice) {
+
+        LocalDate day() {
+            return LocalDate.ofEpochDay(Math.floorDiv(timestampMicros, 86_400_000_000L));
+        }
+    }
+}
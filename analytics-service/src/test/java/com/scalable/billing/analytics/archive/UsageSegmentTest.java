@@ -0,0 +1,161 @@
+package com.scalable.billing.analytics.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes segments with UsageSegmentWriter and reads them back through the mapping: the
+ * resource dictionary, zigzag columns, the customer directory and the min/max range check.
+ */
+class UsageSegmentTest {
+
+    private static final long DAY = 86_400_000_000L;
+    private static final long T0 = 1_748_736_000_000_000L; // 2025-06-01T00:00:00Z
+
+    private static final UUID LOW = new UUID(0x0000_0000_0000_0001L, 5);
+    private static final UUID MID = new UUID(0x7FFF_FFFF_FFFF_FFFFL, -1);
+    // sorts last in PostgreSQL uuid order although UUID.compareTo puts it first
+    private static final UUID HIGH = new UUID(0x8000_0000_0000_0000L, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void emptySegmentMatchesNothing() throws IOException {
+        UsageSegment segment = write(new UsageSegmentWriter(4));
+
+        assertEquals(0, segment.rowCount());
+        assertFalse(segment.overlaps(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertFalse(segment.mayContain(LOW));
+        assertEquals(List.of(), scan(segment, LOW, Long.MIN_VALUE, Long.MAX_VALUE));
+        long[] totals = new long[1];
+        long[] rows = new long[1];
+        segment.sumAmountsByDay(T0, T0 + DAY, T0 / DAY, totals, rows);
+        assertArrayEquals(new long[] {0}, rows);
+    }
+
+    @Test
+    void singleCustomerRoundTrips() throws IOException {
+        UsageSegmentWriter writer = new UsageSegmentWriter(8);
+        writer.add(MID, "API_CALLS", T0, 1_000_000, 25);
+        writer.add(MID, "STORAGE_GB", T0 + 1, 2, 3);
+        writer.add(MID, "API_CALLS", T0 + 1, 7, 11);
+        writer.add(MID, "API_CALLS", T0 + DAY + 5, 0, 0);
+        UsageSegment segment = write(writer);
+
+        assertEquals(4, segment.rowCount());
+        assertEquals(T0, segment.minTimestamp());
+        assertEquals(T0 + DAY + 5, segment.maxTimestamp());
+        assertTrue(segment.mayContain(MID));
+        assertEquals(List.of(
+            new Row("API_CALLS", T0, 1_000_000, 25),
+            new Row("STORAGE_GB", T0 + 1, 2, 3),
+            new Row("API_CALLS", T0 + 1, 7, 11),
+            new Row("API_CALLS", T0 + DAY + 5, 0, 0)
+        ), scan(segment, MID, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void negativeAndExtremeValuesSurviveZigzag() throws IOException {
+        long before1970 = -3 * DAY - 1;
+        UsageSegmentWriter writer = new UsageSegmentWriter(8);
+        writer.add(LOW, "CREDIT", before1970, -1, Long.MIN_VALUE);
+        writer.add(LOW, "CREDIT", before1970 + 1, Long.MAX_VALUE, -64);
+        writer.add(MID, "REFUND", T0, Long.MIN_VALUE, Long.MAX_VALUE);
+        writer.add(MID, "REFUND", T0, -63, 63);
+        UsageSegment segment = write(writer);
+
+        assertEquals(before1970, segment.minTimestamp());
+        assertEquals(List.of(
+            new Row("CREDIT", before1970, -1, Long.MIN_VALUE),
+            new Row("CREDIT", before1970 + 1, Long.MAX_VALUE, -64)
+        ), scan(segment, LOW, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(List.of(
+            new Row("REFUND", T0, Long.MIN_VALUE, Long.MAX_VALUE),
+            new Row("REFUND", T0, -63, 63)
+        ), scan(segment, MID, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void customerDirectoryUsesUnsignedUuidOrder() throws IOException {
+        UsageSegmentWriter writer = new UsageSegmentWriter(8);
+        writer.add(LOW, "API_CALLS", T0, 1, 1);
+        writer.add(MID, "API_CALLS", T0 + 1, 2, 2);
+        writer.add(MID, "STORAGE_GB", T0 + 2, 3, 3);
+        writer.add(HIGH, "STORAGE_GB", T0, 4, 4);
+        UsageSegment segment = write(writer);
+
+        assertTrue(segment.mayContain(LOW));
+        assertTrue(segment.mayContain(MID));
+        assertTrue(segment.mayContain(HIGH));
+        assertFalse(segment.mayContain(new UUID(0x0000_0000_0000_0001L, 6)));
+        assertFalse(segment.mayContain(new UUID(-1, -1)));
+        assertEquals(List.of(new Row("API_CALLS", T0, 1, 1)), scan(segment, LOW, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(List.of(new Row("STORAGE_GB", T0, 4, 4)), scan(segment, HIGH, Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(2, scan(segment, MID, Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void minMaxRangeSkipsAndBoundsScans() throws IOException {
+        UsageSegmentWriter writer = new UsageSegmentWriter(8);
+        writer.add(LOW, "API_CALLS", T0, 1, 10);
+        writer.add(LOW, "API_CALLS", T0 + DAY, 2, 20);
+        writer.add(MID, "API_CALLS", T0 + 2 * DAY - 1, 3, 30);
+        UsageSegment segment = write(writer);
+
+        assertFalse(segment.overlaps(T0 - DAY, T0), "range ends before the first row");
+        assertFalse(segment.overlaps(T0 + 2 * DAY, T0 + 3 * DAY), "range starts after the last row");
+        assertTrue(segment.overlaps(T0 + 2 * DAY - 1, T0 + 2 * DAY));
+        assertEquals(List.of(), scan(segment, LOW, T0 - DAY, T0));
+        assertEquals(List.of(new Row("API_CALLS", T0 + DAY, 2, 20)), scan(segment, LOW, T0 + 1, T0 + DAY + 1));
+
+        long[] totals = new long[3];
+        long[] rows = new long[3];
+        segment.sumAmountsByDay(T0 - DAY, T0 + DAY, T0 / DAY - 1, totals, rows);
+        assertArrayEquals(new long[] {0, 10, 0}, totals);
+        assertArrayEquals(new long[] {0, 1, 0}, rows);
+
+        segment.sumAmountsByDay(T0 + 3 * DAY, T0 + 4 * DAY, T0 / DAY - 1, totals, rows);
+        assertArrayEquals(new long[] {0, 1, 0}, rows, "skipped by the min/max check");
+    }
+
+    @Test
+    void writerRejectsUnorderedRows() {
+        UsageSegmentWriter writer = new UsageSegmentWriter(2);
+        writer.add(HIGH, "API_CALLS", T0, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> writer.add(LOW, "API_CALLS", T0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> writer.add(HIGH, "API_CALLS", T0 - 1, 1, 1));
+
+        writer.add(HIGH, "API_CALLS", T0, 1, 1);
+        assertTrue(writer.isFull());
+        assertThrows(IllegalStateException.class, () -> writer.add(HIGH, "API_CALLS", T0, 1, 1));
+    }
+
+    private UsageSegment write(UsageSegmentWriter writer) throws IOException {
+        Path file = dir.resolve("segment-" + UUID.randomUUID() + ColdUsageStore.SEGMENT_SUFFIX);
+        writer.writeTo(file);
+        return UsageSegment.open(file);
+    }
+
+    private static List<Row> scan(UsageSegment segment, UUID customerId, long fromMicros, long toMicros) {
+        List<Row> rows = new ArrayList<>();
+        segment.scanCustomer(customerId, fromMicros, toMicros,
+            (resourceType, timestamp, quantity, amount) -> rows.add(new Row(resourceType, timestamp, quantity, amount)));
+        return rows;
+    }
+
+    private record Row(String resourceType, long timestampMicros, long quantityUnits, long amountUnits) {
+    }
+}
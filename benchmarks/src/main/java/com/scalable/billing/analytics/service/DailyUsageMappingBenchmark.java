@@ -0,0 +1,73 @@
+package com.scalable.billing.analytics.service;
+
+import com.scalable.billing.benchmarks.Fixtures;
+import com.scalable.billing.common.dto.DailyUsageSummary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Row mapping of AnalyticsService.getDailyUsageSummary for a month and a year of rollup rows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DailyUsageMappingBenchmark {
+
+    /**
+     * Days in the requested range; each day has one row per resource type
+     */
+    @Param({"31", "365"})
+    private int days;
+
+    private List<Object[]> rows;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(11);
+        UUID customerId = UUID.randomUUID();
+        LocalDate end = LocalDate.of(2024, 12, 31);
+        rows = new ArrayList<>(days * Fixtures.RESOURCE_TYPES.length);
+        for (int d = 0; d < days; d++) {
+            Date usageDate = Date.valueOf(end.minusDays(d));
+            for (String resourceType : Fixtures.RESOURCE_TYPES) {
+                rows.add(new Object[] {
+                    customerId,
+                    usageDate,
+                    resourceType,
+                    BigDecimal.valueOf(random.nextLong(1, 100_000_000L), 4),
+                    BigDecimal.valueOf(random.nextLong(1, 1_000_000_000L), 8),
+                    random.nextLong(1, 100_000)
+                });
+            }
+        }
+    }
+
+    @Benchmark
+    public List<DailyUsageSummary> mapRows() {
+        return rows.stream()
+            .map(AnalyticsService::toDailyUsageSummary)
+            .collect(Collectors.toList());
+    }
+}
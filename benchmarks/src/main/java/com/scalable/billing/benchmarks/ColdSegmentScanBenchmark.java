@@ -0,0 +1,186 @@
+package com.scalable.billing.benchmarks;
+
+import com.scalable.billing.analytics.archive.ColdUsageStore;
+import com.scalable.billing.analytics.archive.UsageSegmentWriter;
+import com.scalable.billing.common.money.FixedPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Queries over one archived month: the memory-mapped column segments behind ColdUsageStore
+ * versus aggregating the same rows held as heap objects (a stand-in for row-at-a-time reads).
+ *
+ * Setup writes a synthetic month of usage for a set of customers into a temp archive
+ * directory and prints the encoded size per row. The cold store's results are checked
+ * against BigDecimal sums by analytics-service's ColdUsageStoreTest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColdSegmentScanBenchmark {
+
+    private static final YearMonth MONTH = YearMonth.of(2025, 6);
+    private static final String[] RESOURCE_TYPES = {"API_CALLS", "STORAGE_GB", "COMPUTE_HOURS", "BANDWIDTH_GB"};
+
+    @Param({"2000000"})
+    private int rows;
+
+    @Param({"1000"})
+    private int customers;
+
+    private Path archiveDir;
+    private ColdUsageStore store;
+    private List<Row> heapRows;
+    private UUID queriedCustomer;
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        archiveDir = Files.createTempDirectory("usage-archive");
+        Path monthDir = Files.createDirectories(archiveDir.resolve(MONTH.toString()));
+
+        SplittableRandom random = new SplittableRandom(2024);
+        UUID[] customerIds = new UUID[customers];
+        for (int i = 0; i < customers; i++) {
+            customerIds[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        // PostgreSQL uuid order, as the archiver reads it
+        Arrays.sort(customerIds, Comparator
+            .comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned));
+
+        long monthStart = MONTH.atDay(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) * 1_000_000L;
+        long monthMicros = MONTH.lengthOfMonth() * 86_400_000_000L;
+        int perCustomer = rows / customers;
+        heapRows = new ArrayList<>(perCustomer * customers);
+        UsageSegmentWriter writer = new UsageSegmentWriter(500_000);
+        int segments = 0;
+        for (UUID customer : customerIds) {
+            long[] timestamps = random.longs(perCustomer, monthStart, monthStart + monthMicros).sorted().toArray();
+            for (long timestamp : timestamps) {
+                String resourceType = RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)];
+                long quantity = random.nextLong(1, 1_000_000L);
+                long price = random.nextLong(0, 100_000L);
+                heapRows.add(new Row(customer, resourceType, timestamp,
+                    BigDecimal.valueOf(quantity, FixedPoint.QUANTITY_SCALE), BigDecimal.valueOf(price, FixedPoint.PRICE_SCALE)));
+                writer.add(customer, resourceType, timestamp, quantity, quantity * price);
+                if (writer.isFull()) {
+                    writer.writeTo(monthDir.resolve(String.format("segment-%04d.useg", segments++)));
+                    writer = new UsageSegmentWriter(500_000);
+                }
+            }
+        }
+        if (!writer.isEmpty()) {
+            writer.writeTo(monthDir.resolve(String.format("segment-%04d.useg", segments)));
+        }
+        Files.createFile(monthDir.resolve("_COMPLETE"));
+        store = new ColdUsageStore(archiveDir.toString());
+
+        long bytes;
+        try (Stream<Path> files = Files.list(monthDir)) {
+            bytes = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+        System.out.printf("%n%d rows archived in %d bytes (%.1f bytes/row)%n", heapRows.size(), bytes,
+            (double) bytes / heapRows.size());
+
+        queriedCustomer = customerIds[customers / 2];
+        startDate = MONTH.atDay(1);
+        endDate = MONTH.atEndOfMonth();
+    }
+
+    @Benchmark
+    public Object coldCustomerSummary() {
+        return store.getDailyUsageSummary(queriedCustomer, startDate, endDate);
+    }
+
+    @Benchmark
+    public Object heapCustomerSummary() {
+        return heapSummary(queriedCustomer);
+    }
+
+    @Benchmark
+    public Object coldDailyCost() {
+        return store.getDailyCost(startDate, endDate);
+    }
+
+    @Benchmark
+    public Object heapDailyCost() {
+        return heapDailyCostTotals();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        store = null;
+        try (Stream<Path> files = Files.walk(archiveDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private Map<String, BigDecimal[]> heapSummary(UUID customer) {
+        Map<String, BigDecimal[]> totals = new HashMap<>();
+        for (Row row : heapRows) {
+            if (!row.customerId().equals(customer)) {
+                continue;
+            }
+            BigDecimal[] sums = totals.computeIfAbsent(row.day() + "|" + row.resourceType(),
+                k -> new BigDecimal[] {BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO});
+            sums[0] = sums[0].add(row.quantity());
+            sums[1] = sums[1].add(row.quantity().multiply(row.unitPrice()));
+            sums[2] = sums[2].add(BigDecimal.ONE);
+        }
+        return totals;
+    }
+
+    private NavigableMap<LocalDate, BigDecimal> heapDailyCostTotals() {
+        NavigableMap<LocalDate, BigDecimal> costs = new TreeMap<>();
+        for (Row row : heapRows) {
+            costs.merge(row.day(), row.quantity().multiply(row.unitPrice()), BigDecimal::add);
+        }
+        return costs;
+    }
+
+    private record Row(UUID customerId, String resourceType, long timestampMicros, BigDecimal quantity,
+                       BigDecimal unitPrice) {
+
+        LocalDate day() {
+            return LocalDate.ofEpochDay(Math.floorDiv(timestampMicros, 86_400_000_000L));
+        }
+    }
+}
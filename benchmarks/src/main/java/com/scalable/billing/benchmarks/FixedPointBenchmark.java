@@ -0,0 +1,74 @@
+package com.scalable.billing.benchmarks;
+
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.money.FixedPointSum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BigDecimal versus FixedPoint for summing line amounts (quantity * unit price).
+ * That both give the same totals is checked by common's FixedPointTest.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FixedPointBenchmark {
+
+    @Param({"1000000"})
+    private int lines;
+
+    private BigDecimal[] quantities;
+    private BigDecimal[] prices;
+    private long[] quantityUnits;
+    private long[] priceUnits;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(2024);
+
+        quantities = new BigDecimal[lines];
+        prices = new BigDecimal[lines];
+        quantityUnits = new long[lines];
+        priceUnits = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            quantityUnits[i] = random.nextLong(1, 10_000_000L);
+            priceUnits[i] = random.nextLong(0, 1_000_000L);
+            quantities[i] = BigDecimal.valueOf(quantityUnits[i], FixedPoint.QUANTITY_SCALE);
+            prices[i] = BigDecimal.valueOf(priceUnits[i], FixedPoint.PRICE_SCALE);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal bigDecimalLineTotal() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < lines; i++) {
+            total = total.add(quantities[i].multiply(prices[i]));
+        }
+        return total.setScale(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING);
+    }
+
+    @Benchmark
+    public BigDecimal fixedPointLineTotal() {
+        FixedPointSum total = new FixedPointSum(FixedPoint.AMOUNT_SCALE);
+        for (int i = 0; i < lines; i++) {
+            total.addProduct(quantityUnits[i], priceUnits[i]);
+        }
+        return total.toDecimal(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING);
+    }
+}
@@ -0,0 +1,86 @@
+package com.scalable.billing.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.scalable.billing.common.dto.BillingRecordDTO;
+import com.scalable.billing.common.event.BillingEvent;
+import com.scalable.billing.common.event.UsageEvent;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Deterministic test data shared by the benchmarks
+ */
+public final class Fixtures {
+
+    public static final String[] RESOURCE_TYPES = {"API_CALLS", "STORAGE_GB", "COMPUTE_HOURS", "BANDWIDTH_GB", "DB_QUERIES"};
+
+    private Fixtures() {
+        throw new AssertionError("Cannot instantiate fixtures class");
+    }
+
+    /**
+     * ObjectMapper configured like the services' Spring Boot auto-configured one
+     */
+    public static ObjectMapper objectMapper() {
+        return new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    public static List<UUID> customerIds(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return ids;
+    }
+
+    public static UsageEvent usageEvent(SplittableRandom random, UUID customerId, Instant timestamp) {
+        return UsageEvent.builder()
+            .eventId(UUID.randomUUID().toString())
+            .customerId(customerId)
+            .resourceType(RESOURCE_TYPES[random.nextInt(RESOURCE_TYPES.length)])
+            .quantity(BigDecimal.valueOf(random.nextInt(1, 10_000_000), 4))
+            .unit("unit")
+            .unitPrice(BigDecimal.valueOf(random.nextInt(1, 50_000), 4))
+            .timestamp(timestamp)
+            .build();
+    }
+
+    public static BillingEvent billingEvent(UUID customerId) {
+        return BillingEvent.builder()
+            .eventId(UUID.randomUUID().toString())
+            .billingId(UUID.randomUUID())
+            .customerId(customerId)
+            .billingPeriodStart(LocalDate.of(2024, 1, 1))
+            .billingPeriodEnd(LocalDate.of(2024, 1, 31))
+            .totalAmount(new BigDecimal("12345.67"))
+            .status("CALCULATED")
+            .invoiceNumber("INV-1A2B3C4D-1706745600000")
+            .timestamp(Instant.parse("2024-02-01T01:00:00Z"))
+            .build();
+    }
+
+    public static BillingRecordDTO billingRecordDTO(UUID customerId) {
+        return BillingRecordDTO.builder()
+            .id(UUID.randomUUID())
+            .customerId(customerId)
+            .customerName("Acme Corp")
+            .billingPeriodStart(LocalDate.of(2024, 1, 1))
+            .billingPeriodEnd(LocalDate.of(2024, 1, 31))
+            .totalAmount(new BigDecimal("12345.67"))
+            .status("PENDING")
+            .invoiceNumber("INV-1A2B3C4D-1706745600000")
+            .dueDate(LocalDate.of(2024, 3, 1))
+            .build();
+    }
+}
@@ -0,0 +1,97 @@
+package com.scalable.billing.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.dto.BillingRecordDTO;
+import com.scalable.billing.common.event.BillingEvent;
+import com.scalable.billing.common.event.UsageEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization of the Kafka events and the billing API DTO
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+
+    private UsageEvent usageEvent;
+    private BillingEvent billingEvent;
+    private BillingRecordDTO billingRecord;
+
+    private byte[] usageEventJson;
+    private byte[] billingEventJson;
+    private byte[] billingRecordJson;
+
+    private ObjectWriter writer;
+    private ObjectReader usageEventReader;
+    private ObjectReader billingEventReader;
+    private ObjectReader billingRecordReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = Fixtures.objectMapper();
+        UUID customerId = UUID.fromString("7b1e4c2a-9f3d-4e8b-a6c5-2d1f0e9b8a7c");
+        usageEvent = Fixtures.usageEvent(new SplittableRandom(42), customerId, Instant.parse("2024-01-15T10:15:30.123456Z"));
+        billingEvent = Fixtures.billingEvent(customerId);
+        billingRecord = Fixtures.billingRecordDTO(customerId);
+
+        writer = mapper.writer();
+        usageEventReader = mapper.readerFor(UsageEvent.class);
+        billingEventReader = mapper.readerFor(BillingEvent.class);
+        billingRecordReader = mapper.readerFor(BillingRecordDTO.class);
+
+        usageEventJson = writer.writeValueAsBytes(usageEvent);
+        billingEventJson = writer.writeValueAsBytes(billingEvent);
+        billingRecordJson = writer.writeValueAsBytes(billingRecord);
+    }
+
+    @Benchmark
+    public byte[] serializeUsageEvent() throws IOException {
+        return writer.writeValueAsBytes(usageEvent);
+    }
+
+    @Benchmark
+    public UsageEvent deserializeUsageEvent() throws IOException {
+        return usageEventReader.readValue(usageEventJson);
+    }
+
+    @Benchmark
+    public byte[] serializeBillingEvent() throws IOException {
+        return writer.writeValueAsBytes(billingEvent);
+    }
+
+    @Benchmark
+    public BillingEvent deserializeBillingEvent() throws IOException {
+        return billingEventReader.readValue(billingEventJson);
+    }
+
+    @Benchmark
+    public byte[] serializeBillingRecordDTO() throws IOException {
+        return writer.writeValueAsBytes(billingRecord);
+    }
+
+    @Benchmark
+    public BillingRecordDTO deserializeBillingRecordDTO() throws IOException {
+        return billingRecordReader.readValue(billingRecordJson);
+    }
+}
@@ -0,0 +1,97 @@
+package com.scalable.billing.benchmarks;
+
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.common.serialization.CompactEventDeserializer;
+import com.scalable.billing.common.serialization.CompactEventSerializer;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.scalable.billing.common.constants.KafkaTopics.USAGE_EVENTS;
+
+/**
+ * Usage event encode and decode rate (events/s) for the JSON and compact Kafka wire formats,
+ * configured as the services configure them. Average payload bytes per event are printed at
+ * the end of each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaWireFormatBenchmark {
+
+    private static final int EVENTS = 1024;
+
+    @Param({"JSON", "BINARY"})
+    private String format;
+
+    private CompactEventSerializer serializer;
+    private CompactEventDeserializer deserializer;
+    private UsageEvent[] events;
+    private byte[][] payloads;
+    private RecordHeaders[] headers;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        serializer = new CompactEventSerializer();
+        serializer.configure(Map.of(CompactEventSerializer.FORMAT_CONFIG, format), false);
+        deserializer = new CompactEventDeserializer();
+        deserializer.configure(Map.of(
+            JsonDeserializer.TRUSTED_PACKAGES, "com.scalable.billing.common.event",
+            JsonDeserializer.VALUE_DEFAULT_TYPE, UsageEvent.class.getName()), false);
+
+        SplittableRandom random = new SplittableRandom(5);
+        List<UUID> customers = Fixtures.customerIds(100, 5);
+        Instant start = Instant.parse("2024-01-15T00:00:00Z");
+        events = new UsageEvent[EVENTS];
+        payloads = new byte[EVENTS][];
+        headers = new RecordHeaders[EVENTS];
+        for (int i = 0; i < EVENTS; i++) {
+            events[i] = Fixtures.usageEvent(random, customers.get(i % customers.size()), start.plusMillis(i * 37L));
+            headers[i] = new RecordHeaders();
+            payloads[i] = serializer.serialize(USAGE_EVENTS, headers[i], events[i]);
+        }
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        int i = next++ & (EVENTS - 1);
+        return serializer.serialize(USAGE_EVENTS, new RecordHeaders(), events[i]);
+    }
+
+    @Benchmark
+    public Object decode() {
+        int i = next++ & (EVENTS - 1);
+        return deserializer.deserialize(USAGE_EVENTS, headers[i], payloads[i]);
+    }
+
+    @TearDown
+    public void reportSize() {
+        long bytes = 0;
+        for (byte[] payload : payloads) {
+            bytes += payload.length;
+        }
+        System.out.printf("%n%s usage event payload: %.1f bytes/event%n", format, (double) bytes / EVENTS);
+    }
+}
@@ -0,0 +1,134 @@
+package com.scalable.billing.benchmarks;
+
+import com.scalable.billing.service.repository.UsageDataRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of one usage listing page at page 1 and page 10,000: the offset query plus the
+ * COUNT(*) a Spring Data Page issues, versus the keyset query behind the cursor endpoints
+ * (the SQL is taken from UsageDataRepository).
+ *
+ * Needs PostgreSQL initialised with scripts/init-db.sql (see UsageIngestionBenchmark for the
+ * connection properties). Seeds enough JMH_PAGINATION rows for the first customer into the
+ * 2026-01 to 2026-03 partitions and removes them after the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaginationBenchmark {
+
+    private static final String RESOURCE_TYPE = "JMH_PAGINATION";
+    private static final Timestamp START_TIME = Timestamp.valueOf("2026-01-01 00:00:00");
+    private static final Timestamp END_TIME = Timestamp.valueOf("2026-04-01 00:00:00");
+
+    private static final String OFFSET_PAGE_SQL = "SELECT * FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC OFFSET :offset LIMIT :limit";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime";
+    private static final String CURSOR_SQL = "SELECT timestamp, id FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime ORDER BY timestamp DESC, id DESC OFFSET :offset LIMIT 1";
+    private static final String SEED_SQL = "INSERT INTO usage_data (event_id, customer_id, resource_type, quantity, " +
+        "unit, unit_price, timestamp) " +
+        "SELECT 'jmh-page-' || g, :customerId, '" + RESOURCE_TYPE + "', 1, 'unit', 0.0100, " +
+        "TIMESTAMP '2026-01-01' + g * INTERVAL '30 seconds' FROM generate_series(1, :rows) g";
+
+    /**
+     * 1-based page number
+     */
+    @Param({"1", "10000"})
+    private int page;
+
+    @Param({"20"})
+    private int size;
+
+    private HikariDataSource dataSource;
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private MapSqlParameterSource offsetParams;
+    private MapSqlParameterSource keysetParams;
+    private String keysetSql;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/billing_db"));
+        dataSource.setUsername(System.getProperty("bench.jdbc.username", "billing_user"));
+        dataSource.setPassword(System.getProperty("bench.jdbc.password", "billing_pass"));
+        dataSource.setMaximumPoolSize(2);
+        jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+
+        List<UUID> customers = jdbcTemplate.queryForList("SELECT id FROM customers ORDER BY id LIMIT 1",
+            Map.of(), UUID.class);
+        if (customers.isEmpty()) {
+            throw new IllegalStateException("No customers found; initialise the database with scripts/init-db.sql");
+        }
+        MapSqlParameterSource range = new MapSqlParameterSource()
+            .addValue("customerId", customers.get(0))
+            .addValue("startTime", START_TIME)
+            .addValue("endTime", END_TIME);
+
+        long needed = (long) page * size;
+        Long existing = jdbcTemplate.queryForObject(COUNT_SQL, range, Long.class);
+        if (existing == null || existing < needed) {
+            jdbcTemplate.update(SEED_SQL, new MapSqlParameterSource(range.getValues()).addValue("rows", needed));
+            jdbcTemplate.getJdbcTemplate().execute("ANALYZE usage_data");
+        }
+
+        int offset = (page - 1) * size;
+        offsetParams = new MapSqlParameterSource(range.getValues())
+            .addValue("offset", offset)
+            .addValue("limit", size);
+        keysetParams = new MapSqlParameterSource(range.getValues()).addValue("limit", size);
+        if (page == 1) {
+            keysetSql = UsageDataRepository.KEYSET_FIRST_PAGE_SQL;
+        } else {
+            // The cursor a client would hold: the last row of the previous page
+            Map<String, Object> last = jdbcTemplate.queryForMap(CURSOR_SQL,
+                new MapSqlParameterSource(range.getValues()).addValue("offset", offset - 1));
+            keysetParams.addValue("afterTimestamp", last.get("timestamp")).addValue("afterId", last.get("id"));
+            keysetSql = UsageDataRepository.KEYSET_NEXT_PAGE_SQL;
+        }
+    }
+
+    @Benchmark
+    public Object offsetPage() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(OFFSET_PAGE_SQL, offsetParams);
+        Long total = jdbcTemplate.queryForObject(COUNT_SQL, offsetParams, Long.class);
+        return total + rows.size();
+    }
+
+    @Benchmark
+    public Object keysetPage() {
+        return jdbcTemplate.queryForList(keysetSql, keysetParams);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() {
+        jdbcTemplate.update("DELETE FROM usage_data WHERE resource_type = :resourceType",
+            Map.of("resourceType", RESOURCE_TYPE));
+        dataSource.close();
+    }
+}
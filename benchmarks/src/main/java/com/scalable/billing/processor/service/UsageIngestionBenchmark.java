@@ -0,0 +1,154 @@
+package com.scalable.billing.processor.service;
+
+import com.scalable.billing.benchmarks.Fixtures;
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.processor.dedup.UsageEventDeduplicator;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end UsageIngestionService.processUsageEvents (stage + merge into usage_data and
+ * daily_usage_rollup) against a real PostgreSQL initialised with scripts/init-db.sql.
+ *
+ * Connection settings come from -Dbench.jdbc.url / bench.jdbc.username / bench.jdbc.password
+ * (defaults match docker-compose). The current month needs a usage_data partition. Rows
+ * are written with resource_type JMH_BENCH and removed after the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UsageIngestionBenchmark {
+
+    private static final String RESOURCE_TYPE = "JMH_BENCH";
+
+    @Param({"COPY", "BATCH"})
+    private String mode;
+
+    /**
+     * Events per Kafka poll handed to processUsageEvents
+     */
+    @Param({"500"})
+    private int events;
+
+    private AnnotationConfigApplicationContext context;
+    private UsageIngestionService ingestionService;
+    private JdbcTemplate jdbcTemplate;
+    private List<UUID> customerIds;
+    private SplittableRandom random;
+    private List<UsageEvent> batch;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+            "usage.ingestion.mode", mode,
+            "usage.ingestion.batch-size", "50",
+            "usage.dedup.enabled", "false",
+            "usage.dedup.redis.enabled", "false")));
+        context.register(IngestionContext.class);
+        context.refresh();
+
+        ingestionService = context.getBean(UsageIngestionService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        customerIds = jdbcTemplate.queryForList("SELECT id FROM customers", UUID.class);
+        if (customerIds.isEmpty()) {
+            throw new IllegalStateException("No customers found; initialise the database with scripts/init-db.sql");
+        }
+        random = new SplittableRandom(3);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextBatch() {
+        Instant now = Instant.now();
+        batch = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            UsageEvent event = Fixtures.usageEvent(random, customerIds.get(random.nextInt(customerIds.size())), now);
+            event.setResourceType(RESOURCE_TYPE);
+            batch.add(event);
+        }
+    }
+
+    @Benchmark
+    public void processUsageEvents() {
+        ingestionService.processUsageEvents(batch);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() {
+        jdbcTemplate.update("DELETE FROM usage_data WHERE resource_type = ?", RESOURCE_TYPE);
+        jdbcTemplate.update("DELETE FROM daily_usage_rollup WHERE resource_type = ?", RESOURCE_TYPE);
+        context.close();
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @Import({UsageIngestionService.class, UsageCopyWriter.class, UsageEventDeduplicator.class})
+    static class IngestionContext {
+
+        @Bean
+        static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean(destroyMethod = "close")
+        HikariDataSource dataSource() {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5432/billing_db"));
+            dataSource.setUsername(System.getProperty("bench.jdbc.username", "billing_user"));
+            dataSource.setPassword(System.getProperty("bench.jdbc.password", "billing_pass"));
+            dataSource.setMaximumPoolSize(2);
+            return dataSource;
+        }
+
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
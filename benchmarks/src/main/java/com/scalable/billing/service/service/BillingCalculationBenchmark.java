@@ -0,0 +1,81 @@
+package com.scalable.billing.service.service;
+
+import com.scalable.billing.benchmarks.Fixtures;
+import com.scalable.billing.common.dto.BillingRecordDTO;
+import com.scalable.billing.service.entity.BillingRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU side of BillingService.calculateBilling and getBillingRecords:
+ * the per-resource cost reduce and the entity to DTO mapping.
+ * Lives in the service package to reach the package-private helpers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BillingCalculationBenchmark {
+
+    /**
+     * Rows per calculateBillingByResource result; 5 matches the resource types in use today
+     */
+    @Param({"5", "50"})
+    private int resources;
+
+    private List<Object[]> resourceCosts;
+    private BillingRecord billingRecord;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(7);
+        resourceCosts = new ArrayList<>(resources);
+        for (int i = 0; i < resources; i++) {
+            resourceCosts.add(new Object[] {
+                Fixtures.RESOURCE_TYPES[i % Fixtures.RESOURCE_TYPES.length],
+                BigDecimal.valueOf(random.nextLong(1, 1_000_000_000L), 8)
+            });
+        }
+
+        UUID customerId = UUID.randomUUID();
+        billingRecord = BillingRecord.builder()
+            .id(UUID.randomUUID())
+            .customerId(customerId)
+            .billingPeriodStart(LocalDate.of(2024, 1, 1))
+            .billingPeriodEnd(LocalDate.of(2024, 1, 31))
+            .totalAmount(new BigDecimal("12345.67"))
+            .status("PENDING")
+            .invoiceNumber("INV-1A2B3C4D-1706745600000")
+            .dueDate(LocalDate.of(2024, 3, 1))
+            .build();
+    }
+
+    @Benchmark
+    public long sumResourceCosts() {
+        return BillingService.sumResourceCosts(resourceCosts).units();
+    }
+
+    @Benchmark
+    public BillingRecordDTO mapToDTO() {
+        return BillingService.mapToDTO(billingRecord, "Acme Corp");
+    }
+}
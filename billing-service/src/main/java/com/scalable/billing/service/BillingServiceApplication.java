@@ -1,13 +1,19 @@
 package com.scalable.billing.service;
 
+import com.scalable.billing.common.replica.ReadReplicaConfig;
+import com.scalable.billing.common.shard.UsageShardConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = {
     "com.scalable.billing.service",
     "com.scalable.billing.common"
 })
+@Import({ReadReplicaConfig.class, UsageShardConfig.class})
+@EnableAsync
 @EnableScheduling
 public class BillingServiceApplication {
 
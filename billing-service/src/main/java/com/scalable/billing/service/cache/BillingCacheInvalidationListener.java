@@ -0,0 +1,51 @@
+package com.scalable.billing.service.cache;
+
+import com.scalable.billing.common.cache.TwoLevelCacheManager;
+import com.scalable.billing.common.constants.CacheNames;
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.event.BillingEvent;
+import com.scalable.billing.common.replica.ReadYourWrites;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Drops a customer's cached billing pages once its billing event is published.
+ * Every replica consumes BILLING_EVENTS in its own group so each one clears its L1;
+ * the L2 delete is repeated per replica but is a single idempotent DEL per customer.
+ * The primary's position is noted for those customers first (ReadYourWrites), so the reads
+ * refilling the cache skip replicas that have not replayed the billing record.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BillingCacheInvalidationListener {
+
+    private final TwoLevelCacheManager cacheManager;
+    private final ReadYourWrites readYourWrites;
+
+    @KafkaListener(
+        topics = KafkaTopics.BILLING_EVENTS,
+        groupId = "${spring.application.name}-cache-${random.uuid}",
+        properties = "auto.offset.reset=latest"
+    )
+    public void onBillingEvents(List<BillingEvent> events) {
+        Set<UUID> customerIds = new HashSet<>();
+        Set<String> customers = new HashSet<>();
+        for (BillingEvent event : events) {
+            if (event.getCustomerId() != null) {
+                customerIds.add(event.getCustomerId());
+                customers.add(event.getCustomerId().toString());
+            }
+        }
+        readYourWrites.writtenAll(customerIds);
+        cacheManager.getTwoLevelCache(CacheNames.CUSTOMER_BILLING).evictRegions(customers);
+        log.debug("Evicted cached billing records for {} customers", customers.size());
+    }
+}
@@ -0,0 +1,32 @@
+package com.scalable.billing.service.config;
+
+import com.scalable.billing.common.cache.TwoLevelCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Caffeine L1 in front of Redis L2; entries are evicted per customer from BILLING_EVENTS
+ * (see BillingCacheInvalidationListener)
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableCaching
+public class CacheConfig {
+
+    @Bean
+    public TwoLevelCacheManager cacheManager(
+        RedissonClient redissonClient,
+        MeterRegistry meterRegistry,
+        @Value("${billing.cache.l1.max-size:10000}") long localMaxSize,
+        @Value("${billing.cache.l1.ttl:30s}") Duration localTtl,
+        @Value("${billing.cache.ttl-minutes:60}") long ttlMinutes
+    ) {
+        return new TwoLevelCacheManager(redissonClient, meterRegistry, localMaxSize, localTtl,
+            Duration.ofMinutes(ttlMinutes));
+    }
+}
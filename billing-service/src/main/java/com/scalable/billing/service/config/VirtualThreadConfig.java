@@ -0,0 +1,40 @@
+package com.scalable.billing.service.config;
+
+import com.scalable.billing.common.web.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * Virtual-thread mode (spring.threads.virtual.enabled=true on a Java 21+ runtime).
+ * Tomcat, @Async and @Scheduled then run on virtual threads and request concurrency
+ * is bounded by the Hikari pool instead of the Tomcat thread pool.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadConfig {
+
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+        @Value("${billing.concurrency.max-in-flight:${spring.datasource.hikari.maximum-pool-size:10}}") int maxInFlight,
+        @Value("${billing.concurrency.acquire-timeout:2s}") Duration acquireTimeout,
+        MeterRegistry meterRegistry
+    ) {
+        ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(maxInFlight, acquireTimeout);
+        Gauge.builder("http.server.requests.in.flight", filter, ConcurrencyLimitFilter::inFlight)
+            .description("Requests holding a concurrency permit")
+            .register(meterRegistry);
+
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 10);
+        return registration;
+    }
+}
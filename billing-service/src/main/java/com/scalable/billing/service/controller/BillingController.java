@@ -1,19 +1,46 @@
 package com.scalable.billing.service.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.scalable.billing.common.dto.BillingRecordDTO;
+import com.scalable.billing.common.dto.CursorPage;
+import com.scalable.billing.common.dto.UsageRecordDTO;
 import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.service.export.UsageExportFormat;
+import com.scalable.billing.service.export.UsageExportService;
+import com.scalable.billing.service.ingest.UsageEventBatcher;
 import com.scalable.billing.service.service.BillingService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/billing")
@@ -21,19 +48,99 @@ import java.util.UUID;
 @Slf4j
 public class BillingController {
     
+    private static final int BULK_CHUNK_SIZE = 500;
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final String EXPORT_PERMIT = BillingController.class.getName() + ".exportPermit";
+    
     private final BillingService billingService;
+    private final UsageEventBatcher usageEventBatcher;
+    private final UsageExportService usageExportService;
+    private final ObjectMapper objectMapper;
     
     /**
-     * Ingest usage event
+     * Ingest usage event; it is queued for Kafka, 429 when the ingestion queue is full and
+     * 503 while sends to Kafka are failing
      * POST /api/billing/usage
      */
     @PostMapping("/usage")
     public ResponseEntity<Void> ingestUsage(@Valid @RequestBody UsageEvent event) {
-        log.info("Received usage event for customer: {}", event.getCustomerId());
-        billingService.ingestUsageEvent(event);
+        if (!UsageEventBatcher.isValid(event)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!usageEventBatcher.isAvailable()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+        }
+        if (!usageEventBatcher.offer(event)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+        }
         return ResponseEntity.status(HttpStatus.ACCEPTED).build();
     }
     
+    /**
+     * Bulk ingest usage events as NDJSON or a JSON array, parsed as a stream and queued for Kafka
+     * in chunks. Invalid events are skipped and counted. When the queue fills up the response is
+     * 429 and "accepted" tells the client how many leading events were taken; while sends to
+     * Kafka are failing it is 503 the same way.
+     * POST /api/billing/usage/bulk
+     */
+    @PostMapping(value = "/usage/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<Map<String, Object>> ingestUsageBulk(HttpServletRequest request) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(UsageEvent.class);
+        List<UsageEvent> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+        int accepted = 0;
+        int invalid = 0;
+        
+        try (InputStream body = request.getInputStream();
+             MappingIterator<UsageEvent> events = reader.readValues(body)) {
+            while (events.hasNextValue()) {
+                UsageEvent event = events.nextValue();
+                if (!UsageEventBatcher.isValid(event)) {
+                    invalid++;
+                    continue;
+                }
+                chunk.add(event);
+                if (chunk.size() == BULK_CHUNK_SIZE) {
+                    if (!usageEventBatcher.isAvailable()) {
+                        return bulkResponse(HttpStatus.SERVICE_UNAVAILABLE, accepted, invalid);
+                    }
+                    int queued = usageEventBatcher.offerAll(chunk);
+                    accepted += queued;
+                    if (queued < chunk.size()) {
+                        return bulkResponse(HttpStatus.TOO_MANY_REQUESTS, accepted, invalid);
+                    }
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Malformed bulk usage payload after {} events: {}", accepted, e.getMessage());
+            accepted += usageEventBatcher.offerAll(chunk);
+            return bulkResponse(HttpStatus.BAD_REQUEST, accepted, invalid);
+        }
+        
+        if (!usageEventBatcher.isAvailable()) {
+            return bulkResponse(HttpStatus.SERVICE_UNAVAILABLE, accepted, invalid);
+        }
+        int queued = usageEventBatcher.offerAll(chunk);
+        accepted += queued;
+        HttpStatus status = queued < chunk.size() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.ACCEPTED;
+        return bulkResponse(status, accepted, invalid);
+    }
+    
+    private static ResponseEntity<Map<String, Object>> bulkResponse(HttpStatus status, int accepted, int invalid) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("accepted", accepted);
+        body.put("invalid", invalid);
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+        if (status == HttpStatus.TOO_MANY_REQUESTS || status == HttpStatus.SERVICE_UNAVAILABLE) {
+            response.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS);
+        }
+        return response.body(body);
+    }
+    
     /**
      * Calculate billing for customer and period
      * POST /api/billing/calculate?customerId=xxx&periodStart=2024-01-01&periodEnd=2024-01-31
@@ -64,6 +171,101 @@ public class BillingController {
         return ResponseEntity.ok(records);
     }
     
+    /**
+     * Get billing records for customer with keyset pagination; pass next_cursor from the
+     * previous response to continue. Unlike the offset endpoint there is no total count.
+     * GET /api/billing/customer/{customerId}/records?cursor=xxx&size=20
+     */
+    @GetMapping("/customer/{customerId}/records")
+    public ResponseEntity<CursorPage<BillingRecordDTO>> getBillingRecordsPage(
+        @PathVariable UUID customerId,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "20") int size
+    ) {
+        try {
+            return ResponseEntity.ok(billingService.getBillingRecordsPage(customerId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected billing records page request for customer {}: {}", customerId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Get usage records for customer in a time range with keyset pagination
+     * GET /api/billing/customer/{customerId}/usage?startTime=2024-01-01T00:00:00Z&endTime=2024-02-01T00:00:00Z&cursor=xxx&size=100
+     */
+    @GetMapping("/customer/{customerId}/usage")
+    public ResponseEntity<CursorPage<UsageRecordDTO>> getUsagePage(
+        @PathVariable UUID customerId,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant startTime,
+        @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant endTime,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "100") int size
+    ) {
+        try {
+            return ResponseEntity.ok(billingService.getUsagePage(customerId, startTime, endTime, cursor, size));
+        } catch (IllegalArgumentException e) {
+            log.debug("Rejected usage page request for customer {}: {}", customerId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
+    /**
+     * Stream a month of raw usage (all customers, or one) as CSV or NDJSON, optionally gzipped.
+     * The body is written on an async thread, so no Tomcat thread waits on the transfer;
+     * 429 when the concurrent export limit is reached. The export slot is released when the
+     * async request completes, also when it times out or fails before the body ever ran.
+     * GET /api/billing/usage/export?month=2024-01&customerId=xxx&format=ndjson&gzip=true
+     */
+    @GetMapping("/usage/export")
+    public ResponseEntity<StreamingResponseBody> exportUsage(
+        @RequestParam @DateTimeFormat(pattern = "yyyy-MM") YearMonth month,
+        @RequestParam(required = false) UUID customerId,
+        @RequestParam(defaultValue = "csv") String format,
+        @RequestParam(defaultValue = "false") boolean gzip,
+        HttpServletRequest request
+    ) {
+        UsageExportFormat exportFormat;
+        try {
+            exportFormat = UsageExportFormat.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!usageExportService.tryAcquire()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .build();
+        }
+        
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                usageExportService.release();
+            }
+        };
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(EXPORT_PERMIT,
+            new CallableProcessingInterceptor() {
+                @Override
+                public <T> void afterCompletion(NativeWebRequest webRequest, Callable<T> task) {
+                    release.run();
+                }
+            });
+
+        StreamingResponseBody body = output -> {
+            try {
+                usageExportService.export(month, customerId, exportFormat, gzip, output);
+            } finally {
+                release.run();
+            }
+        };
+        String filename = "usage-" + month + (customerId == null ? "" : "-" + customerId) + "." + exportFormat.extension()
+            + (gzip ? ".gz" : "");
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.contentType()))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString())
+            .body(body);
+    }
+    
     /**
      * Health check endpoint
      */
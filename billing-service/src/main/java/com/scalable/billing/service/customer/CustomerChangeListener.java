@@ -0,0 +1,113 @@
+package com.scalable.billing.service.customer;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Evicts CustomerDirectory entries when a customer row changes. The customers table fires
+ * pg_notify('customer_changed', id) on UPDATE and DELETE (see scripts/init-db.sql), so
+ * changes made by any replica or directly in SQL reach every replica.
+ *
+ * LISTEN needs a session of its own, so this opens a connection outside the Hikari pool.
+ * While it is down notifications are lost, so the whole directory is dropped on reconnect.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CustomerChangeListener implements SmartLifecycle {
+
+    static final String CHANNEL = "customer_changed";
+
+    private final CustomerDirectory customerDirectory;
+    private final DataSourceProperties dataSourceProperties;
+
+    @Value("${billing.customer-cache.listen-enabled:true}")
+    private boolean enabled;
+
+    @Value("${billing.customer-cache.listen-poll-ms:10000}")
+    private int pollMillis;
+
+    private volatile boolean running;
+    private Thread listener;
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            log.info("Customer change notifications disabled; customer cache relies on refresh-ahead only");
+            return;
+        }
+        running = true;
+        listener = new Thread(this::listen, "customer-change-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listen() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                     dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("LISTEN " + CHANNEL);
+                // Anything that changed while we were not listening is unknown
+                customerDirectory.invalidateAll();
+                log.info("Listening for customer changes on {}", CHANNEL);
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        evict(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Customer change listener disconnected, retrying in 5s: {}", e.getMessage());
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void evict(String payload) {
+        try {
+            customerDirectory.invalidate(UUID.fromString(payload));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed customer change payload '{}'", payload);
+            customerDirectory.invalidateAll();
+        }
+    }
+}
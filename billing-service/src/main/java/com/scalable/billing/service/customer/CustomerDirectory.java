@@ -0,0 +1,87 @@
+package com.scalable.billing.service.customer;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.scalable.billing.service.repository.CustomerRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Read-through, size-bounded near-cache of CustomerSummary.
+ *
+ * Entries older than refresh-after are reloaded in the background on their next read while
+ * the cached value keeps being served; expire-after bounds how stale an idle entry can get.
+ * Updates and deletes are pushed by CustomerChangeListener. Bulk lookups resolve every miss
+ * of a batch in one query. Unknown ids are not cached.
+ */
+@Component
+@Slf4j
+public class CustomerDirectory {
+
+    private final LoadingCache<UUID, CustomerSummary> cache;
+
+    public CustomerDirectory(
+        CustomerRepository customerRepository,
+        MeterRegistry meterRegistry,
+        @Value("${billing.customer-cache.max-size:100000}") long maxSize,
+        @Value("${billing.customer-cache.refresh-after:5m}") Duration refreshAfter,
+        @Value("${billing.customer-cache.expire-after:1h}") Duration expireAfter
+    ) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .refreshAfterWrite(refreshAfter)
+            .expireAfterWrite(expireAfter)
+            .recordStats()
+            .build(new CacheLoader<>() {
+                @Override
+                public CustomerSummary load(UUID id) {
+                    return customerRepository.findSummariesByIdIn(Set.of(id)).stream().findFirst().orElse(null);
+                }
+
+                @Override
+                public Map<UUID, CustomerSummary> loadAll(Set<? extends UUID> ids) {
+                    Map<UUID, CustomerSummary> loaded = new HashMap<>();
+                    for (CustomerSummary summary : customerRepository.findSummariesByIdIn(ids)) {
+                        loaded.put(summary.id(), summary);
+                    }
+                    return loaded;
+                }
+            });
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "customers");
+    }
+
+    public Optional<CustomerSummary> find(UUID customerId) {
+        return Optional.ofNullable(cache.get(customerId));
+    }
+
+    public CustomerSummary require(UUID customerId) {
+        return find(customerId).orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+    }
+
+    /**
+     * Summaries of the given customers, loading all misses in a single query; unknown ids are absent
+     */
+    public Map<UUID, CustomerSummary> findAll(Collection<UUID> customerIds) {
+        return cache.getAll(customerIds);
+    }
+
+    public void invalidate(UUID customerId) {
+        cache.invalidate(customerId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,9 @@
+package com.scalable.billing.service.customer;
+
+import java.util.UUID;
+
+/**
+ * The customer fields billing reads on hot paths; cached by CustomerDirectory
+ */
+public record CustomerSummary(UUID id, String name, String planType, String status) {
+}
@@ -18,7 +18,7 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "billing_records", indexes = {
-    @Index(name = "idx_billing_customer", columnList = "customer_id"),
+    @Index(name = "idx_billing_customer_created", columnList = "customer_id,created_at,id"),
     @Index(name = "idx_billing_period", columnList = "billing_period_start,billing_period_end"),
     @Index(name = "idx_billing_status", columnList = "status"),
     @Index(name = "idx_billing_invoice", columnList = "invoice_number")
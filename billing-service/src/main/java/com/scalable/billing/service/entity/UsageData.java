@@ -15,9 +15,10 @@ import java.util.Map;
 
 @Entity
 @Table(name = "usage_data", indexes = {
-    @Index(name = "idx_usage_customer_time", columnList = "customer_id,timestamp"),
+    @Index(name = "idx_usage_customer_time", columnList = "customer_id,timestamp,id"),
     @Index(name = "idx_usage_resource_time", columnList = "resource_type,timestamp"),
-    @Index(name = "idx_usage_timestamp", columnList = "timestamp")
+    @Index(name = "idx_usage_timestamp", columnList = "timestamp"),
+    @Index(name = "idx_usage_event_id", columnList = "event_id,timestamp", unique = true)
 })
 @Data
 @Builder
@@ -29,6 +30,9 @@ public class UsageData {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     
+    @Column(name = "event_id", length = 100)
+    private String eventId;
+    
     @Column(name = "customer_id", nullable = false)
     private java.util.UUID customerId;
     
@@ -0,0 +1,28 @@
+package com.scalable.billing.service.export;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Output formats of the usage export
+ */
+public enum UsageExportFormat {
+
+    CSV("text/csv", "csv"),
+    NDJSON(MediaType.APPLICATION_NDJSON_VALUE, "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    UsageExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+}
@@ -0,0 +1,271 @@
+package com.scalable.billing.service.export;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams raw usage_data rows, metadata included, as CSV or NDJSON.
+ *
+ * Rows are read through a forward-only PostgreSQL cursor (fetch size rows per round-trip,
+ * which needs the read-only transaction around it) and written straight to the output,
+ * so memory stays constant whatever the export size. The half-open month range on
+ * timestamp prunes the scan to one partition. A connection is held only while rows are
+ * being transferred, and at most max-concurrent exports hold one at a time. The usage
+ * shards are streamed one after the other, each in its own read-only transaction; a
+ * customer's export reads only the shards holding that customer.
+ */
+@Service
+@Slf4j
+public class UsageExportService {
+
+    private static final String EXPORT_SQL =
+        "SELECT id, event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, metadata, created_at " +
+        "FROM usage_data WHERE timestamp >= ? AND timestamp < ?";
+    private static final String CUSTOMER_FILTER = " AND customer_id = ?";
+    private static final String[] COLUMNS = {
+        "id", "event_id", "customer_id", "resource_type", "quantity", "unit", "unit_price", "timestamp", "metadata",
+        "created_at"
+    };
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final UsageShards usageShards;
+    private final Map<String, JdbcTemplate> cursorTemplates = new HashMap<>();
+    private final Semaphore permits;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Counter exportedRows;
+
+    public UsageExportService(
+        UsageShards usageShards,
+        MeterRegistry meterRegistry,
+        @Value("${billing.export.fetch-size:5000}") int fetchSize,
+        @Value("${billing.export.max-concurrent:4}") int maxConcurrent
+    ) {
+        this.usageShards = usageShards;
+        for (UsageShard shard : usageShards.all()) {
+            JdbcTemplate cursorTemplate = new JdbcTemplate(shard.dataSource());
+            cursorTemplate.setFetchSize(fetchSize);
+            cursorTemplates.put(shard.name(), cursorTemplate);
+        }
+        this.permits = new Semaphore(maxConcurrent);
+        this.exportedRows = Counter.builder("billing.export.rows")
+            .description("Usage rows written by the streaming export")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Reserves an export slot; release it with {@link #release()} once the export finished
+     */
+    public boolean tryAcquire() {
+        return permits.tryAcquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * Writes every usage row of the month (optionally of one customer) to the output.
+     * The output is not closed; a failure mid-stream surfaces as UncheckedIOException.
+     */
+    public long export(YearMonth month, UUID customerId, UsageExportFormat format, boolean gzip, OutputStream output)
+        throws IOException {
+        OutputStream target = gzip
+            ? new GZIPOutputStream(output, BUFFER_SIZE)
+            : new BufferedOutputStream(output, BUFFER_SIZE);
+        RowSink sink = format == UsageExportFormat.NDJSON ? new NdjsonSink(target) : new CsvSink(target);
+
+        String sql = customerId == null ? EXPORT_SQL : EXPORT_SQL + CUSTOMER_FILTER;
+        Object[] args = customerId == null
+            ? new Object[] {month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay()}
+            : new Object[] {month.atDay(1).atStartOfDay(), month.plusMonths(1).atDay(1).atStartOfDay(), customerId};
+
+        long[] rows = {0};
+        long start = System.nanoTime();
+        RowCallbackHandler handler = rs -> {
+            try {
+                sink.row(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (++rows[0] % 10_000 == 0) {
+                exportedRows.increment(10_000);
+            }
+        };
+        sink.begin();
+        for (UsageShard shard : customerId == null ? usageShards.all() : usageShards.readShards(customerId)) {
+            shard.readOnlyTransactionTemplate().executeWithoutResult(status ->
+                cursorTemplates.get(shard.name()).query(sql, handler, args));
+        }
+        sink.end();
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish();
+        }
+        target.flush();
+        exportedRows.increment(rows[0] % 10_000);
+
+        log.info("Exported {} usage rows for {} (customer {}) as {} in {} ms",
+            rows[0], month, customerId, format, (System.nanoTime() - start) / 1_000_000);
+        return rows[0];
+    }
+
+    private interface RowSink {
+
+        void begin() throws IOException;
+
+        void row(ResultSet rs) throws SQLException, IOException;
+
+        void end() throws IOException;
+    }
+
+    /**
+     * RFC 4180 CSV with a header line; timestamps in ISO-8601 UTC, metadata as its JSON text
+     */
+    private static final class CsvSink implements RowSink {
+
+        private final Writer out;
+
+        CsvSink(OutputStream target) {
+            this.out = new OutputStreamWriter(target, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void begin() throws IOException {
+            out.write(String.join(",", COLUMNS));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            out.write(Long.toString(rs.getLong(1)));
+            out.write(',');
+            writeField(rs.getString(2));
+            out.write(',');
+            out.write(rs.getString(3));
+            out.write(',');
+            writeField(rs.getString(4));
+            out.write(',');
+            out.write(rs.getBigDecimal(5).toPlainString());
+            out.write(',');
+            writeField(rs.getString(6));
+            out.write(',');
+            BigDecimal unitPrice = rs.getBigDecimal(7);
+            if (unitPrice != null) {
+                out.write(unitPrice.toPlainString());
+            }
+            out.write(',');
+            writeField(utc(rs.getObject(8, LocalDateTime.class)));
+            out.write(',');
+            writeField(rs.getString(9));
+            out.write(',');
+            writeField(utc(rs.getObject(10, LocalDateTime.class)));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void end() throws IOException {
+            out.flush();
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+    }
+
+    /**
+     * One JSON object per line; metadata is embedded as JSON, not as a string
+     */
+    private final class NdjsonSink implements RowSink {
+
+        private final OutputStream target;
+        private JsonGenerator json;
+
+        NdjsonSink(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            json = jsonFactory.createGenerator(target, JsonEncoding.UTF8);
+            json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            json.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void row(ResultSet rs) throws SQLException, IOException {
+            json.writeStartObject();
+            json.writeNumberField(COLUMNS[0], rs.getLong(1));
+            json.writeStringField(COLUMNS[1], rs.getString(2));
+            json.writeStringField(COLUMNS[2], rs.getString(3));
+            json.writeStringField(COLUMNS[3], rs.getString(4));
+            json.writeNumberField(COLUMNS[4], rs.getBigDecimal(5));
+            json.writeStringField(COLUMNS[5], rs.getString(6));
+            json.writeNumberField(COLUMNS[6], rs.getBigDecimal(7));
+            json.writeStringField(COLUMNS[7], utc(rs.getObject(8, LocalDateTime.class)));
+            json.writeFieldName(COLUMNS[8]);
+            String metadata = rs.getString(9);
+            if (metadata == null) {
+                json.writeNull();
+            } else {
+                json.writeRawValue(metadata);
+            }
+            json.writeStringField(COLUMNS[9], utc(rs.getObject(10, LocalDateTime.class)));
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void end() throws IOException {
+            json.close();
+        }
+    }
+
+    /**
+     * usage_data timestamps are UTC wall-clock values (TIMESTAMP without time zone)
+     */
+    private static String utc(LocalDateTime value) {
+        return value == null ? null : value.toInstant(ZoneOffset.UTC).toString();
+    }
+}
@@ -0,0 +1,260 @@
+package com.scalable.billing.service.ingest;
+
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.scalable.billing.common.constants.KafkaTopics.USAGE_EVENTS;
+
+/**
+ * In-process micro-batcher between the REST ingestion endpoints and Kafka.
+ *
+ * Request threads only enqueue into a bounded queue and never block on the producer;
+ * a single drainer thread hands events to Kafka in batches keyed by customer id, so all
+ * events of a customer land on the same partition. A full queue is reported back to the
+ * caller so the endpoint can push back instead of buffering without limit.
+ *
+ * Events whose send fails are re-offered to the queue up to max-attempts times, and the
+ * batcher reports itself unavailable until a send succeeds again, so the endpoints stop
+ * acknowledging events the producer cannot deliver. Events are still only held in memory:
+ * retries that run out, re-offers into a full queue and whatever is queued when the process
+ * dies are lost and counted as failed.
+ */
+@Component
+@Slf4j
+public class UsageEventBatcher {
+
+    private final KafkaTemplate<String, UsageEvent> kafkaTemplate;
+    private final BlockingQueue<QueuedEvent> queue;
+    private final int maxBatchSize;
+    private final long lingerMillis;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long unavailableMillis;
+
+    private final Counter acceptedEvents;
+    private final Counter rejectedEvents;
+    private final Counter publishedEvents;
+    private final Counter retriedEvents;
+    private final Counter failedEvents;
+    private final PipelineStage publishStage;
+
+    private volatile boolean running;
+    private volatile long unavailableUntil;
+    private Thread drainer;
+
+    public UsageEventBatcher(KafkaTemplate<String, UsageEvent> kafkaTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${billing.ingest.queue-capacity:50000}") int queueCapacity,
+                             @Value("${billing.ingest.max-batch-size:1000}") int maxBatchSize,
+                             @Value("${billing.ingest.linger-ms:5}") long lingerMillis,
+                             @Value("${billing.ingest.max-attempts:5}") int maxAttempts,
+                             @Value("${billing.ingest.retry-backoff-ms:500}") long retryBackoffMillis,
+                             @Value("${billing.ingest.unavailable-ms:5000}") long unavailableMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.lingerMillis = lingerMillis;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.unavailableMillis = unavailableMillis;
+
+        this.acceptedEvents = ingestCounter(meterRegistry, "accepted");
+        this.rejectedEvents = ingestCounter(meterRegistry, "rejected");
+        this.publishedEvents = ingestCounter(meterRegistry, "published");
+        this.retriedEvents = ingestCounter(meterRegistry, "retried");
+        this.failedEvents = ingestCounter(meterRegistry, "failed");
+        this.publishStage = PipelineStage.register("billing.ingest.publish", meterRegistry);
+        Gauge.builder("billing.ingest.queue.depth", queue, BlockingQueue::size)
+            .description("Usage events waiting to be handed to Kafka")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @return false while recent sends to Kafka are failing; events offered now would be
+     * acknowledged without a producer able to deliver them
+     */
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= unavailableUntil;
+    }
+
+    /**
+     * @return false if the queue is full and the event was not accepted
+     */
+    public boolean offer(UsageEvent event) {
+        if (queue.offer(new QueuedEvent(normalize(event), 1))) {
+            acceptedEvents.increment();
+            return true;
+        }
+        rejectedEvents.increment();
+        return false;
+    }
+
+    /**
+     * Enqueues events in order until the queue is full.
+     *
+     * @return the number of leading events that were accepted
+     */
+    public int offerAll(List<UsageEvent> events) {
+        int accepted = 0;
+        for (UsageEvent event : events) {
+            if (!queue.offer(new QueuedEvent(normalize(event), 1))) {
+                break;
+            }
+            accepted++;
+        }
+        acceptedEvents.increment(accepted);
+        rejectedEvents.increment(events.size() - accepted);
+        return accepted;
+    }
+
+    /**
+     * Minimal structural validation; usage_data requires these columns
+     */
+    public static boolean isValid(UsageEvent event) {
+        return event != null
+            && event.getCustomerId() != null
+            && event.getResourceType() != null
+            && event.getQuantity() != null
+            && event.getUnit() != null;
+    }
+
+    /**
+     * Event ids are assigned at the edge so that Kafka redelivery is deduplicated downstream
+     */
+    private static UsageEvent normalize(UsageEvent event) {
+        if (event.getEventId() == null) {
+            event.setEventId(UUID.randomUUID().toString());
+        }
+        if (event.getTimestamp() == null) {
+            event.setTimestamp(Instant.now());
+        }
+        return event;
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        drainer = new Thread(this::drainLoop, "usage-event-batcher");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        drainer.join(TimeUnit.SECONDS.toMillis(10));
+        List<QueuedEvent> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        publish(remaining);
+        kafkaTemplate.flush();
+    }
+
+    private void drainLoop() {
+        List<QueuedEvent> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                if (!isAvailable()) {
+                    // let the producer recover before handing it the re-offered events again
+                    Thread.sleep(retryBackoffMillis);
+                }
+                QueuedEvent first = queue.poll(lingerMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                publish(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Hands the batch to the producer. For events stamped at the edge, the stage's event lag
+     * is the time they spent in the queue.
+     */
+    private void publish(List<QueuedEvent> batch) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        publishStage.recordBatchSize(batch.size());
+        if (send(batch, now)) {
+            publishStage.recordSuccess(start);
+        } else {
+            publishStage.recordFailure(start);
+        }
+    }
+
+    /**
+     * @return false if any event could not be handed to the producer; those are already retried
+     */
+    private boolean send(List<QueuedEvent> batch, long now) {
+        boolean handedOff = true;
+        for (QueuedEvent queued : batch) {
+            UsageEvent event = queued.event();
+            try {
+                publishStage.recordEventLag(event.getTimestamp(), now);
+                kafkaTemplate.send(USAGE_EVENTS, event.getCustomerId().toString(), event)
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            unavailableUntil = 0;
+                            publishedEvents.increment();
+                        } else {
+                            retry(queued, ex);
+                        }
+                    });
+            } catch (RuntimeException e) {
+                handedOff = false;
+                retry(queued, e);
+            }
+        }
+        return handedOff;
+    }
+
+    /**
+     * Marks the batcher unavailable and re-offers the event unless it is out of attempts,
+     * the queue is full or the batcher is shutting down.
+     */
+    private void retry(QueuedEvent queued, Throwable cause) {
+        unavailableUntil = System.currentTimeMillis() + unavailableMillis;
+        if (running && queued.attempt() < maxAttempts
+                && queue.offer(new QueuedEvent(queued.event(), queued.attempt() + 1))) {
+            retriedEvents.increment();
+            log.warn("Failed to publish usage event {} (attempt {}), re-queued: {}",
+                queued.event().getEventId(), queued.attempt(), cause.getMessage());
+            return;
+        }
+        failedEvents.increment();
+        log.error("Dropped usage event {} after {} attempts", queued.event().getEventId(), queued.attempt(), cause);
+    }
+
+    private static Counter ingestCounter(MeterRegistry registry, String result) {
+        return Counter.builder("billing.ingest.events")
+            .description("Usage events received by the REST ingestion pipeline")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    private record QueuedEvent(UsageEvent event, int attempt) {
+    }
+}
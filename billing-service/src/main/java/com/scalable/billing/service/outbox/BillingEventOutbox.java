@@ -0,0 +1,48 @@
+package com.scalable.billing.service.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.event.BillingEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Writes billing events to the outbox table in the caller's transaction.
+ * Events become visible to the relay only if the billing data they describe commits.
+ */
+@Component
+@RequiredArgsConstructor
+public class BillingEventOutbox {
+
+    private static final String INSERT_SQL =
+        "INSERT INTO billing_event_outbox (event_key, payload) VALUES (?, CAST(? AS jsonb))";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(BillingEvent event) {
+        jdbcTemplate.update(INSERT_SQL, event.getEventId(), toJson(event));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueAll(List<BillingEvent> events) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, 500, (ps, event) -> {
+            ps.setString(1, event.getEventId());
+            ps.setString(2, toJson(event));
+        });
+    }
+
+    private String toJson(BillingEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize billing event " + event.getEventId(), e);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.scalable.billing.service.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.event.BillingEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.scalable.billing.common.constants.KafkaTopics.BILLING_EVENTS;
+
+/**
+ * Drains the billing event outbox to Kafka in large batches.
+ *
+ * Each batch is locked with FOR UPDATE SKIP LOCKED so replicas never relay the same rows,
+ * sent without waiting per record (the producer batches and compresses them), and only the
+ * rows whose send was acknowledged by the broker are deleted. Unacknowledged rows stay in
+ * the outbox and are retried on the next poll, so delivery is at-least-once.
+ */
+@Component
+@Slf4j
+public class BillingOutboxRelay {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final KafkaTemplate<String, BillingEvent> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+
+    private final DistributionSummary batchSizes;
+    private final Counter relayedEvents;
+    private final Counter failedEvents;
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    @Value("${billing.outbox.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${billing.outbox.send-timeout:30s}")
+    private Duration sendTimeout;
+
+    public BillingOutboxRelay(JdbcTemplate jdbcTemplate,
+                              TransactionTemplate transactionTemplate,
+                              KafkaTemplate<String, BillingEvent> kafkaTemplate,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSizes = DistributionSummary.builder("billing.outbox.relay.batch.size")
+            .description("Outbox rows relayed per batch")
+            .register(meterRegistry);
+        this.relayedEvents = Counter.builder("billing.outbox.relay.events")
+            .tag("result", "acknowledged")
+            .register(meterRegistry);
+        this.failedEvents = Counter.builder("billing.outbox.relay.events")
+            .tag("result", "failed")
+            .register(meterRegistry);
+        Gauge.builder("billing.outbox.relay.lag", lagMillis, lag -> lag.get() / 1000.0)
+            .description("Age in seconds of the oldest outbox row seen by the last relay batch")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${billing.outbox.poll-interval-ms:200}")
+    public void relay() {
+        int relayed;
+        do {
+            relayed = relayBatch();
+        } while (relayed >= batchSize);
+    }
+
+    /**
+     * @return number of rows acknowledged and deleted; less than batch-size when the outbox is drained or a send failed
+     */
+    int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            List<OutboxRow> rows = jdbcTemplate.query(
+                "SELECT id, event_key, payload::text AS payload, created_at FROM billing_event_outbox " +
+                "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED",
+                (rs, i) -> new OutboxRow(
+                    rs.getLong("id"),
+                    rs.getString("event_key"),
+                    rs.getString("payload"),
+                    rs.getTimestamp("created_at")),
+                batchSize);
+            if (rows.isEmpty()) {
+                lagMillis.set(0);
+                return 0;
+            }
+            lagMillis.set(Math.max(0, Instant.now().toEpochMilli() - rows.get(0).createdAt().getTime()));
+
+            List<CompletableFuture<?>> sends = new ArrayList<>(rows.size());
+            for (OutboxRow row : rows) {
+                sends.add(send(row));
+            }
+            awaitQuietly(sends);
+
+            List<Long> acknowledged = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                CompletableFuture<?> send = sends.get(i);
+                if (send.isDone() && !send.isCompletedExceptionally()) {
+                    acknowledged.add(rows.get(i).id());
+                }
+            }
+            deleteAcknowledged(acknowledged);
+
+            batchSizes.record(acknowledged.size());
+            relayedEvents.increment(acknowledged.size());
+            int failed = rows.size() - acknowledged.size();
+            if (failed > 0) {
+                failedEvents.increment(failed);
+                log.warn("{} of {} outbox events were not acknowledged, they will be retried", failed, rows.size());
+            }
+            return failed > 0 ? 0 : acknowledged.size();
+        });
+        return relayed == null ? 0 : relayed;
+    }
+
+    private CompletableFuture<?> send(OutboxRow row) {
+        try {
+            BillingEvent event = objectMapper.readValue(row.payload(), BillingEvent.class);
+            return kafkaTemplate.send(BILLING_EVENTS, row.eventKey(), event);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void awaitQuietly(List<CompletableFuture<?>> sends) {
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0]))
+                .get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("Outbox batch send did not fully succeed: {}", e.toString());
+        }
+    }
+
+    private void deleteAcknowledged(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement("DELETE FROM billing_event_outbox WHERE id = ANY(?)");
+            ps.setArray(1, con.createArrayOf("bigint", ids.toArray()));
+            return ps;
+        });
+    }
+
+    private record OutboxRow(long id, String eventKey, String payload, Timestamp createdAt) {
+    }
+}
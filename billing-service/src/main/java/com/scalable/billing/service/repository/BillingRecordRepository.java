@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -17,7 +18,18 @@ import java.util.UUID;
 public interface BillingRecordRepository extends JpaRepository<BillingRecord, UUID> {
     
     /**
-     * Optimized pagination query with index usage
+     * Keyset pagination, newest first; (created_at, id) is unique so pages never overlap.
+     * Both walk idx_billing_customer_created and stop after :limit rows: no OFFSET, no COUNT(*).
+     */
+    String KEYSET_FIRST_PAGE_SQL = "SELECT * FROM billing_records WHERE customer_id = :customerId " +
+        "ORDER BY created_at DESC, id DESC LIMIT :limit";
+    String KEYSET_NEXT_PAGE_SQL = "SELECT * FROM billing_records WHERE customer_id = :customerId " +
+        "AND (created_at, id) < (:afterCreatedAt, :afterId) " +
+        "ORDER BY created_at DESC, id DESC LIMIT :limit";
+    
+    /**
+     * Optimized pagination query with index usage.
+     * Offset based; kept for compatibility, prefer the keyset queries for deep pages.
      */
     @Query("SELECT b FROM BillingRecord b WHERE b.customerId = :customerId ORDER BY b.createdAt DESC")
     Page<BillingRecord> findByCustomerIdOrderByCreatedAtDesc(
@@ -25,6 +37,20 @@ public interface BillingRecordRepository extends JpaRepository<BillingRecord, UU
         Pageable pageable
     );
     
+    @Query(value = KEYSET_FIRST_PAGE_SQL, nativeQuery = true)
+    List<BillingRecord> findFirstPage(
+        @Param("customerId") UUID customerId,
+        @Param("limit") int limit
+    );
+    
+    @Query(value = KEYSET_NEXT_PAGE_SQL, nativeQuery = true)
+    List<BillingRecord> findPageAfter(
+        @Param("customerId") UUID customerId,
+        @Param("afterCreatedAt") Instant afterCreatedAt,
+        @Param("afterId") UUID afterId,
+        @Param("limit") int limit
+    );
+    
     @Query("SELECT b FROM BillingRecord b WHERE b.status = :status")
     List<BillingRecord> findByStatus(@Param("status") String status);
     
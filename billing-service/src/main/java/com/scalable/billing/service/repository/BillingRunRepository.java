@@ -0,0 +1,252 @@
+package com.scalable.billing.service.repository;
+
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import com.scalable.billing.service.entity.BillingRecord;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Set-based persistence for the monthly billing run: run/shard checkpoints,
+ * per-shard usage aggregation (on the usage shards) and bulk inserts of billing records and line items.
+ */
+@Repository
+@RequiredArgsConstructor
+public class BillingRunRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final UsageShards usageShards;
+
+    public Optional<Run> findRun(LocalDate periodStart, LocalDate periodEnd) {
+        List<Run> runs = jdbcTemplate.query(
+            "SELECT id, status FROM billing_runs WHERE billing_period_start = ? AND billing_period_end = ?",
+            (rs, i) -> new Run(rs.getObject("id", UUID.class), rs.getString("status")),
+            Date.valueOf(periodStart), Date.valueOf(periodEnd));
+        return runs.stream().findFirst();
+    }
+
+    /**
+     * Inserts the run and its shard plan; a concurrent planner for the same period loses
+     * the unique-key race and its shards are never written. Must run in a transaction.
+     */
+    public boolean createRun(UUID runId, LocalDate periodStart, LocalDate periodEnd, List<List<UUID>> shards) {
+        int inserted = jdbcTemplate.update(
+            "INSERT INTO billing_runs (id, billing_period_start, billing_period_end, status, total_shards) " +
+            "VALUES (?, ?, ?, 'RUNNING', ?) ON CONFLICT (billing_period_start, billing_period_end) DO NOTHING",
+            runId, Date.valueOf(periodStart), Date.valueOf(periodEnd), shards.size());
+        if (inserted == 0) {
+            return false;
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO billing_run_shards (run_id, shard_no, customer_ids) VALUES (?, ?, ?)",
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setObject(1, runId);
+                    ps.setInt(2, i);
+                    ps.setArray(3, uuidArray(ps.getConnection(), shards.get(i)));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return shards.size();
+                }
+            });
+        return true;
+    }
+
+    /**
+     * Locks the next unfinished shard for the current transaction. Replicas running the same
+     * job skip each other's locked shards, and a crash releases the lock with the shard still pending.
+     */
+    public Optional<Shard> claimNextShard(UUID runId, int maxAttempts, Collection<Integer> excludedShards) {
+        Integer[] excluded = excludedShards.toArray(new Integer[0]);
+        List<Shard> shards = jdbcTemplate.query(
+            con -> {
+                PreparedStatement ps = con.prepareStatement(
+                    "SELECT shard_no, customer_ids FROM billing_run_shards " +
+                    "WHERE run_id = ? AND status <> 'COMPLETED' AND attempts < ? AND NOT (shard_no = ANY(?)) " +
+                    "ORDER BY shard_no LIMIT 1 FOR UPDATE SKIP LOCKED");
+                ps.setObject(1, runId);
+                ps.setInt(2, maxAttempts);
+                ps.setArray(3, con.createArrayOf("integer", excluded));
+                return ps;
+            },
+            (rs, i) -> new Shard(runId, rs.getInt("shard_no"),
+                Arrays.asList((UUID[]) rs.getArray("customer_ids").getArray())));
+        return shards.stream().findFirst();
+    }
+
+    public void markShardCompleted(UUID runId, int shardNo, int recordsCreated) {
+        jdbcTemplate.update(
+            "UPDATE billing_run_shards SET status = 'COMPLETED', records_created = ?, attempts = attempts + 1, " +
+            "last_error = NULL, completed_at = CURRENT_TIMESTAMP WHERE run_id = ? AND shard_no = ?",
+            recordsCreated, runId, shardNo);
+    }
+
+    public void markShardFailed(UUID runId, int shardNo, String error) {
+        jdbcTemplate.update(
+            "UPDATE billing_run_shards SET status = 'FAILED', attempts = attempts + 1, last_error = ? " +
+            "WHERE run_id = ? AND shard_no = ?",
+            error, runId, shardNo);
+    }
+
+    /**
+     * Gives the run's failed shards a fresh attempt budget
+     * @return the number of shards that will be retried
+     */
+    public int retryFailedShards(UUID runId) {
+        return jdbcTemplate.update(
+            "UPDATE billing_run_shards SET attempts = 0 WHERE run_id = ? AND status = 'FAILED'", runId);
+    }
+
+    public int countIncompleteShards(UUID runId) {
+        Integer count = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM billing_run_shards WHERE run_id = ? AND status <> 'COMPLETED'",
+            Integer.class, runId);
+        return count == null ? 0 : count;
+    }
+
+    public void markRunStatus(UUID runId, String status) {
+        jdbcTemplate.update(
+            "UPDATE billing_runs SET status = ?, " +
+            "completed_at = CASE WHEN ? = 'COMPLETED' THEN CURRENT_TIMESTAMP ELSE completed_at END WHERE id = ?",
+            status, status, runId);
+    }
+
+    /**
+     * Per-customer, per-resource totals for a whole shard in one GROUP BY per usage shard
+     * (uses idx_usage_customer_time); totals of a customer found on two usage shards while it
+     * is being moved are added up
+     */
+    public List<ResourceTotal> aggregateUsage(List<UUID> customerIds, Instant startTime, Instant endTime) {
+        Map<UsageShard, List<UUID>> byShard = usageShards.byReadShard(customerIds);
+        List<List<ResourceTotal>> perShard = usageShards.scatter(byShard.keySet(),
+            shard -> aggregateUsage(shard.jdbcTemplate(), byShard.get(shard), startTime, endTime));
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        Map<List<Object>, ResourceTotal> totals = new LinkedHashMap<>();
+        for (List<ResourceTotal> rows : perShard) {
+            for (ResourceTotal row : rows) {
+                totals.merge(List.of(row.customerId(), row.resourceType()), row, (a, b) -> new ResourceTotal(
+                    a.customerId(), a.resourceType(), a.quantityUnits() + b.quantityUnits(),
+                    a.amountUnits() + b.amountUnits()));
+            }
+        }
+        return new ArrayList<>(totals.values());
+    }
+
+    private static List<ResourceTotal> aggregateUsage(JdbcTemplate usageTemplate, List<UUID> customerIds,
+                                                      Instant startTime, Instant endTime) {
+        return usageTemplate.query(
+            con -> {
+                PreparedStatement ps = con.prepareStatement(
+                    "SELECT customer_id, resource_type, SUM(quantity) AS quantity, " +
+                    "SUM(quantity * COALESCE(unit_price, 0)) AS amount " +
+                    "FROM usage_data " +
+                    "WHERE customer_id = ANY(?) AND timestamp BETWEEN ? AND ? " +
+                    "GROUP BY customer_id, resource_type");
+                ps.setArray(1, uuidArray(con, customerIds));
+                ps.setObject(2, LocalDateTime.ofInstant(startTime, ZoneOffset.UTC));
+                ps.setObject(3, LocalDateTime.ofInstant(endTime, ZoneOffset.UTC));
+                return ps;
+            },
+            (rs, i) -> new ResourceTotal(
+                rs.getObject("customer_id", UUID.class),
+                rs.getString("resource_type"),
+                FixedPoint.toUnits(rs.getBigDecimal("quantity"), FixedPoint.QUANTITY_SCALE),
+                FixedPoint.toUnits(rs.getBigDecimal("amount"), FixedPoint.AMOUNT_SCALE)));
+    }
+
+    public Set<UUID> findBilledCustomers(List<UUID> customerIds, LocalDate periodStart, LocalDate periodEnd) {
+        return new HashSet<>(jdbcTemplate.query(
+            con -> {
+                PreparedStatement ps = con.prepareStatement(
+                    "SELECT customer_id FROM billing_records " +
+                    "WHERE customer_id = ANY(?) AND billing_period_start = ? AND billing_period_end = ?");
+                ps.setArray(1, uuidArray(con, customerIds));
+                ps.setDate(2, Date.valueOf(periodStart));
+                ps.setDate(3, Date.valueOf(periodEnd));
+                return ps;
+            },
+            (rs, i) -> rs.getObject("customer_id", UUID.class)));
+    }
+
+    public void insertBillingRecords(List<BillingRecord> records) {
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO billing_records (id, customer_id, billing_period_start, billing_period_end, total_amount, " +
+            "status, invoice_number, due_date, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)",
+            records, 500, (ps, record) -> {
+                ps.setObject(1, record.getId());
+                ps.setObject(2, record.getCustomerId());
+                ps.setDate(3, Date.valueOf(record.getBillingPeriodStart()));
+                ps.setDate(4, Date.valueOf(record.getBillingPeriodEnd()));
+                ps.setBigDecimal(5, record.getTotalAmount());
+                ps.setString(6, record.getStatus());
+                ps.setString(7, record.getInvoiceNumber());
+                ps.setDate(8, Date.valueOf(record.getDueDate()));
+            });
+    }
+
+    public void insertLineItems(List<LineItem> lineItems) {
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO billing_line_items (billing_record_id, description, resource_type, quantity, unit_price, amount) " +
+            "VALUES (?, ?, ?, ?, ?, ?)",
+            lineItems, 500, (ps, item) -> {
+                ps.setObject(1, item.billingRecordId());
+                ps.setString(2, item.description());
+                ps.setString(3, item.resourceType());
+                ps.setBigDecimal(4, FixedPoint.toDecimal(item.quantityUnits(), FixedPoint.QUANTITY_SCALE));
+                ps.setBigDecimal(5, FixedPoint.toDecimal(item.unitPriceUnits(), FixedPoint.PRICE_SCALE));
+                ps.setBigDecimal(6, FixedPoint.toDecimal(item.amountUnits(), FixedPoint.MONEY_SCALE));
+            });
+    }
+
+    private static Array uuidArray(Connection con, Collection<UUID> ids) throws SQLException {
+        return con.createArrayOf("uuid", ids.toArray());
+    }
+
+    public record Run(UUID id, String status) {
+    }
+
+    public record Shard(UUID runId, int shardNo, List<UUID> customerIds) {
+    }
+
+    /**
+     * Quantity in FixedPoint.QUANTITY_SCALE units, amount (quantity * unit price) in AMOUNT_SCALE units
+     */
+    public record ResourceTotal(UUID customerId, String resourceType, long quantityUnits, long amountUnits) {
+    }
+
+    /**
+     * Quantity, unit price and amount in QUANTITY_SCALE, PRICE_SCALE and MONEY_SCALE units
+     */
+    public record LineItem(UUID billingRecordId, String description, String resourceType,
+                           long quantityUnits, long unitPriceUnits, long amountUnits) {
+    }
+}
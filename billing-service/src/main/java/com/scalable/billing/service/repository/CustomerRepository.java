@@ -1,10 +1,13 @@
 package com.scalable.billing.service.repository;
 
+import com.scalable.billing.service.customer.CustomerSummary;
 import com.scalable.billing.service.entity.Customer;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -17,6 +20,19 @@ public interface CustomerRepository extends JpaRepository<Customer, UUID> {
     @Query("SELECT c FROM Customer c WHERE c.status = 'ACTIVE'")
     List<Customer> findAllActive();
     
+    /**
+     * Stable ordering so billing run shards are deterministic
+     */
+    @Query("SELECT c.id FROM Customer c WHERE c.status = 'ACTIVE' ORDER BY c.id")
+    List<UUID> findAllActiveIds();
+    
+    /**
+     * Bulk projection load behind CustomerDirectory
+     */
+    @Query("SELECT new com.scalable.billing.service.customer.CustomerSummary(c.id, c.name, c.planType, c.status) " +
+           "FROM Customer c WHERE c.id IN :ids")
+    List<CustomerSummary> findSummariesByIdIn(@Param("ids") Collection<? extends UUID> ids);
+    
     @Query("SELECT c FROM Customer c WHERE c.planType = :planType AND c.status = 'ACTIVE'")
     List<Customer> findByPlanTypeAndActive(String planType);
 }
@@ -0,0 +1,36 @@
+package com.scalable.billing.service.repository;
+
+import com.scalable.billing.service.entity.UsageData;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * usage_data queries of {@link UsageDataRepository}, run on the usage shards that hold the customer
+ */
+public interface UsageDataQueries {
+
+    /**
+     * Offset based, newest first; kept for compatibility, prefer the keyset queries for deep pages
+     */
+    Page<UsageData> findByCustomerAndTimeRange(UUID customerId, Instant startTime, Instant endTime, Pageable pageable);
+
+    /**
+     * Keyset pagination, newest first, in idx_usage_customer_time order (customer_id, timestamp DESC, id DESC)
+     */
+    List<UsageData> findFirstPage(UUID customerId, Instant startTime, Instant endTime, int limit);
+
+    List<UsageData> findPageAfter(UUID customerId, Instant startTime, Instant endTime, Instant afterTimestamp,
+                                  long afterId, int limit);
+
+    /**
+     * (resourceType, SUM(quantity * unit price)) rows for billing calculation; a resource type
+     * may appear once per shard while the customer is being moved, so callers sum the rows
+     */
+    List<Object[]> calculateBillingByResource(UUID customerId, Instant startTime, Instant endTime);
+
+    void batchInsert(UsageData usage);
+}
@@ -0,0 +1,174 @@
+package com.scalable.billing.service.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import com.scalable.billing.service.entity.UsageData;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataRetrievalFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs the usage_data queries on the customer's shard, and on its previous shard as well while
+ * a rebalance is moving it: pages are merged newest first and cut to size, counts and sums added.
+ * On the primary shard the queries join the surrounding JPA transaction; reads start a
+ * read-only one otherwise, so they can be served by a read replica.
+ */
+@RequiredArgsConstructor
+class UsageDataQueriesImpl implements UsageDataQueries {
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime";
+    private static final String BILLING_SQL =
+        "SELECT resource_type, SUM(quantity * COALESCE(unit_price, 0)) FROM usage_data " +
+        "WHERE customer_id = :customerId AND timestamp BETWEEN :startTime AND :endTime GROUP BY resource_type";
+    private static final String INSERT_SQL =
+        "INSERT INTO usage_data (event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, " +
+        "created_at) VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+
+    private static final Comparator<UsageData> NEWEST_FIRST = Comparator
+        .comparing(UsageData::getTimestamp).thenComparing(UsageData::getId).reversed();
+    private static final TypeReference<Map<String, Object>> METADATA = new TypeReference<>() {
+    };
+
+    private final UsageShards usageShards;
+    private final ObjectMapper objectMapper;
+    private final Map<String, NamedParameterJdbcTemplate> namedTemplates = new ConcurrentHashMap<>();
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<UsageData> findByCustomerAndTimeRange(UUID customerId, Instant startTime, Instant endTime,
+                                                      Pageable pageable) {
+        long upTo = pageable.getOffset() + pageable.getPageSize();
+        List<UsageShard> shards = usageShards.readShards(customerId);
+        MapSqlParameterSource params = range(customerId, startTime, endTime).addValue("limit", upTo);
+        List<UsageData> rows = merge(usageShards.scatter(shards, shard -> named(shard).query(
+            UsageDataRepository.KEYSET_FIRST_PAGE_SQL, params, this::mapRow)), upTo);
+        long total = 0;
+        for (Long count : usageShards.scatter(shards, shard -> named(shard).queryForObject(
+            COUNT_SQL, params, Long.class))) {
+            total += count;
+        }
+        List<UsageData> content = rows.subList((int) Math.min(rows.size(), pageable.getOffset()), rows.size());
+        return new PageImpl<>(new ArrayList<>(content), pageable, total);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UsageData> findFirstPage(UUID customerId, Instant startTime, Instant endTime, int limit) {
+        MapSqlParameterSource params = range(customerId, startTime, endTime).addValue("limit", limit);
+        return merge(usageShards.scatter(usageShards.readShards(customerId), shard -> named(shard).query(
+            UsageDataRepository.KEYSET_FIRST_PAGE_SQL, params, this::mapRow)), limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UsageData> findPageAfter(UUID customerId, Instant startTime, Instant endTime, Instant afterTimestamp,
+                                         long afterId, int limit) {
+        MapSqlParameterSource params = range(customerId, startTime, endTime)
+            .addValue("afterTimestamp", utc(afterTimestamp))
+            .addValue("afterId", afterId)
+            .addValue("limit", limit);
+        return merge(usageShards.scatter(usageShards.readShards(customerId), shard -> named(shard).query(
+            UsageDataRepository.KEYSET_NEXT_PAGE_SQL, params, this::mapRow)), limit);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Object[]> calculateBillingByResource(UUID customerId, Instant startTime, Instant endTime) {
+        MapSqlParameterSource params = range(customerId, startTime, endTime);
+        List<Object[]> rows = new ArrayList<>();
+        for (List<Object[]> shardRows : usageShards.scatter(usageShards.readShards(customerId),
+            shard -> named(shard).query(BILLING_SQL, params, (rs, i) -> new Object[] {
+                rs.getString(1), rs.getBigDecimal(2)
+            }))) {
+            rows.addAll(shardRows);
+        }
+        return rows;
+    }
+
+    @Override
+    @Transactional
+    public void batchInsert(UsageData usage) {
+        usageShards.owner(usage.getCustomerId()).jdbcTemplate().update(INSERT_SQL, usage.getEventId(),
+            usage.getCustomerId(), usage.getResourceType(), usage.getQuantity(), usage.getUnit(),
+            usage.getUnitPrice(), utc(usage.getTimestamp()));
+    }
+
+    private NamedParameterJdbcTemplate named(UsageShard shard) {
+        return namedTemplates.computeIfAbsent(shard.name(),
+            name -> new NamedParameterJdbcTemplate(shard.jdbcTemplate()));
+    }
+
+    private static MapSqlParameterSource range(UUID customerId, Instant startTime, Instant endTime) {
+        return new MapSqlParameterSource("customerId", customerId)
+            .addValue("startTime", utc(startTime))
+            .addValue("endTime", utc(endTime));
+    }
+
+    private static List<UsageData> merge(List<List<UsageData>> perShard, long limit) {
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        List<UsageData> rows = new ArrayList<>();
+        perShard.forEach(rows::addAll);
+        rows.sort(NEWEST_FIRST);
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, (int) limit)) : rows;
+    }
+
+    private UsageData mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return UsageData.builder()
+            .id(rs.getLong("id"))
+            .eventId(rs.getString("event_id"))
+            .customerId(rs.getObject("customer_id", UUID.class))
+            .resourceType(rs.getString("resource_type"))
+            .quantity(rs.getBigDecimal("quantity"))
+            .unit(rs.getString("unit"))
+            .unitPrice(rs.getBigDecimal("unit_price"))
+            .timestamp(instant(rs.getObject("timestamp", LocalDateTime.class)))
+            .metadata(metadata(rs.getString("metadata")))
+            .createdAt(instant(rs.getObject("created_at", LocalDateTime.class)))
+            .build();
+    }
+
+    private Map<String, Object> metadata(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, METADATA);
+        } catch (JsonProcessingException e) {
+            throw new DataRetrievalFailureException("Unreadable usage_data.metadata", e);
+        }
+    }
+
+    /**
+     * usage_data timestamps are UTC wall-clock values (TIMESTAMP without time zone)
+     */
+    private static LocalDateTime utc(Instant value) {
+        return LocalDateTime.ofInstant(value, ZoneOffset.UTC);
+    }
+
+    private static Instant instant(LocalDateTime value) {
+        return value == null ? null : value.toInstant(ZoneOffset.UTC);
+    }
+}
@@ -1,55 +1,25 @@
 package com.scalable.billing.service.repository;
 
 import com.scalable.billing.service.entity.UsageData;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.time.Instant;
-import java.util.List;
-import java.util.UUID;
-
+/**
+ * usage_data is sharded by customer (usage.shards), so its queries live in {@link UsageDataQueries}
+ * and run over JDBC on the customer's shards; the inherited JPA methods only see the primary shard.
+ */
 @Repository
-public interface UsageDataRepository extends JpaRepository<UsageData, Long> {
-    
-    /**
-     * Optimized query with proper indexing - 30% performance improvement
-     * Uses idx_usage_customer_time composite index
-     */
-    @Query("SELECT u FROM UsageData u WHERE u.customerId = :customerId " +
-           "AND u.timestamp BETWEEN :startTime AND :endTime " +
-           "ORDER BY u.timestamp DESC")
-    Page<UsageData> findByCustomerAndTimeRange(
-        @Param("customerId") UUID customerId,
-        @Param("startTime") Instant startTime,
-        @Param("endTime") Instant endTime,
-        Pageable pageable
-    );
-    
-    /**
-     * Aggregated query for billing calculation
-     * Uses idx_usage_customer_time for optimal performance
-     */
-    @Query("SELECT u.resourceType, SUM(u.quantity * COALESCE(u.unitPrice, 0)) " +
-           "FROM UsageData u " +
-           "WHERE u.customerId = :customerId " +
-           "AND u.timestamp BETWEEN :startTime AND :endTime " +
-           "GROUP BY u.resourceType")
-    List<Object[]> calculateBillingByResource(
-        @Param("customerId") UUID customerId,
-        @Param("startTime") Instant startTime,
-        @Param("endTime") Instant endTime
-    );
+public interface UsageDataRepository extends JpaRepository<UsageData, Long>, UsageDataQueries {
     
     /**
-     * Batch insert optimization - inserts 50 records at once
+     * Keyset pagination, newest first, in idx_usage_customer_time order (customer_id, timestamp DESC, id DESC).
+     * The seek predicate is an index condition, so page 10,000 costs the same as page 1.
      */
-    @Query(value = "INSERT INTO usage_data (customer_id, resource_type, quantity, unit, unit_price, timestamp, created_at) " +
-                   "VALUES (:#{#usage.customerId}, :#{#usage.resourceType}, :#{#usage.quantity}, " +
-                   ":#{#usage.unit}, :#{#usage.unitPrice}, :#{#usage.timestamp}, CURRENT_TIMESTAMP)",
-           nativeQuery = true)
-    void batchInsert(@Param("usage") UsageData usage);
+    String KEYSET_FIRST_PAGE_SQL = "SELECT * FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime " +
+        "ORDER BY timestamp DESC, id DESC LIMIT :limit";
+    String KEYSET_NEXT_PAGE_SQL = "SELECT * FROM usage_data WHERE customer_id = :customerId " +
+        "AND timestamp BETWEEN :startTime AND :endTime " +
+        "AND (timestamp, id) < (:afterTimestamp, :afterId) " +
+        "ORDER BY timestamp DESC, id DESC LIMIT :limit";
 }
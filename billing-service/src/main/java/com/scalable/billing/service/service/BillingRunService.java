@@ -0,0 +1,325 @@
+package com.scalable.billing.service.service;
+
+import com.scalable.billing.common.event.BillingEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.money.FixedPointSum;
+import com.scalable.billing.service.entity.BillingRecord;
+import com.scalable.billing.service.customer.CustomerDirectory;
+import com.scalable.billing.service.outbox.BillingEventOutbox;
+import com.scalable.billing.service.repository.BillingRunRepository;
+import com.scalable.billing.service.repository.BillingRunRepository.LineItem;
+import com.scalable.billing.service.repository.BillingRunRepository.ResourceTotal;
+import com.scalable.billing.service.repository.BillingRunRepository.Run;
+import com.scalable.billing.service.repository.BillingRunRepository.Shard;
+import com.scalable.billing.service.repository.CustomerRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Monthly billing run engine.
+ *
+ * Active customers are split into shards of billing.calculation.batch-size and stored as a
+ * run plan. Workers (billing.calculation.thread-pool-size) claim shards one at a time, aggregate
+ * usage for the whole shard with a single GROUP BY, bulk-insert billing records, line items and
+ * outbox events, and checkpoint the shard in the same transaction. Re-running the same period
+ * resumes the unfinished shards, and gives shards that used up billing.calculation.max-shard-attempts
+ * on an earlier invocation a fresh budget.
+ *
+ * Runs and shards are timed as pipeline stages; billing.run.customers counts the customers of
+ * each shard as billed, skipped (already billed or deleted) or failed.
+ */
+@Service
+@Slf4j
+public class BillingRunService {
+
+    private final BillingRunRepository billingRunRepository;
+    private final CustomerRepository customerRepository;
+    private final CustomerDirectory customerDirectory;
+    private final BillingEventOutbox billingEventOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final PipelineStage runStage;
+    private final PipelineStage shardStage;
+    private final Counter billedCustomers;
+    private final Counter skippedCustomers;
+    private final Counter failedCustomers;
+
+    @Value("${billing.calculation.batch-size:1000}")
+    private int shardSize;
+
+    @Value("${billing.calculation.thread-pool-size:10}")
+    private int threadPoolSize;
+
+    @Value("${billing.calculation.max-shard-attempts:3}")
+    private int maxShardAttempts;
+
+    public BillingRunService(BillingRunRepository billingRunRepository,
+                             CustomerRepository customerRepository,
+                             CustomerDirectory customerDirectory,
+                             BillingEventOutbox billingEventOutbox,
+                             TransactionTemplate transactionTemplate,
+                             MeterRegistry meterRegistry) {
+        this.billingRunRepository = billingRunRepository;
+        this.customerRepository = customerRepository;
+        this.customerDirectory = customerDirectory;
+        this.billingEventOutbox = billingEventOutbox;
+        this.transactionTemplate = transactionTemplate;
+        this.runStage = PipelineStage.register("billing.run", meterRegistry);
+        this.shardStage = PipelineStage.register("billing.shard", meterRegistry);
+        this.billedCustomers = customerCounter(meterRegistry, "billed");
+        this.skippedCustomers = customerCounter(meterRegistry, "skipped");
+        this.failedCustomers = customerCounter(meterRegistry, "failed");
+    }
+
+    /**
+     * Runs (or resumes) billing for all active customers for the period
+     */
+    public void runBilling(LocalDate periodStart, LocalDate periodEnd) {
+        Run run = billingRunRepository.findRun(periodStart, periodEnd)
+            .orElseGet(() -> planRun(periodStart, periodEnd));
+        if ("COMPLETED".equals(run.status())) {
+            log.info("Billing run for {} - {} already completed", periodStart, periodEnd);
+            return;
+        }
+        execute(run, periodStart, periodEnd);
+    }
+
+    /**
+     * Resumes the period's billing run if one was started and has not completed
+     * @return false if there is no such run
+     */
+    public boolean resumeBilling(LocalDate periodStart, LocalDate periodEnd) {
+        Optional<Run> run = billingRunRepository.findRun(periodStart, periodEnd)
+            .filter(found -> !"COMPLETED".equals(found.status()));
+        if (run.isEmpty()) {
+            return false;
+        }
+        log.info("Resuming {} billing run {} for {} - {}", run.get().status(), run.get().id(), periodStart, periodEnd);
+        execute(run.get(), periodStart, periodEnd);
+        return true;
+    }
+
+    private void execute(Run run, LocalDate periodStart, LocalDate periodEnd) {
+        int retried = billingRunRepository.retryFailedShards(run.id());
+        if (retried > 0) {
+            log.info("Billing run {} retrying {} failed shards", run.id(), retried);
+        }
+
+        long start = System.nanoTime();
+        log.info("Executing billing run {} for {} - {} with {} workers", run.id(), periodStart, periodEnd, threadPoolSize);
+        Set<Integer> failedShards = ConcurrentHashMap.newKeySet();
+        AtomicInteger recordsCreated = new AtomicInteger();
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threadPoolSize, r -> {
+            Thread thread = new Thread(r, "billing-run-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threadPoolSize; i++) {
+                futures.add(workers.submit(() -> drainShards(run.id(), periodStart, periodEnd, failedShards, recordsCreated)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Billing run {} interrupted, it will resume on the next invocation", run.id());
+            runStage.recordFailure(start);
+            return;
+        } catch (Exception e) {
+            log.error("Billing run {} worker failed", run.id(), e);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        int remaining = billingRunRepository.countIncompleteShards(run.id());
+        if (remaining == 0) {
+            billingRunRepository.markRunStatus(run.id(), "COMPLETED");
+            runStage.recordSuccess(start);
+            log.info("Billing run {} completed, {} billing records created", run.id(), recordsCreated.get());
+        } else {
+            billingRunRepository.markRunStatus(run.id(), "FAILED");
+            runStage.recordFailure(start);
+            log.error("Billing run {} finished with {} incomplete shards ({} records created); "
+                + "the next scheduled trigger resumes it",
+                run.id(), remaining, recordsCreated.get());
+        }
+    }
+
+    private Run planRun(LocalDate periodStart, LocalDate periodEnd) {
+        List<UUID> customerIds = customerRepository.findAllActiveIds();
+        List<List<UUID>> shards = new ArrayList<>();
+        for (int i = 0; i < customerIds.size(); i += shardSize) {
+            shards.add(customerIds.subList(i, Math.min(i + shardSize, customerIds.size())));
+        }
+
+        UUID runId = UUID.randomUUID();
+        Boolean created = transactionTemplate.execute(status ->
+            billingRunRepository.createRun(runId, periodStart, periodEnd, shards));
+        if (Boolean.TRUE.equals(created)) {
+            log.info("Planned billing run {} for {} active customers in {} shards", runId, customerIds.size(), shards.size());
+            return new Run(runId, "RUNNING");
+        }
+        return billingRunRepository.findRun(periodStart, periodEnd)
+            .orElseThrow(() -> new IllegalStateException("Billing run for period disappeared during planning"));
+    }
+
+    private void drainShards(UUID runId, LocalDate periodStart, LocalDate periodEnd,
+                             Set<Integer> failedShards, AtomicInteger recordsCreated) {
+        while (!Thread.currentThread().isInterrupted()) {
+            AtomicInteger claimed = new AtomicInteger(-1);
+            AtomicInteger claimedCustomers = new AtomicInteger();
+            long start = System.nanoTime();
+            Integer billed;
+            try {
+                billed = transactionTemplate.execute(status -> {
+                    Optional<Shard> shard = billingRunRepository.claimNextShard(runId, maxShardAttempts, failedShards);
+                    if (shard.isEmpty()) {
+                        return null;
+                    }
+                    claimed.set(shard.get().shardNo());
+                    claimedCustomers.set(shard.get().customerIds().size());
+                    int records = billShard(shard.get(), periodStart, periodEnd);
+                    billingRunRepository.markShardCompleted(runId, shard.get().shardNo(), records);
+                    return records;
+                });
+            } catch (RuntimeException e) {
+                if (claimed.get() < 0) {
+                    throw e;
+                }
+                log.error("Billing run {} shard {} failed", runId, claimed.get(), e);
+                shardStage.recordFailure(start);
+                failedCustomers.increment(claimedCustomers.get());
+                failedShards.add(claimed.get());
+                billingRunRepository.markShardFailed(runId, claimed.get(), String.valueOf(e.getMessage()));
+                continue;
+            }
+
+            if (billed == null) {
+                return;
+            }
+            recordsCreated.addAndGet(billed);
+            shardStage.recordSuccess(start);
+            shardStage.recordBatchSize(claimedCustomers.get());
+            billedCustomers.increment(billed);
+            skippedCustomers.increment(claimedCustomers.get() - billed);
+            log.debug("Billing run {} shard {} committed {} records", runId, claimed.get(), billed);
+        }
+    }
+
+    private int billShard(Shard shard, LocalDate periodStart, LocalDate periodEnd) {
+        Instant startTime = periodStart.atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant endTime = periodEnd.atTime(23, 59, 59).toInstant(ZoneOffset.UTC);
+
+        Set<UUID> alreadyBilled = billingRunRepository.findBilledCustomers(shard.customerIds(), periodStart, periodEnd);
+        // One query for the shard's cache misses; customers deleted since planning are skipped
+        // instead of failing the shard on the billing_records foreign key
+        Set<UUID> existing = customerDirectory.findAll(shard.customerIds()).keySet();
+        Map<UUID, List<ResourceTotal>> usageByCustomer = new HashMap<>();
+        for (ResourceTotal total : billingRunRepository.aggregateUsage(shard.customerIds(), startTime, endTime)) {
+            usageByCustomer.computeIfAbsent(total.customerId(), id -> new ArrayList<>()).add(total);
+        }
+
+        List<BillingRecord> records = new ArrayList<>(shard.customerIds().size());
+        List<LineItem> lineItems = new ArrayList<>();
+        List<BillingEvent> events = new ArrayList<>(shard.customerIds().size());
+        FixedPointSum customerAmount = new FixedPointSum(FixedPoint.AMOUNT_SCALE);
+        Instant now = Instant.now();
+
+        for (UUID customerId : shard.customerIds()) {
+            if (alreadyBilled.contains(customerId) || !existing.contains(customerId)) {
+                continue;
+            }
+            List<ResourceTotal> resources = usageByCustomer.getOrDefault(customerId, Collections.emptyList());
+            customerAmount.reset();
+            for (ResourceTotal resource : resources) {
+                customerAmount.add(resource.amountUnits());
+            }
+            BigDecimal totalAmount = customerAmount.toDecimal(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING);
+
+            BillingRecord record = BillingRecord.builder()
+                .id(UUID.randomUUID())
+                .customerId(customerId)
+                .billingPeriodStart(periodStart)
+                .billingPeriodEnd(periodEnd)
+                .totalAmount(totalAmount)
+                .status("PENDING")
+                .invoiceNumber(BillingService.generateInvoiceNumber(customerId, periodStart, periodEnd))
+                .dueDate(periodEnd.plusDays(30))
+                .build();
+            records.add(record);
+
+            for (ResourceTotal resource : resources) {
+                lineItems.add(new LineItem(
+                    record.getId(),
+                    resource.resourceType() + " usage",
+                    resource.resourceType(),
+                    resource.quantityUnits(),
+                    effectiveUnitPrice(resource),
+                    FixedPoint.rescale(resource.amountUnits(), FixedPoint.AMOUNT_SCALE, FixedPoint.MONEY_SCALE,
+                        FixedPoint.MONEY_ROUNDING)));
+            }
+
+            events.add(BillingEvent.builder()
+                .eventId(UUID.randomUUID().toString())
+                .billingId(record.getId())
+                .customerId(customerId)
+                .billingPeriodStart(periodStart)
+                .billingPeriodEnd(periodEnd)
+                .totalAmount(totalAmount)
+                .status("CALCULATED")
+                .invoiceNumber(record.getInvoiceNumber())
+                .timestamp(now)
+                .build());
+        }
+
+        billingRunRepository.insertBillingRecords(records);
+        billingRunRepository.insertLineItems(lineItems);
+        billingEventOutbox.enqueueAll(events);
+        return records.size();
+    }
+
+    private static Counter customerCounter(MeterRegistry registry, String result) {
+        return Counter.builder("billing.run.customers")
+            .description("Customers processed by billing runs")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    /**
+     * Average price over the period in PRICE_SCALE units (the DECIMAL(10,4) of billing_line_items.unit_price)
+     */
+    private static long effectiveUnitPrice(ResourceTotal resource) {
+        if (resource.quantityUnits() == 0) {
+            return 0;
+        }
+        return FixedPoint.divide(resource.amountUnits(), FixedPoint.AMOUNT_SCALE,
+            resource.quantityUnits(), FixedPoint.QUANTITY_SCALE, FixedPoint.PRICE_SCALE, RoundingMode.HALF_UP);
+    }
+}
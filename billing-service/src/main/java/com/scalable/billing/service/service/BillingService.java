@@ -1,20 +1,27 @@
 package com.scalable.billing.service.service;
 
+import com.scalable.billing.common.constants.CacheNames;
 import com.scalable.billing.common.dto.BillingRecordDTO;
+import com.scalable.billing.common.dto.CursorPage;
+import com.scalable.billing.common.dto.KeysetCursor;
+import com.scalable.billing.common.dto.UsageRecordDTO;
 import com.scalable.billing.common.event.BillingEvent;
-import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.common.money.FixedPoint;
+import com.scalable.billing.common.money.FixedPointSum;
+import com.scalable.billing.common.replica.ReadYourWrites;
 import com.scalable.billing.service.entity.BillingRecord;
-import com.scalable.billing.service.entity.Customer;
 import com.scalable.billing.service.entity.UsageData;
+import com.scalable.billing.service.customer.CustomerDirectory;
+import com.scalable.billing.service.customer.CustomerSummary;
+import com.scalable.billing.service.outbox.BillingEventOutbox;
 import com.scalable.billing.service.repository.BillingRecordRepository;
-import com.scalable.billing.service.repository.CustomerRepository;
 import com.scalable.billing.service.repository.UsageDataRepository;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -23,40 +30,39 @@ import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.UUID;
-
-import static com.scalable.billing.common.constants.KafkaTopics.BILLING_EVENTS;
+import java.util.function.Function;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class BillingService {
     
+    public static final int MAX_CURSOR_PAGE_SIZE = 500;
+    
     private final UsageDataRepository usageDataRepository;
     private final BillingRecordRepository billingRecordRepository;
-    private final CustomerRepository customerRepository;
-    private final KafkaTemplate<String, BillingEvent> kafkaTemplate;
+    private final CustomerDirectory customerDirectory;
+    private final BillingEventOutbox billingEventOutbox;
+    private final BillingRunService billingRunService;
+    private final ReadYourWrites readYourWrites;
+    private final PipelineStage calculateStage;
     
-    /**
-     * Ingest usage event and save to database
-     * Optimized with batch processing in repository layer
-     */
-    @Transactional
-    public void ingestUsageEvent(UsageEvent event) {
-        log.debug("Ingesting usage event: {}", event.getEventId());
-        
-        UsageData usageData = UsageData.builder()
-            .customerId(event.getCustomerId())
-            .resourceType(event.getResourceType())
-            .quantity(event.getQuantity())
-            .unit(event.getUnit())
-            .unitPrice(event.getUnitPrice())
-            .timestamp(event.getTimestamp())
-            .metadata(event.getMetadata())
-            .build();
-        
-        usageDataRepository.save(usageData);
+    public BillingService(UsageDataRepository usageDataRepository,
+                          BillingRecordRepository billingRecordRepository,
+                          CustomerDirectory customerDirectory,
+                          BillingEventOutbox billingEventOutbox,
+                          BillingRunService billingRunService,
+                          ReadYourWrites readYourWrites,
+                          MeterRegistry meterRegistry) {
+        this.usageDataRepository = usageDataRepository;
+        this.billingRecordRepository = billingRecordRepository;
+        this.customerDirectory = customerDirectory;
+        this.billingEventOutbox = billingEventOutbox;
+        this.billingRunService = billingRunService;
+        this.readYourWrites = readYourWrites;
+        this.calculateStage = PipelineStage.register("billing.calculate", meterRegistry);
     }
     
     /**
@@ -66,14 +72,24 @@ public class BillingService {
     @Transactional
     public BillingRecordDTO calculateBilling(UUID customerId, LocalDate periodStart, LocalDate periodEnd) {
         log.info("Calculating billing for customer {} from {} to {}", customerId, periodStart, periodEnd);
-        
+        long start = System.nanoTime();
+        try {
+            BillingRecordDTO billing = calculate(customerId, periodStart, periodEnd);
+            calculateStage.recordSuccess(start);
+            return billing;
+        } catch (RuntimeException e) {
+            calculateStage.recordFailure(start);
+            throw e;
+        }
+    }
+    
+    private BillingRecordDTO calculate(UUID customerId, LocalDate periodStart, LocalDate periodEnd) {
         // Check if already exists
         if (billingRecordRepository.existsByCustomerAndPeriod(customerId, periodStart, periodEnd)) {
             throw new IllegalStateException("Billing record already exists for this period");
         }
         
-        Customer customer = customerRepository.findById(customerId)
-            .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+        CustomerSummary customer = customerDirectory.require(customerId);
         
         Instant startTime = periodStart.atStartOfDay().toInstant(java.time.ZoneOffset.UTC);
         Instant endTime = periodEnd.atTime(23, 59, 59).toInstant(java.time.ZoneOffset.UTC);
@@ -83,11 +99,10 @@ public class BillingService {
             customerId, startTime, endTime
         );
         
-        BigDecimal totalAmount = resourceCosts.stream()
-            .map(arr -> (BigDecimal) arr[1])
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal totalAmount = sumResourceCosts(resourceCosts)
+            .toDecimal(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING);
         
-        String invoiceNumber = generateInvoiceNumber(customer);
+        String invoiceNumber = generateInvoiceNumber(customerId, periodStart, periodEnd);
         
         BillingRecord billingRecord = BillingRecord.builder()
             .customerId(customerId)
@@ -101,7 +116,7 @@ public class BillingService {
         
         billingRecord = billingRecordRepository.save(billingRecord);
         
-        // Publish billing event
+        // Publish billing event through the outbox, committed atomically with the billing record
         BillingEvent billingEvent = BillingEvent.builder()
             .eventId(UUID.randomUUID().toString())
             .billingId(billingRecord.getId())
@@ -114,69 +129,155 @@ public class BillingService {
             .timestamp(Instant.now())
             .build();
         
-        kafkaTemplate.send(BILLING_EVENTS, billingEvent.getEventId(), billingEvent);
+        billingEventOutbox.enqueue(billingEvent);
+        readYourWrites.written(customerId);
         
-        return mapToDTO(billingRecord, customer);
+        return mapToDTO(billingRecord, customer.name());
     }
     
     /**
-     * Get billing records for customer with caching (Redis)
+     * Get billing records for customer with caching (Caffeine L1 + Redis L2, evicted on BILLING_EVENTS).
+     * Read from a replica, one that has caught up with the customer's last calculateBilling and
+     * last eviction, so a miss never fills the shared L2 with records older than the eviction.
      */
-    @Cacheable(value = "customer-billing", key = "#customerId + '-' + #page + '-' + #size")
+    @Cacheable(value = CacheNames.CUSTOMER_BILLING, key = "#customerId + ':' + #page + ':' + #size")
+    @Transactional(readOnly = true)
     public Page<BillingRecordDTO> getBillingRecords(UUID customerId, int page, int size) {
         log.debug("Fetching billing records for customer: {}", customerId);
         
-        Page<BillingRecord> records = billingRecordRepository.findByCustomerIdOrderByCreatedAtDesc(
-            customerId, PageRequest.of(page, size)
-        );
-        
-        Customer customer = customerRepository.findById(customerId)
-            .orElseThrow(() -> new IllegalArgumentException("Customer not found"));
+        return readYourWrites.read(customerId, () -> {
+            Page<BillingRecord> records = billingRecordRepository.findByCustomerIdOrderByCreatedAtDesc(
+                customerId, PageRequest.of(page, size)
+            );
+            
+            CustomerSummary customer = customerDirectory.require(customerId);
+            
+            return records.map(record -> mapToDTO(record, customer.name()));
+        });
+    }
+    
+    /**
+     * Keyset page of billing records, newest first; a null cursor starts at the newest record.
+     * Cost is independent of how deep the client has paged and no total is counted.
+     * Read from a replica, one that has caught up with the customer's last calculateBilling.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<BillingRecordDTO> getBillingRecordsPage(UUID customerId, String cursor, int size) {
+        int limit = clampPageSize(size);
+        return readYourWrites.read(customerId, () -> {
+            List<BillingRecord> records;
+            if (cursor == null) {
+                records = billingRecordRepository.findFirstPage(customerId, limit + 1);
+            } else {
+                KeysetCursor after = KeysetCursor.decode(cursor);
+                records = billingRecordRepository.findPageAfter(
+                    customerId, after.position(), UUID.fromString(after.id()), limit + 1
+                );
+            }
+            
+            CustomerSummary customer = customerDirectory.require(customerId);
+            
+            return cursorPage(records, limit, record -> mapToDTO(record, customer.name()),
+                record -> new KeysetCursor(record.getCreatedAt(), record.getId().toString()));
+        });
+    }
+    
+    /**
+     * Keyset page of a customer's usage in [startTime, endTime], newest first
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<UsageRecordDTO> getUsagePage(UUID customerId, Instant startTime, Instant endTime,
+                                                   String cursor, int size) {
+        int limit = clampPageSize(size);
+        List<UsageData> usage;
+        if (cursor == null) {
+            usage = usageDataRepository.findFirstPage(customerId, startTime, endTime, limit + 1);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            usage = usageDataRepository.findPageAfter(
+                customerId, startTime, endTime, after.position(), Long.parseLong(after.id()), limit + 1
+            );
+        }
         
-        return records.map(record -> mapToDTO(record, customer));
+        return cursorPage(usage, limit, BillingService::mapUsageToDTO,
+            row -> new KeysetCursor(row.getTimestamp(), row.getId().toString()));
     }
     
     /**
-     * Scheduled job to generate monthly billing (runs at 1 AM daily)
+     * Scheduled job to generate monthly billing (runs at 1 AM daily).
+     * The day after month end it starts the sharded, checkpointed billing run for the previous month;
+     * on the other days it resumes that run if it crashed or finished FAILED.
      */
     @Scheduled(cron = "${billing.invoice.generation.schedule:0 0 1 * * ?}")
-    @Transactional
     public void generateMonthlyBilling() {
-        log.info("Starting scheduled monthly billing generation");
-        
-        LocalDate yesterday = LocalDate.now().minusDays(1);
-        if (yesterday.getDayOfMonth() != yesterday.lengthOfMonth()) {
-            log.debug("Not end of month, skipping");
-            return;
+        LocalDate today = LocalDate.now();
+        YearMonth lastMonth = YearMonth.from(today).minusMonths(1);
+        if (today.getDayOfMonth() == 1) {
+            log.info("Starting scheduled monthly billing generation for {}", lastMonth);
+            billingRunService.runBilling(lastMonth.atDay(1), lastMonth.atEndOfMonth());
+        } else if (!billingRunService.resumeBilling(lastMonth.atDay(1), lastMonth.atEndOfMonth())) {
+            log.debug("Not end of month and no unfinished billing run for {}, skipping", lastMonth);
         }
-        
-        YearMonth lastMonth = YearMonth.from(yesterday);
-        LocalDate periodStart = lastMonth.atDay(1);
-        LocalDate periodEnd = lastMonth.atEndOfMonth();
-        
-        List<Customer> activeCustomers = customerRepository.findAllActive();
-        log.info("Generating billing for {} active customers", activeCustomers.size());
-        
-        for (Customer customer : activeCustomers) {
-            try {
-                calculateBilling(customer.getId(), periodStart, periodEnd);
-            } catch (Exception e) {
-                log.error("Failed to generate billing for customer {}", customer.getId(), e);
-            }
+    }
+    
+    /**
+     * Unique because a customer has at most one billing record per period (idx_billing_customer_period)
+     */
+    static String generateInvoiceNumber(UUID customerId, LocalDate periodStart, LocalDate periodEnd) {
+        return String.format("INV-%s-%s-%s",
+            customerId.toString().toUpperCase(),
+            periodStart.format(DateTimeFormatter.BASIC_ISO_DATE),
+            periodEnd.format(DateTimeFormatter.BASIC_ISO_DATE));
+    }
+    
+    /**
+     * Exact total, in AMOUNT_SCALE units, of the (resourceType, cost) rows returned by calculateBillingByResource
+     */
+    static FixedPointSum sumResourceCosts(List<Object[]> resourceCosts) {
+        FixedPointSum total = new FixedPointSum(FixedPoint.AMOUNT_SCALE);
+        for (Object[] row : resourceCosts) {
+            total.add((BigDecimal) row[1]);
         }
+        return total;
     }
     
-    private String generateInvoiceNumber(Customer customer) {
-        return String.format("INV-%s-%d", 
-            customer.getId().toString().substring(0, 8).toUpperCase(),
-            System.currentTimeMillis());
+    static int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_CURSOR_PAGE_SIZE));
+    }
+    
+    /**
+     * Rows were fetched with limit + 1; the extra row only tells whether another page exists
+     */
+    static <E, T> CursorPage<T> cursorPage(List<E> rows, int limit, Function<E, T> mapper,
+                                           Function<E, KeysetCursor> position) {
+        boolean hasNext = rows.size() > limit;
+        List<E> page = hasNext ? rows.subList(0, limit) : rows;
+        return CursorPage.<T>builder()
+            .content(page.stream().map(mapper).toList())
+            .size(page.size())
+            .hasNext(hasNext)
+            .nextCursor(hasNext ? position.apply(page.get(page.size() - 1)).encode() : null)
+            .build();
+    }
+    
+    static UsageRecordDTO mapUsageToDTO(UsageData usage) {
+        return UsageRecordDTO.builder()
+            .id(usage.getId())
+            .eventId(usage.getEventId())
+            .customerId(usage.getCustomerId())
+            .resourceType(usage.getResourceType())
+            .quantity(usage.getQuantity())
+            .unit(usage.getUnit())
+            .unitPrice(usage.getUnitPrice())
+            .timestamp(usage.getTimestamp())
+            .build();
     }
     
-    private BillingRecordDTO mapToDTO(BillingRecord record, Customer customer) {
+    static BillingRecordDTO mapToDTO(BillingRecord record, String customerName) {
         return BillingRecordDTO.builder()
             .id(record.getId())
             .customerId(record.getCustomerId())
-            .customerName(customer.getName())
+            .customerName(customerName)
             .billingPeriodStart(record.getBillingPeriodStart())
             .billingPeriodEnd(record.getBillingPeriodEnd())
             .totalAmount(record.getTotalAmount())
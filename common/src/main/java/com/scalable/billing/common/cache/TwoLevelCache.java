@@ -0,0 +1,210 @@
+package com.scalable.billing.common.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RMapAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.redisson.client.codec.Codec;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring cache with a size-bounded in-process L1 (Caffeine) in front of a shared L2 (Redis).
+ *
+ * Keys are grouped into regions: the part of the key before the first ':' (usually a customer
+ * id), or {@link #GLOBAL_REGION} when there is none. Each region is one Redis hash, so a write
+ * to a customer's data invalidates everything cached for that customer with a single DEL.
+ * Eviction always clears L2 before L1, so a replica cannot refill L1 from a stale L2 entry.
+ * Redis errors are logged and treated as misses; the cache never fails a read.
+ */
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    public static final String GLOBAL_REGION = "_";
+    public static final char REGION_SEPARATOR = ':';
+
+    private final String name;
+    private final Cache<Object, Object> local;
+    private final RedissonClient redissonClient;
+    private final Codec codec;
+    private final Duration remoteTtl;
+    private final TierMetrics l1Metrics;
+    private final TierMetrics l2Metrics;
+
+    public TwoLevelCache(String name, Cache<Object, Object> local, RedissonClient redissonClient, Codec codec,
+                         Duration remoteTtl, MeterRegistry meterRegistry) {
+        super(false);
+        this.name = name;
+        this.local = local;
+        this.redissonClient = redissonClient;
+        this.codec = codec;
+        this.remoteTtl = remoteTtl;
+        this.l1Metrics = new TierMetrics(name, "l1", meterRegistry);
+        this.l2Metrics = new TierMetrics(name, "l2", meterRegistry);
+    }
+
+    public static String regionOf(Object key) {
+        String value = key.toString();
+        int separator = value.indexOf(REGION_SEPARATOR);
+        return separator > 0 ? value.substring(0, separator) : GLOBAL_REGION;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long start = System.nanoTime();
+        Object value = local.getIfPresent(key);
+        l1Metrics.record(value != null, start);
+        if (value != null) {
+            return value;
+        }
+
+        start = System.nanoTime();
+        try {
+            value = remoteMap(key).get(key.toString());
+        } catch (RedisException e) {
+            log.warn("L2 read failed for cache {}: {}", name, e.getMessage());
+            value = null;
+        }
+        l2Metrics.record(value != null, start);
+        if (value != null) {
+            local.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            return;
+        }
+        local.put(key, value);
+        try {
+            RBatch batch = redissonClient.createBatch();
+            RMapAsync<String, Object> map = batch.getMap(regionName(regionOf(key)), codec);
+            map.fastPutAsync(key.toString(), value);
+            map.expireIfNotSetAsync(remoteTtl);
+            batch.execute();
+        } catch (RedisException e) {
+            log.warn("L2 write failed for cache {}: {}", name, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        try {
+            remoteMap(key).fastRemove(key.toString());
+        } catch (RedisException e) {
+            log.warn("L2 evict failed for cache {}: {}", name, e.getMessage());
+        }
+        local.invalidate(key);
+    }
+
+    @Override
+    public void clear() {
+        try {
+            redissonClient.getKeys().deleteByPattern(regionName("*"));
+        } catch (RedisException e) {
+            log.warn("L2 clear failed for cache {}: {}", name, e.getMessage());
+        }
+        local.invalidateAll();
+    }
+
+    /**
+     * Drops every entry of the given regions from L2, then from this replica's L1
+     */
+    public void evictRegions(Collection<String> regions) {
+        if (regions.isEmpty()) {
+            return;
+        }
+        try {
+            RBatch batch = redissonClient.createBatch();
+            for (String region : regions) {
+                batch.getMap(regionName(region), codec).deleteAsync();
+            }
+            batch.execute();
+        } catch (RedisException e) {
+            log.warn("L2 region evict failed for cache {}: {}", name, e.getMessage());
+        }
+        evictLocalRegions(regions);
+    }
+
+    /**
+     * Drops the given regions from this replica's L1 only
+     */
+    public void evictLocalRegions(Collection<String> regions) {
+        Set<String> lookup = regions instanceof Set<String> set ? set : new HashSet<>(regions);
+        local.asMap().keySet().removeIf(key -> lookup.contains(regionOf(key)));
+    }
+
+    private RMap<String, Object> remoteMap(Object key) {
+        return redissonClient.getMap(regionName(regionOf(key)), codec);
+    }
+
+    private String regionName(String region) {
+        return "cache:" + name + REGION_SEPARATOR + region;
+    }
+
+    private static final class TierMetrics {
+
+        private final Counter hits;
+        private final Counter misses;
+        private final Timer latency;
+
+        TierMetrics(String cache, String tier, MeterRegistry meterRegistry) {
+            hits = Counter.builder("cache.tier.gets")
+                .tag("cache", cache).tag("tier", tier).tag("result", "hit")
+                .register(meterRegistry);
+            misses = Counter.builder("cache.tier.gets")
+                .tag("cache", cache).tag("tier", tier).tag("result", "miss")
+                .register(meterRegistry);
+            latency = Timer.builder("cache.tier.latency")
+                .description("Lookup time per cache tier")
+                .tag("cache", cache).tag("tier", tier)
+                .register(meterRegistry);
+        }
+
+        void record(boolean hit, long startNanos) {
+            latency.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            (hit ? hits : misses).increment();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.scalable.billing.common.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.redisson.codec.SerializationCodec;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Creates a {@link TwoLevelCache} per cache name on first use. L1 entries expire well before
+ * L2 ones so that a missed invalidation event only leaves a replica stale for the L1 TTL.
+ * Cached values are Java-serialized into Redis and must implement Serializable.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+    private final long localMaxSize;
+    private final Duration localTtl;
+    private final Duration remoteTtl;
+    private final Codec codec = new CompositeCodec(StringCodec.INSTANCE, new SerializationCodec());
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(RedissonClient redissonClient, MeterRegistry meterRegistry,
+                                long localMaxSize, Duration localTtl, Duration remoteTtl) {
+        this.redissonClient = redissonClient;
+        this.meterRegistry = meterRegistry;
+        this.localMaxSize = localMaxSize;
+        this.localTtl = localTtl;
+        this.remoteTtl = remoteTtl;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return getTwoLevelCache(name);
+    }
+
+    public TwoLevelCache getTwoLevelCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private TwoLevelCache createCache(String name) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> local = Caffeine.newBuilder()
+            .maximumSize(localMaxSize)
+            .expireAfterWrite(localTtl)
+            .build();
+        return new TwoLevelCache(name, local, redissonClient, codec, remoteTtl, meterRegistry);
+    }
+}
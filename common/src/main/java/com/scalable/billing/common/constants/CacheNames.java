@@ -0,0 +1,16 @@
+package com.scalable.billing.common.constants;
+
+/**
+ * Cache name constants. Keys start with the customer id followed by ':' so that
+ * TwoLevelCache can invalidate a customer's entries as one region.
+ */
+public final class CacheNames {
+
+    public static final String CUSTOMER_BILLING = "customer-billing";
+    public static final String USAGE_SUMMARY = "usage-summary";
+    public static final String COST_TREND = "cost-trend";
+
+    private CacheNames() {
+        throw new AssertionError("Cannot instantiate constants class");
+    }
+}
@@ -0,0 +1,35 @@
+package com.scalable.billing.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Slice of a keyset-paginated listing. There is no total count; pass next_cursor
+ * back to get the following page until has_next is false.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("content")
+    private List<T> content;
+
+    @JsonProperty("size")
+    private int size;
+
+    @JsonProperty("has_next")
+    private boolean hasNext;
+
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+}
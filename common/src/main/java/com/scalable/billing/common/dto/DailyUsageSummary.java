@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.UUID;
@@ -17,7 +18,9 @@ import java.util.UUID;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class DailyUsageSummary {
+public class DailyUsageSummary implements Serializable {
+
+    private static final long serialVersionUID = 1L;
     
     @JsonProperty("customer_id")
     private UUID customerId;
@@ -0,0 +1,59 @@
+package com.scalable.billing.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO for the approximate number of distinct customers with usage, per day and over a date range
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DistinctCustomerReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("start_date")
+    private LocalDate startDate;
+
+    @JsonProperty("end_date")
+    private LocalDate endDate;
+
+    /**
+     * Customers active on any day of the range, each counted once
+     */
+    @JsonProperty("distinct_customers")
+    private long distinctCustomers;
+
+    /**
+     * Of every count in the report; about two thirds of estimates are within one standard error
+     */
+    @JsonProperty("relative_standard_error")
+    private double relativeStandardError;
+
+    @JsonProperty("daily")
+    private List<DailyCount> daily;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class DailyCount implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @JsonProperty("usage_date")
+        private LocalDate usageDate;
+
+        @JsonProperty("distinct_customers")
+        private long distinctCustomers;
+    }
+}
@@ -0,0 +1,39 @@
+package com.scalable.billing.common.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token for keyset pagination: the sort position (a timestamp at
+ * microsecond precision, like PostgreSQL TIMESTAMP) and the id of the last row returned.
+ * Clients must treat the encoded form as opaque.
+ */
+public record KeysetCursor(Instant position, String id) {
+
+    private static final char SEPARATOR = '|';
+
+    public String encode() {
+        long micros = ChronoUnit.MICROS.between(Instant.EPOCH, position);
+        String raw = Long.toString(micros, 36) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token was not produced by {@link #encode()}
+     */
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == raw.length() - 1) {
+                throw new IllegalArgumentException("Malformed cursor");
+            }
+            long micros = Long.parseLong(raw.substring(0, separator), 36);
+            return new KeysetCursor(Instant.EPOCH.plus(micros, ChronoUnit.MICROS), raw.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
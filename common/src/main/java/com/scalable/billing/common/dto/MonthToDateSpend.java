@@ -0,0 +1,80 @@
+package com.scalable.billing.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO for a customer's spend in the current (UTC) month so far
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MonthToDateSpend implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("customer_id")
+    private UUID customerId;
+
+    @JsonProperty("month")
+    private String month;
+
+    /**
+     * Exact sum of quantity * unit price, as calculateBillingByResource returns it
+     */
+    @JsonProperty("total_cost")
+    private BigDecimal totalCost;
+
+    /**
+     * totalCost rounded to the money scale, as a billing record would carry it
+     */
+    @JsonProperty("total_amount")
+    private BigDecimal totalAmount;
+
+    @JsonProperty("resources")
+    private List<ResourceSpend> resources;
+
+    /**
+     * Kafka timestamp of the newest usage event included
+     */
+    @JsonProperty("as_of")
+    private Instant asOf;
+
+    /**
+     * Days up to and including this one were last reconciled against daily_usage_rollup
+     */
+    @JsonProperty("reconciled_through")
+    private LocalDate reconciledThrough;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ResourceSpend implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @JsonProperty("resource_type")
+        private String resourceType;
+
+        @JsonProperty("total_quantity")
+        private BigDecimal totalQuantity;
+
+        @JsonProperty("total_cost")
+        private BigDecimal totalCost;
+
+        @JsonProperty("event_count")
+        private long eventCount;
+    }
+}
@@ -0,0 +1,67 @@
+package com.scalable.billing.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO for the approximate top spenders of a date range (customers or resource types)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopUsageReport implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("dimension")
+    private String dimension;
+
+    @JsonProperty("start_date")
+    private LocalDate startDate;
+
+    @JsonProperty("end_date")
+    private LocalDate endDate;
+
+    /**
+     * Exact total cost of all keys in the range
+     */
+    @JsonProperty("total_cost")
+    private BigDecimal totalCost;
+
+    /**
+     * Estimates are never below the true cost and exceed it by at most this much,
+     * with the given confidence
+     */
+    @JsonProperty("error_bound")
+    private BigDecimal errorBound;
+
+    @JsonProperty("confidence")
+    private double confidence;
+
+    @JsonProperty("entries")
+    private List<Entry> entries;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @JsonProperty("key")
+        private String key;
+
+        @JsonProperty("estimated_cost")
+        private BigDecimal estimatedCost;
+    }
+}
@@ -0,0 +1,48 @@
+package com.scalable.billing.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * DTO for a stored usage record
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageRecordDTO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("id")
+    private Long id;
+
+    @JsonProperty("event_id")
+    private String eventId;
+
+    @JsonProperty("customer_id")
+    private UUID customerId;
+
+    @JsonProperty("resource_type")
+    private String resourceType;
+
+    @JsonProperty("quantity")
+    private BigDecimal quantity;
+
+    @JsonProperty("unit")
+    private String unit;
+
+    @JsonProperty("unit_price")
+    private BigDecimal unitPrice;
+
+    @JsonProperty("timestamp")
+    private Instant timestamp;
+}
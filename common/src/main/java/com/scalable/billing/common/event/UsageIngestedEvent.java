@@ -0,0 +1,74 @@
+package com.scalable.billing.common.event;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Event published after a usage batch is committed to usage_data and daily_usage_rollup
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageIngestedEvent {
+
+    @JsonProperty("event_id")
+    private String eventId;
+
+    @JsonProperty("customer_ids")
+    private List<UUID> customerIds;
+
+    @JsonProperty("usage_dates")
+    private List<LocalDate> usageDates;
+
+    @JsonProperty("event_count")
+    private int eventCount;
+
+    @JsonProperty("timestamp")
+    private Instant timestamp;
+
+    /**
+     * Compressed HdrHistogram of event timestamp to database write latency, in milliseconds,
+     * of the batch's events
+     */
+    @JsonProperty("latency_histogram")
+    private byte[] latencyHistogram;
+
+    /**
+     * What the batch added to daily_usage_rollup, per (customer, day, resource type);
+     * rows skipped as duplicates by the database are not included
+     */
+    @JsonProperty("usage_totals")
+    private List<UsageTotal> usageTotals;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class UsageTotal {
+
+        @JsonProperty("customer_id")
+        private UUID customerId;
+
+        @JsonProperty("usage_date")
+        private LocalDate usageDate;
+
+        @JsonProperty("resource_type")
+        private String resourceType;
+
+        @JsonProperty("total_cost")
+        private BigDecimal totalCost;
+
+        @JsonProperty("event_count")
+        private long eventCount;
+    }
+}
@@ -0,0 +1,86 @@
+package com.scalable.billing.common.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The meters of one named pipeline stage, shared by all services so every stage reports
+ * the same way:
+ * <ul>
+ *   <li>pipeline.stage.duration (timer, tags stage and result=success|failure)</li>
+ *   <li>pipeline.batch.size (summary of items per call, tag stage)</li>
+ *   <li>pipeline.event.lag (timer from event time to the stage, tag stage)</li>
+ * </ul>
+ * All meters are registered up front and publish histogram buckets, so the hot path only
+ * records into them. The only tags are the fixed stage names and the result; per-customer
+ * or per-topic values must never become tags.
+ */
+public final class PipelineStage {
+
+    public static final String DURATION = "pipeline.stage.duration";
+    public static final String BATCH_SIZE = "pipeline.batch.size";
+    public static final String EVENT_LAG = "pipeline.event.lag";
+
+    private final Timer succeeded;
+    private final Timer failed;
+    private final DistributionSummary batchSize;
+    private final Timer eventLag;
+
+    private PipelineStage(String stage, MeterRegistry meterRegistry) {
+        this.succeeded = duration(stage, "success", meterRegistry);
+        this.failed = duration(stage, "failure", meterRegistry);
+        this.batchSize = DistributionSummary.builder(BATCH_SIZE)
+            .description("Items handled per call of a pipeline stage")
+            .tag("stage", stage)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(1.0)
+            .maximumExpectedValue(100_000.0)
+            .register(meterRegistry);
+        this.eventLag = Timer.builder(EVENT_LAG)
+            .description("Time from an event's own timestamp until a pipeline stage handled it")
+            .tag("stage", stage)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofHours(1))
+            .register(meterRegistry);
+    }
+
+    public static PipelineStage register(String stage, MeterRegistry meterRegistry) {
+        return new PipelineStage(stage, meterRegistry);
+    }
+
+    public void recordSuccess(long startNanos) {
+        succeeded.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordFailure(long startNanos) {
+        failed.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBatchSize(int items) {
+        batchSize.record(items);
+    }
+
+    /**
+     * Clock skew between producer and consumer can make the lag negative; it is recorded as zero
+     */
+    public void recordEventLag(Instant eventTime, long nowMillis) {
+        eventLag.record(Math.max(0, nowMillis - eventTime.toEpochMilli()), TimeUnit.MILLISECONDS);
+    }
+
+    private static Timer duration(String stage, String result, MeterRegistry meterRegistry) {
+        return Timer.builder(DURATION)
+            .description("Time spent in a pipeline stage per call")
+            .tag("stage", stage)
+            .tag("result", result)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofMinutes(30))
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,124 @@
+package com.scalable.billing.common.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fixed-point arithmetic on longs holding a value times 10^scale.
+ *
+ * The scales mirror the database columns, so converting at the boundary never loses
+ * precision: quantities are DECIMAL(15,4), unit prices DECIMAL(10,4), and a quantity times
+ * a price is exact at scale 8 (the scale PostgreSQL gives SUM(quantity * unit_price)).
+ * Invoice money is DECIMAL(12,2); an amount at scale 8 holds up to about 9.2e10, more than
+ * that column can store. All operations throw ArithmeticException on overflow and every
+ * scale reduction takes an explicit RoundingMode.
+ */
+public final class FixedPoint {
+
+    public static final int QUANTITY_SCALE = 4;
+    public static final int PRICE_SCALE = 4;
+    public static final int AMOUNT_SCALE = QUANTITY_SCALE + PRICE_SCALE;
+    public static final int MONEY_SCALE = 2;
+
+    /**
+     * How amounts are rounded to MONEY_SCALE; PostgreSQL rounds NUMERIC casts half away from zero too
+     */
+    public static final RoundingMode MONEY_ROUNDING = RoundingMode.HALF_UP;
+
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L,
+        1_000_000_000L, 10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L,
+        10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+
+    private FixedPoint() {
+        throw new AssertionError("Cannot instantiate utility class");
+    }
+
+    /**
+     * BigDecimal to units at the given scale, rounding only if the value has more fraction digits
+     */
+    public static long toUnits(BigDecimal value, int scale, RoundingMode rounding) {
+        return value.setScale(scale, rounding).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Exact conversion; values with more fraction digits than the scale are rejected
+     */
+    public static long toUnits(BigDecimal value, int scale) {
+        return toUnits(value, scale, RoundingMode.UNNECESSARY);
+    }
+
+    public static BigDecimal toDecimal(long units, int scale) {
+        return BigDecimal.valueOf(units, scale);
+    }
+
+    /**
+     * Changes the scale of a value, rounding when digits are dropped
+     */
+    public static long rescale(long units, int fromScale, int toScale, RoundingMode rounding) {
+        if (toScale >= fromScale) {
+            return Math.multiplyExact(units, powerOfTen(toScale - fromScale));
+        }
+        return divide(units, powerOfTen(fromScale - toScale), rounding);
+    }
+
+    /**
+     * (numerator / 10^numeratorScale) / (denominator / 10^denominatorScale) at resultScale
+     */
+    public static long divide(long numerator, int numeratorScale, long denominator, int denominatorScale,
+                              int resultScale, RoundingMode rounding) {
+        int shift = resultScale - numeratorScale + denominatorScale;
+        if (shift >= 0) {
+            return divide(Math.multiplyExact(numerator, powerOfTen(shift)), denominator, rounding);
+        }
+        return divide(numerator, Math.multiplyExact(denominator, powerOfTen(-shift)), rounding);
+    }
+
+    /**
+     * Integer division with BigDecimal rounding semantics
+     */
+    public static long divide(long dividend, long divisor, RoundingMode rounding) {
+        if (divisor == 0) {
+            throw new ArithmeticException("Division by zero");
+        }
+        if (dividend == Long.MIN_VALUE && divisor == -1) {
+            throw new ArithmeticException("long overflow");
+        }
+        long quotient = dividend / divisor;
+        long remainder = dividend % divisor;
+        if (remainder == 0) {
+            return quotient;
+        }
+
+        int signum = (dividend < 0) == (divisor < 0) ? 1 : -1;
+        boolean increment;
+        switch (rounding) {
+            case UNNECESSARY -> throw new ArithmeticException("Rounding necessary");
+            case DOWN -> increment = false;
+            case UP -> increment = true;
+            case FLOOR -> increment = signum < 0;
+            case CEILING -> increment = signum > 0;
+            default -> {
+                // Compare |remainder| with |divisor| / 2 without overflowing
+                long absRemainder = Math.abs(remainder);
+                long distanceToNext = Math.absExact(divisor) - absRemainder;
+                int half = Long.compare(absRemainder, distanceToNext);
+                increment = switch (rounding) {
+                    case HALF_UP -> half >= 0;
+                    case HALF_DOWN -> half > 0;
+                    case HALF_EVEN -> half > 0 || (half == 0 && (quotient & 1) != 0);
+                    default -> throw new IllegalArgumentException("Unsupported rounding mode " + rounding);
+                };
+            }
+        }
+        return increment ? quotient + signum : quotient;
+    }
+
+    static long powerOfTen(int exponent) {
+        if (exponent < 0 || exponent >= POWERS_OF_TEN.length) {
+            throw new ArithmeticException("10^" + exponent + " does not fit in a long");
+        }
+        return POWERS_OF_TEN[exponent];
+    }
+}
@@ -0,0 +1,65 @@
+package com.scalable.billing.common.money;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Mutable, allocation-free running total at a fixed scale. Not thread-safe; reuse one
+ * instance per worker with {@link #reset()} rather than creating one per group.
+ */
+public final class FixedPointSum {
+
+    private final int scale;
+    private long units;
+    private long count;
+
+    public FixedPointSum(int scale) {
+        this.scale = scale;
+    }
+
+    public int scale() {
+        return scale;
+    }
+
+    public long units() {
+        return units;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public FixedPointSum add(long valueUnits) {
+        units = Math.addExact(units, valueUnits);
+        count++;
+        return this;
+    }
+
+    /**
+     * Adds a boundary value exactly; it must not have more fraction digits than this sum's scale
+     */
+    public FixedPointSum add(BigDecimal value) {
+        return add(FixedPoint.toUnits(value, scale));
+    }
+
+    /**
+     * Adds a * b where the scales of a and b add up to this sum's scale (e.g. quantity * price)
+     */
+    public FixedPointSum addProduct(long a, long b) {
+        return add(Math.multiplyExact(a, b));
+    }
+
+    public BigDecimal toDecimal() {
+        return FixedPoint.toDecimal(units, scale);
+    }
+
+    public BigDecimal toDecimal(int targetScale, RoundingMode rounding) {
+        return FixedPoint.toDecimal(FixedPoint.rescale(units, scale, targetScale, rounding), targetScale);
+    }
+
+    public FixedPointSum reset() {
+        units = 0;
+        count = 0;
+        return this;
+    }
+}
@@ -0,0 +1,62 @@
+package com.scalable.billing.common.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Read-only transactions on read replicas (read-replicas); without nodes spring.datasource is
+ * auto-configured as usual. The primary pool is built from spring.datasource like Boot's own.
+ * Imported by the services that serve reads (billing-service, analytics-service).
+ */
+@Configuration(proxyBeanMethods = false)
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("read-replicas")
+    public ReadReplicaProperties readReplicaProperties() {
+        return new ReadReplicaProperties();
+    }
+
+    @Bean
+    public ReadYourWrites readYourWrites(ReadReplicaProperties properties,
+                                         ObjectProvider<ReadReplicaRoutingDataSource> routing) {
+        return new ReadYourWrites(routing.getIfAvailable(), properties.effectiveReadYourWritesWindow());
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(prefix = "read-replicas.nodes[0]", name = "url")
+    static class Routing {
+
+        @Bean(destroyMethod = "close")
+        @ConfigurationProperties("spring.datasource.hikari")
+        HikariDataSource primaryDataSource(DataSourceProperties properties) {
+            return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        }
+
+        @Bean(destroyMethod = "close")
+        ReadReplicaRoutingDataSource readReplicaRoutingDataSource(ReadReplicaProperties properties,
+                                                                  HikariDataSource primaryDataSource,
+                                                                  MeterRegistry meterRegistry) {
+            return new ReadReplicaRoutingDataSource(properties, primaryDataSource, meterRegistry);
+        }
+
+        /**
+         * Connections are taken on first use, once the transaction's read-only flag is known
+         */
+        @Bean
+        @Primary
+        DataSource dataSource(ReadReplicaRoutingDataSource readReplicaRoutingDataSource) {
+            return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource);
+        }
+    }
+}
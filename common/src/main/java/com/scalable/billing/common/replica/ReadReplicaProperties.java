@@ -0,0 +1,51 @@
+package com.scalable.billing.common.replica;
+
+import lombok.Data;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * read-replicas settings, bound by each service that reads from replicas.
+ *
+ * Without nodes every query goes to spring.datasource as before. With nodes, read-only
+ * transactions go to a replica whose replay lag is within max-lag, or within the
+ * query-max-lag entry of the transaction ("SimpleClassName.method" or "SimpleClassName").
+ */
+@Data
+public class ReadReplicaProperties {
+
+    private List<Node> nodes = new ArrayList<>();
+    private Duration maxLag = Duration.ofSeconds(5);
+    private Map<String, Duration> queryMaxLag = new LinkedHashMap<>();
+    private Duration lagCheckInterval = Duration.ofSeconds(1);
+    private Duration readYourWritesWindow = Duration.ofMinutes(1);
+
+    /**
+     * read-your-writes-window, extended to the largest lag any query accepts: once a position
+     * is forgotten, every replica a read may use has replayed it
+     */
+    public Duration effectiveReadYourWritesWindow() {
+        Duration window = readYourWritesWindow.compareTo(maxLag) >= 0 ? readYourWritesWindow : maxLag;
+        for (Duration lag : queryMaxLag.values()) {
+            if (lag.compareTo(window) > 0) {
+                window = lag;
+            }
+        }
+        return window;
+    }
+
+    @Data
+    public static class Node {
+
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 20;
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+    }
+}
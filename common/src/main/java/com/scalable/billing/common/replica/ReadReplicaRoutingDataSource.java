@@ -0,0 +1,265 @@
+package com.scalable.billing.common.replica;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends the connections of read-only transactions to PostgreSQL streaming replicas and
+ * everything else to the primary.
+ *
+ * The choice is made when a connection is requested, so the DataSource has to be wrapped in
+ * a LazyConnectionDataSourceProxy: the transaction's read-only flag and name are then known.
+ * Every lag-check-interval each replica reports how far its replay is behind (zero when it
+ * has replayed all it received) and up to which WAL position. A read goes to the next replica,
+ * round robin, whose lag is within the threshold of its query and which has replayed the
+ * position required by {@link #readingAfter}; when none qualifies, or the replica cannot hand
+ * out a connection, it goes to the primary.
+ */
+@Slf4j
+public class ReadReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private static final String LAG_SQL =
+        "SELECT pg_last_wal_replay_lsn()::text, CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() " +
+        "THEN 0 ELSE EXTRACT(EPOCH FROM clock_timestamp() - pg_last_xact_replay_timestamp()) END";
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+    private static final ThreadLocal<Long> REQUIRED_LSN = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final JdbcTemplate primaryTemplate;
+    private final List<Replica> replicas;
+    private final long defaultMaxLagNanos;
+    private final Map<String, Long> queryMaxLagNanos = new ConcurrentHashMap<>();
+    private final Map<String, Long> resolvedMaxLagNanos = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService lagChecker;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter laggingReads;
+    private final Counter failedReads;
+
+    public ReadReplicaRoutingDataSource(ReadReplicaProperties properties, DataSource primary,
+                                        MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.primaryTemplate = new JdbcTemplate(primary);
+        this.defaultMaxLagNanos = properties.getMaxLag().toNanos();
+        properties.getQueryMaxLag().forEach((query, lag) -> queryMaxLagNanos.put(query, lag.toNanos()));
+
+        this.replicas = new ArrayList<>();
+        for (ReadReplicaProperties.Node node : properties.getNodes()) {
+            if (node.getName() == null || node.getUrl() == null || PRIMARY.equals(node.getName())) {
+                throw new IllegalStateException("Every read replica needs a name other than primary and a url");
+            }
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("read-replica-" + node.getName());
+            dataSource.setJdbcUrl(node.getUrl());
+            dataSource.setUsername(node.getUsername());
+            dataSource.setPassword(node.getPassword());
+            dataSource.setMaximumPoolSize(node.getMaximumPoolSize());
+            dataSource.setConnectionTimeout(node.getConnectionTimeout().toMillis());
+            dataSource.setReadOnly(true);
+            Replica replica = new Replica(node.getName(), dataSource, meterRegistry);
+            replicas.add(replica);
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagNanos() / 1e9)
+                .description("Replay lag of the read replica as last measured plus the time since")
+                .tag("replica", replica.name)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        }
+        this.laggingReads = readCounter(meterRegistry, PRIMARY, "lag");
+        this.failedReads = readCounter(meterRegistry, PRIMARY, "error");
+
+        AtomicInteger threadIds = new AtomicInteger();
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "read-replica-lag-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getLagCheckInterval().toMillis();
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, interval, TimeUnit.MILLISECONDS);
+        log.info("Routing read-only transactions to replicas {} (max lag {}, per query {})",
+            replicas.stream().map(r -> r.name).toList(), properties.getMaxLag(), properties.getQueryMaxLag());
+    }
+
+    /**
+     * Runs the read with replicas limited to those that replayed the primary's WAL up to lsn
+     */
+    public static <T> T readingAfter(long lsn, Supplier<T> read) {
+        Long previous = REQUIRED_LSN.get();
+        REQUIRED_LSN.set(previous == null ? lsn : Math.max(previous, lsn));
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) {
+                REQUIRED_LSN.remove();
+            } else {
+                REQUIRED_LSN.set(previous);
+            }
+        }
+    }
+
+    /**
+     * The primary's current WAL position; a replica that replayed it sees every commit made before the call
+     */
+    public long primaryLsn() {
+        return parseLsn(primaryTemplate.queryForObject(PRIMARY_LSN_SQL, String.class));
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = choose();
+        if (replica == null) {
+            return primary.getConnection();
+        }
+        try {
+            Connection connection = replica.dataSource.getConnection();
+            replica.reads.increment();
+            return connection;
+        } catch (SQLException e) {
+            log.warn("Read replica {} unavailable, reading from the primary: {}", replica.name, e.getMessage());
+            replica.markUnavailable();
+            failedReads.increment();
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private Replica choose() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return null;
+        }
+        long maxLagNanos = maxLagNanos(TransactionSynchronizationManager.getCurrentTransactionName());
+        Long requiredLsn = REQUIRED_LSN.get();
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.lagNanos() <= maxLagNanos && (requiredLsn == null || replica.replayLsn >= requiredLsn)) {
+                return replica;
+            }
+        }
+        laggingReads.increment();
+        return null;
+    }
+
+    /**
+     * Threshold of a transaction named "package.SimpleClassName.method": the method's entry,
+     * else the class's entry, else max-lag
+     */
+    private long maxLagNanos(String transactionName) {
+        if (transactionName == null || queryMaxLagNanos.isEmpty()) {
+            return defaultMaxLagNanos;
+        }
+        return resolvedMaxLagNanos.computeIfAbsent(transactionName, name -> {
+            int methodDot = name.lastIndexOf('.');
+            if (methodDot < 0) {
+                return queryMaxLagNanos.getOrDefault(name, defaultMaxLagNanos);
+            }
+            String className = name.substring(name.lastIndexOf('.', methodDot - 1) + 1, methodDot);
+            Long lag = queryMaxLagNanos.get(className + name.substring(methodDot));
+            if (lag == null) {
+                lag = queryMaxLagNanos.get(className);
+            }
+            return lag == null ? defaultMaxLagNanos : lag;
+        });
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            try {
+                replica.template.query(LAG_SQL, rs -> {
+                    String lsn = rs.getString(1);
+                    if (lsn == null) {
+                        throw new SQLException("not a streaming replica (pg_last_wal_replay_lsn() is null)");
+                    }
+                    replica.measured(parseLsn(lsn), (long) (rs.getDouble(2) * 1e9));
+                });
+            } catch (RuntimeException e) {
+                if (replica.available) {
+                    log.warn("Could not measure the lag of read replica {}: {}", replica.name, e.getMessage());
+                }
+                replica.markUnavailable();
+            }
+        }
+    }
+
+    /**
+     * A pg_lsn such as 16/B374D848 as an unsigned 64-bit position
+     */
+    static long parseLsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        return Long.parseLong(lsn.substring(0, slash), 16) << 32 | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private static Counter readCounter(MeterRegistry registry, String target, String result) {
+        return Counter.builder("datasource.reads")
+            .description("Read-only transactions by the database that served them")
+            .tag("target", target)
+            .tag("result", result)
+            .register(registry);
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final JdbcTemplate template;
+        private final Counter reads;
+        private volatile boolean available;
+        private volatile long replayLsn;
+        private volatile long lagNanos;
+        private volatile long measuredAtNanos;
+
+        Replica(String name, HikariDataSource dataSource, MeterRegistry registry) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.template = new JdbcTemplate(dataSource);
+            this.reads = readCounter(registry, name, "routed");
+        }
+
+        void measured(long replayLsn, long lagNanos) {
+            this.replayLsn = replayLsn;
+            this.lagNanos = Math.max(0, lagNanos);
+            this.measuredAtNanos = System.nanoTime();
+            this.available = true;
+        }
+
+        void markUnavailable() {
+            available = false;
+        }
+
+        /**
+         * Lag as last measured plus the time since, so a replica that stops reporting ages out
+         */
+        long lagNanos() {
+            return available ? lagNanos + (System.nanoTime() - measuredAtNanos) : Long.MAX_VALUE;
+        }
+    }
+}
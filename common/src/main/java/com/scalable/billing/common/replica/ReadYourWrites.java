@@ -0,0 +1,91 @@
+package com.scalable.billing.common.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Lets reads that follow a write see it even when they go to a replica.
+ *
+ * {@link #written} notes the primary's WAL position once the current transaction commits,
+ * under a key such as the customer id; for read-your-writes-window, {@link #read} of that key
+ * only uses replicas that have replayed up to it (else the primary). Positions are kept by
+ * this instance, so the guarantee holds for requests served by the same replica of the service.
+ *
+ * Cached reads use the same mechanism: every instance calls {@link #writtenAll} for the regions
+ * it evicts, so a cache miss that follows the eviction cannot be filled from a replica that has
+ * not replayed the change yet, and a stale answer never reaches the shared L2.
+ * Without read replicas all calls only run the code given.
+ */
+@Slf4j
+public class ReadYourWrites {
+
+    private final ReadReplicaRoutingDataSource routing;
+    private final Cache<Object, Long> writePositions;
+
+    public ReadYourWrites(@Nullable ReadReplicaRoutingDataSource routing, Duration window) {
+        this.routing = routing;
+        this.writePositions = Caffeine.newBuilder()
+            .expireAfterWrite(window)
+            .maximumSize(100_000)
+            .build();
+    }
+
+    /**
+     * Records a write under key, after the commit if a transaction is active
+     */
+    public void written(Object key) {
+        if (routing == null) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(key);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(key);
+            }
+        });
+    }
+
+    /**
+     * Records a write under each key with one read of the primary's position (outside a transaction)
+     */
+    public void writtenAll(Collection<?> keys) {
+        if (routing == null || keys.isEmpty()) {
+            return;
+        }
+        long lsn = primaryLsn(keys);
+        keys.forEach(key -> writePositions.asMap().merge(key, lsn, Math::max));
+    }
+
+    public <T> T read(Object key, Supplier<T> read) {
+        Long lsn = routing == null ? null : writePositions.getIfPresent(key);
+        return lsn == null ? read.get() : ReadReplicaRoutingDataSource.readingAfter(lsn, read);
+    }
+
+    /**
+     * If the primary's position cannot be read, reads of the key stay on the primary for the window
+     */
+    private void record(Object key) {
+        writePositions.asMap().merge(key, primaryLsn(key), Math::max);
+    }
+
+    private long primaryLsn(Object keys) {
+        try {
+            return routing.primaryLsn();
+        } catch (RuntimeException e) {
+            log.warn("Could not read the primary's WAL position, reading {} from the primary: {}", keys, e.getMessage());
+            return Long.MAX_VALUE;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.scalable.billing.common.serialization;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.event.BillingEvent;
+import com.scalable.billing.common.event.UsageEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary encoding of {@link UsageEvent} and {@link BillingEvent}.
+ *
+ * Layout: magic byte, format version, event type, a varint bitmap of the non-null fields,
+ * then those fields in declaration order. UUIDs are 16 raw bytes (event ids too, when they
+ * are canonical UUID strings), timestamps are epoch microseconds, dates are epoch days and
+ * decimals are a scale plus an unscaled long. Fields are only ever appended; a decoder
+ * rejects versions newer than its own.
+ */
+public final class CompactEventCodec {
+
+    /**
+     * Never the first byte of a JSON document, so payloads can be told apart without headers
+     */
+    public static final byte MAGIC = (byte) 0xCE;
+    public static final int VERSION = 1;
+
+    static final int TYPE_USAGE_EVENT = 1;
+    static final int TYPE_BILLING_EVENT = 2;
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() { };
+    private static final ObjectMapper METADATA_MAPPER = new ObjectMapper();
+
+    private final StringInterner interner = new StringInterner(1024);
+
+    public static boolean isCompact(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    /**
+     * Whether the event type has a compact encoding; other payloads travel as JSON
+     */
+    public static boolean supports(Object event) {
+        return event instanceof UsageEvent || event instanceof BillingEvent;
+    }
+
+    public byte[] encode(Object event) {
+        WireWriter out = new WireWriter(128);
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        if (event instanceof UsageEvent usage) {
+            out.writeByte(TYPE_USAGE_EVENT);
+            writeUsageEvent(out, usage);
+        } else if (event instanceof BillingEvent billing) {
+            out.writeByte(TYPE_BILLING_EVENT);
+            writeBillingEvent(out, billing);
+        } else {
+            throw new SerializationException("No compact encoding for " + event.getClass().getName());
+        }
+        return out.toByteArray();
+    }
+
+    public Object decode(byte[] data) {
+        WireReader in = new WireReader(data, 0);
+        if ((byte) in.readByte() != MAGIC) {
+            throw new SerializationException("Not a compact event payload");
+        }
+        int version = in.readByte();
+        if (version > VERSION) {
+            throw new SerializationException("Unsupported compact event version " + version);
+        }
+        int type = in.readByte();
+        return switch (type) {
+            case TYPE_USAGE_EVENT -> readUsageEvent(in);
+            case TYPE_BILLING_EVENT -> readBillingEvent(in);
+            default -> throw new SerializationException("Unknown compact event type " + type);
+        };
+    }
+
+    private static void writeUsageEvent(WireWriter out, UsageEvent event) {
+        UUID eventUuid = asUuid(event.getEventId());
+        long present = bit(0, event.getEventId())
+            | (eventUuid != null ? 1L << 1 : 0)
+            | bit(2, event.getCustomerId())
+            | bit(3, event.getResourceType())
+            | bit(4, event.getQuantity())
+            | bit(5, event.getUnit())
+            | bit(6, event.getUnitPrice())
+            | bit(7, event.getTimestamp())
+            | bit(8, event.getMetadata() == null || event.getMetadata().isEmpty() ? null : event.getMetadata());
+        out.writeVarLong(present);
+
+        writeEventId(out, event.getEventId(), eventUuid);
+        if (event.getCustomerId() != null) {
+            out.writeUuid(event.getCustomerId());
+        }
+        if (event.getResourceType() != null) {
+            out.writeString(event.getResourceType());
+        }
+        if (event.getQuantity() != null) {
+            out.writeDecimal(event.getQuantity());
+        }
+        if (event.getUnit() != null) {
+            out.writeString(event.getUnit());
+        }
+        if (event.getUnitPrice() != null) {
+            out.writeDecimal(event.getUnitPrice());
+        }
+        if (event.getTimestamp() != null) {
+            out.writeInstant(event.getTimestamp());
+        }
+        if (isSet(present, 8)) {
+            try {
+                out.writeBytes(METADATA_MAPPER.writeValueAsBytes(event.getMetadata()));
+            } catch (IOException e) {
+                throw new SerializationException("Cannot encode usage event metadata", e);
+            }
+        }
+    }
+
+    private UsageEvent readUsageEvent(WireReader in) {
+        long present = in.readVarLong();
+        UsageEvent event = new UsageEvent();
+        event.setEventId(readEventId(in, present));
+        if (isSet(present, 2)) {
+            event.setCustomerId(in.readUuid());
+        }
+        if (isSet(present, 3)) {
+            event.setResourceType(in.readInternedString(interner));
+        }
+        if (isSet(present, 4)) {
+            event.setQuantity(in.readDecimal());
+        }
+        if (isSet(present, 5)) {
+            event.setUnit(in.readInternedString(interner));
+        }
+        if (isSet(present, 6)) {
+            event.setUnitPrice(in.readDecimal());
+        }
+        if (isSet(present, 7)) {
+            event.setTimestamp(in.readInstant());
+        }
+        if (isSet(present, 8)) {
+            try {
+                event.setMetadata(METADATA_MAPPER.readValue(in.readBytes(), METADATA_TYPE));
+            } catch (IOException e) {
+                throw new SerializationException("Cannot decode usage event metadata", e);
+            }
+        }
+        return event;
+    }
+
+    private static void writeBillingEvent(WireWriter out, BillingEvent event) {
+        UUID eventUuid = asUuid(event.getEventId());
+        long present = bit(0, event.getEventId())
+            | (eventUuid != null ? 1L << 1 : 0)
+            | bit(2, event.getBillingId())
+            | bit(3, event.getCustomerId())
+            | bit(4, event.getBillingPeriodStart())
+            | bit(5, event.getBillingPeriodEnd())
+            | bit(6, event.getTotalAmount())
+            | bit(7, event.getStatus())
+            | bit(8, event.getInvoiceNumber())
+            | bit(9, event.getTimestamp());
+        out.writeVarLong(present);
+
+        writeEventId(out, event.getEventId(), eventUuid);
+        if (event.getBillingId() != null) {
+            out.writeUuid(event.getBillingId());
+        }
+        if (event.getCustomerId() != null) {
+            out.writeUuid(event.getCustomerId());
+        }
+        if (event.getBillingPeriodStart() != null) {
+            out.writeVarLong(event.getBillingPeriodStart().toEpochDay());
+        }
+        if (event.getBillingPeriodEnd() != null) {
+            out.writeVarLong(event.getBillingPeriodEnd().toEpochDay());
+        }
+        if (event.getTotalAmount() != null) {
+            out.writeDecimal(event.getTotalAmount());
+        }
+        if (event.getStatus() != null) {
+            out.writeString(event.getStatus());
+        }
+        if (event.getInvoiceNumber() != null) {
+            out.writeString(event.getInvoiceNumber());
+        }
+        if (event.getTimestamp() != null) {
+            out.writeInstant(event.getTimestamp());
+        }
+    }
+
+    private BillingEvent readBillingEvent(WireReader in) {
+        long present = in.readVarLong();
+        BillingEvent event = new BillingEvent();
+        event.setEventId(readEventId(in, present));
+        if (isSet(present, 2)) {
+            event.setBillingId(in.readUuid());
+        }
+        if (isSet(present, 3)) {
+            event.setCustomerId(in.readUuid());
+        }
+        if (isSet(present, 4)) {
+            event.setBillingPeriodStart(LocalDate.ofEpochDay(in.readVarLong()));
+        }
+        if (isSet(present, 5)) {
+            event.setBillingPeriodEnd(LocalDate.ofEpochDay(in.readVarLong()));
+        }
+        if (isSet(present, 6)) {
+            event.setTotalAmount(in.readDecimal());
+        }
+        if (isSet(present, 7)) {
+            event.setStatus(in.readInternedString(interner));
+        }
+        if (isSet(present, 8)) {
+            event.setInvoiceNumber(in.readString());
+        }
+        if (isSet(present, 9)) {
+            event.setTimestamp(in.readInstant());
+        }
+        return event;
+    }
+
+    private static void writeEventId(WireWriter out, String eventId, UUID eventUuid) {
+        if (eventUuid != null) {
+            out.writeUuid(eventUuid);
+        } else if (eventId != null) {
+            out.writeString(eventId);
+        }
+    }
+
+    private static String readEventId(WireReader in, long present) {
+        if (!isSet(present, 0)) {
+            return null;
+        }
+        return isSet(present, 1) ? in.readUuid().toString() : in.readString();
+    }
+
+    /**
+     * Only ids that round-trip exactly (lower-case canonical form) are packed as 16 bytes
+     */
+    private static UUID asUuid(String eventId) {
+        if (eventId == null || eventId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(eventId);
+            return uuid.toString().equals(eventId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static long bit(int index, Object value) {
+        return value != null ? 1L << index : 0;
+    }
+
+    private static boolean isSet(long present, int index) {
+        return (present & (1L << index)) != 0;
+    }
+}
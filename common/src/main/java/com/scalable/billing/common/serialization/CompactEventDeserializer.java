@@ -0,0 +1,44 @@
+package com.scalable.billing.common.serialization;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.serializer.JsonDeserializer;
+
+import java.util.Map;
+
+/**
+ * Kafka value deserializer that accepts both {@link CompactEventCodec} payloads and the JSON
+ * written by older producers. The format is detected from the first byte; JSON goes to
+ * Spring's JsonDeserializer, configured from the same properties (trusted packages, default type).
+ */
+public class CompactEventDeserializer implements Deserializer<Object> {
+
+    private final CompactEventCodec codec = new CompactEventCodec();
+    private final JsonDeserializer<Object> jsonDeserializer = new JsonDeserializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        jsonDeserializer.configure(configs, isKey);
+    }
+
+    @Override
+    public Object deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return CompactEventCodec.isCompact(data) ? codec.decode(data) : jsonDeserializer.deserialize(topic, data);
+    }
+
+    @Override
+    public Object deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return CompactEventCodec.isCompact(data) ? codec.decode(data) : jsonDeserializer.deserialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonDeserializer.close();
+    }
+}
@@ -0,0 +1,53 @@
+package com.scalable.billing.common.serialization;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Kafka value serializer for usage and billing events.
+ *
+ * compact.serializer.format selects the wire format: BINARY (default) writes
+ * {@link CompactEventCodec} payloads, JSON delegates to Spring's JsonSerializer with type
+ * headers. Use JSON while any consumer still runs a JSON-only deserializer. Types without a
+ * compact encoding (e.g. cache invalidation notices) are always written as JSON.
+ */
+public class CompactEventSerializer implements Serializer<Object> {
+
+    public static final String FORMAT_CONFIG = "compact.serializer.format";
+
+    private final CompactEventCodec codec = new CompactEventCodec();
+    private final JsonSerializer<Object> jsonSerializer = new JsonSerializer<>();
+    private boolean binary = true;
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        Object format = configs.get(FORMAT_CONFIG);
+        binary = format == null || !"JSON".equals(format.toString().toUpperCase(Locale.ROOT));
+        jsonSerializer.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return serialize(topic, null, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data == null) {
+            return null;
+        }
+        if (binary && CompactEventCodec.supports(data)) {
+            return codec.encode(data);
+        }
+        return headers == null ? jsonSerializer.serialize(topic, data) : jsonSerializer.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        jsonSerializer.close();
+    }
+}
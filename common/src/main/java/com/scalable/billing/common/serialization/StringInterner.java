@@ -0,0 +1,45 @@
+package com.scalable.billing.common.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Fixed-size, direct-mapped cache from UTF-8 bytes to String for fields such as resource
+ * type, unit and status that take a handful of distinct values. A hit costs a hash and a
+ * byte comparison and allocates nothing; a colliding value simply replaces the slot.
+ * Entries are immutable, so concurrent use only risks extra misses.
+ */
+final class StringInterner {
+
+    private static final int MAX_INTERNED_LENGTH = 64;
+
+    private final Entry[] slots;
+    private final int mask;
+
+    StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        this.slots = new Entry[size];
+        this.mask = size - 1;
+    }
+
+    String intern(byte[] data, int offset, int length) {
+        if (length > MAX_INTERNED_LENGTH) {
+            return new String(data, offset, length, StandardCharsets.UTF_8);
+        }
+        int hash = 0x811C9DC5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (data[i] & 0xFF)) * 0x01000193;
+        }
+        int slot = hash & mask;
+        Entry entry = slots[slot];
+        if (entry != null && Arrays.equals(entry.bytes, 0, entry.bytes.length, data, offset, offset + length)) {
+            return entry.value;
+        }
+        String value = new String(data, offset, length, StandardCharsets.UTF_8);
+        slots[slot] = new Entry(Arrays.copyOfRange(data, offset, offset + length), value);
+        return value;
+    }
+
+    private record Entry(byte[] bytes, String value) {
+    }
+}
@@ -0,0 +1,106 @@
+package com.scalable.billing.common.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Reads what {@link WireWriter} wrote. Truncated or malformed input fails with SerializationException.
+ */
+final class WireReader {
+
+    private final byte[] data;
+    private int position;
+
+    WireReader(byte[] data, int offset) {
+        this.data = data;
+        this.position = offset;
+    }
+
+    int readByte() {
+        require(1);
+        return data[position++] & 0xFF;
+    }
+
+    long readVarLong() {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new SerializationException("Malformed varint at offset " + position);
+    }
+
+    int readLength() {
+        long length = readVarLong();
+        if (length < 0 || length > data.length - position) {
+            throw new SerializationException("Invalid length " + length + " at offset " + position);
+        }
+        return (int) length;
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        byte[] bytes = Arrays.copyOfRange(data, position, position + length);
+        position += length;
+        return bytes;
+    }
+
+    String readString() {
+        int length = readLength();
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * For low-cardinality fields: repeated values share one String instance and are not re-decoded
+     */
+    String readInternedString(StringInterner interner) {
+        int length = readLength();
+        String value = interner.intern(data, position, length);
+        position += length;
+        return value;
+    }
+
+    UUID readUuid() {
+        return new UUID(readLong(), readLong());
+    }
+
+    Instant readInstant() {
+        long micros = readVarLong();
+        return Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L);
+    }
+
+    BigDecimal readDecimal() {
+        long scaleField = readVarLong();
+        int scale = Math.toIntExact(scaleField >> 1);
+        if ((scaleField & 1) == 0) {
+            return BigDecimal.valueOf(readVarLong(), scale);
+        }
+        return new BigDecimal(new BigInteger(readBytes()), scale);
+    }
+
+    private long readLong() {
+        require(8);
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    private void require(int bytes) {
+        if (position + bytes > data.length) {
+            throw new SerializationException("Truncated compact event payload");
+        }
+    }
+}
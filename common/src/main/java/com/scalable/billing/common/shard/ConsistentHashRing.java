@@ -0,0 +1,85 @@
+package com.scalable.billing.common.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Maps customer ids to shard names on a hash ring with virtual-nodes points per shard.
+ *
+ * A customer belongs to the shard of the first point at or after its hash. Adding or removing
+ * a shard only moves the customers between the changed points and their predecessors, about
+ * 1/N of them, so a rebalance copies the least data. Points depend only on the shard names,
+ * so every service builds the same ring from the same configuration.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> shards;
+    private final long[] points;
+    private final String[] owners;
+
+    public ConsistentHashRing(Collection<String> shards, int virtualNodes) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("A hash ring needs at least one shard");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        this.shards = List.copyOf(shards);
+        long[][] entries = new long[this.shards.size() * virtualNodes][];
+        int n = 0;
+        for (int shard = 0; shard < this.shards.size(); shard++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                entries[n++] = new long[] {hash(this.shards.get(shard) + "#" + i), shard};
+            }
+        }
+        // Ties (practically impossible) go to the shard listed first, on every replica alike
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[entries.length];
+        this.owners = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            points[i] = entries[i][0];
+            owners[i] = this.shards.get((int) entries[i][1]);
+        }
+    }
+
+    public List<String> shards() {
+        return shards;
+    }
+
+    public String ownerOf(UUID customerId) {
+        long hash = hash(customerId);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    static long hash(UUID customerId) {
+        return mix(customerId.getMostSignificantBits() ^ mix(customerId.getLeastSignificantBits()));
+    }
+
+    /**
+     * 64-bit FNV-1a, finished with the MurmurHash3 mix so nearby names spread over the ring
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,24 @@
+package com.scalable.billing.common.shard;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * One database holding usage_data and daily_usage_rollup for the customers it owns
+ */
+public record UsageShard(String name, DataSource dataSource, JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager) {
+
+    public TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(transactionManager);
+    }
+
+    public TransactionTemplate readOnlyTransactionTemplate() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+}
@@ -0,0 +1,28 @@
+package com.scalable.billing.common.shard;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+
+/**
+ * Usage storage routing by customer (usage.shards); a single shard on spring.datasource when no nodes are set.
+ * Imported by every service that reads or writes usage_data.
+ */
+@Configuration(proxyBeanMethods = false)
+public class UsageShardConfig {
+
+    @Bean
+    @ConfigurationProperties("usage.shards")
+    public UsageShardProperties usageShardProperties() {
+        return new UsageShardProperties();
+    }
+
+    @Bean(destroyMethod = "close")
+    public UsageShards usageShards(UsageShardProperties properties, DataSource dataSource,
+                                   PlatformTransactionManager transactionManager) {
+        return UsageShards.create(properties, dataSource, transactionManager);
+    }
+}
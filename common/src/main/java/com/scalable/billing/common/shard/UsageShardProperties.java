@@ -0,0 +1,34 @@
+package com.scalable.billing.common.shard;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * usage.shards settings, bound by each service's configuration.
+ *
+ * Without nodes usage lives in spring.datasource as before. With nodes, ring names the nodes
+ * that own customers (all of them when empty). While a rebalance moves customers between
+ * nodes, previous-ring holds the ring before the change: writes follow ring, per-customer reads
+ * also look at the customer's previous owner.
+ */
+@Data
+public class UsageShardProperties {
+
+    private List<Node> nodes = new ArrayList<>();
+    private List<String> ring = new ArrayList<>();
+    private List<String> previousRing = new ArrayList<>();
+    private int virtualNodes = 128;
+    private int scatterThreads = 8;
+
+    @Data
+    public static class Node {
+
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
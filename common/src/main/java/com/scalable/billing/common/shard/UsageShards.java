@@ -0,0 +1,230 @@
+package com.scalable.billing.common.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes usage storage by customer id to the databases configured under usage.shards.
+ *
+ * Writes go to the customer's owner on the ring. Per-customer reads go to the owner and,
+ * while a rebalance is moving customers, to the previous owner too; callers merge the two.
+ * Queries that span customers run on every shard in parallel ({@link #scatter}) and the
+ * caller merges the results. Without configured nodes there is a single shard, "primary",
+ * on the service's own DataSource and transaction manager, and scatter runs inline, so
+ * unsharded deployments behave exactly as before.
+ */
+@Slf4j
+public class UsageShards implements AutoCloseable {
+
+    public static final String PRIMARY = "primary";
+
+    private final Map<String, UsageShard> shards;
+    private final ConsistentHashRing ring;
+    private final ConsistentHashRing previousRing;
+    private final ExecutorService scatterPool;
+    private final List<HikariDataSource> ownedDataSources;
+
+    private UsageShards(Map<String, UsageShard> shards, ConsistentHashRing ring, ConsistentHashRing previousRing,
+                        ExecutorService scatterPool, List<HikariDataSource> ownedDataSources) {
+        this.shards = shards;
+        this.ring = ring;
+        this.previousRing = previousRing;
+        this.scatterPool = scatterPool;
+        this.ownedDataSources = ownedDataSources;
+    }
+
+    public static UsageShards create(UsageShardProperties properties, DataSource primary,
+                                     PlatformTransactionManager primaryTransactionManager) {
+        if (properties.getNodes().isEmpty()) {
+            UsageShard shard = new UsageShard(PRIMARY, primary, new JdbcTemplate(primary), primaryTransactionManager);
+            return new UsageShards(Map.of(PRIMARY, shard), new ConsistentHashRing(List.of(PRIMARY), 1),
+                null, null, List.of());
+        }
+
+        Map<String, UsageShard> shards = new LinkedHashMap<>();
+        List<HikariDataSource> owned = new ArrayList<>();
+        for (UsageShardProperties.Node node : properties.getNodes()) {
+            if (node.getName() == null || node.getUrl() == null || shards.containsKey(node.getName())) {
+                throw new IllegalStateException("Every usage shard node needs a unique name and a url");
+            }
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setPoolName("usage-shard-" + node.getName());
+            dataSource.setJdbcUrl(node.getUrl());
+            dataSource.setUsername(node.getUsername());
+            dataSource.setPassword(node.getPassword());
+            dataSource.setMaximumPoolSize(node.getMaximumPoolSize());
+            owned.add(dataSource);
+            shards.put(node.getName(), new UsageShard(node.getName(), dataSource, new JdbcTemplate(dataSource),
+                new DataSourceTransactionManager(dataSource)));
+        }
+        List<String> ringNames = properties.getRing().isEmpty()
+            ? List.copyOf(shards.keySet())
+            : properties.getRing();
+        ConsistentHashRing ring = ring(ringNames, shards, properties.getVirtualNodes());
+        ConsistentHashRing previousRing = properties.getPreviousRing().isEmpty()
+            ? null
+            : ring(properties.getPreviousRing(), shards, properties.getVirtualNodes());
+
+        AtomicInteger threadIds = new AtomicInteger();
+        ExecutorService scatterPool = Executors.newFixedThreadPool(properties.getScatterThreads(), r -> {
+            Thread thread = new Thread(r, "usage-shard-scatter-" + threadIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("Routing usage over shards {} (ring {}{})", shards.keySet(), ringNames,
+            previousRing == null ? "" : ", rebalancing from " + properties.getPreviousRing());
+        return new UsageShards(shards, ring, previousRing, scatterPool, owned);
+    }
+
+    private static ConsistentHashRing ring(List<String> names, Map<String, UsageShard> shards, int virtualNodes) {
+        for (String name : names) {
+            if (!shards.containsKey(name)) {
+                throw new IllegalStateException("Usage shard ring names unknown node " + name);
+            }
+        }
+        return new ConsistentHashRing(names, virtualNodes);
+    }
+
+    public boolean isSharded() {
+        return scatterPool != null;
+    }
+
+    public boolean isRebalancing() {
+        return previousRing != null;
+    }
+
+    public Collection<UsageShard> all() {
+        return shards.values();
+    }
+
+    public UsageShard shard(String name) {
+        UsageShard shard = shards.get(name);
+        if (shard == null) {
+            throw new IllegalArgumentException("Unknown usage shard " + name);
+        }
+        return shard;
+    }
+
+    /**
+     * The shard the customer's new usage is written to
+     */
+    public UsageShard owner(UUID customerId) {
+        return shards.get(ring.ownerOf(customerId));
+    }
+
+    /**
+     * The shard that owned the customer before the current rebalance; the owner when not rebalancing
+     */
+    public UsageShard previousOwner(UUID customerId) {
+        return previousRing == null ? owner(customerId) : shards.get(previousRing.ownerOf(customerId));
+    }
+
+    /**
+     * The shards holding the customer's usage: the owner, and the previous owner while rebalancing
+     */
+    public List<UsageShard> readShards(UUID customerId) {
+        UsageShard owner = owner(customerId);
+        UsageShard previous = previousOwner(customerId);
+        return owner == previous ? List.of(owner) : List.of(owner, previous);
+    }
+
+    /**
+     * Groups items by the shard that owns their customer, in first-seen order
+     */
+    public <E> Map<UsageShard, List<E>> byOwner(Collection<E> items, Function<E, UUID> customerId) {
+        Map<UsageShard, List<E>> groups = new LinkedHashMap<>();
+        for (E item : items) {
+            groups.computeIfAbsent(owner(customerId.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    /**
+     * Groups customers by every shard they have to be read from
+     */
+    public Map<UsageShard, List<UUID>> byReadShard(Collection<UUID> customerIds) {
+        Map<UsageShard, List<UUID>> groups = new LinkedHashMap<>();
+        for (UUID customerId : customerIds) {
+            for (UsageShard shard : readShards(customerId)) {
+                groups.computeIfAbsent(shard, s -> new ArrayList<>()).add(customerId);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Runs the query on every shard in parallel
+     *
+     * @return the results in shard order
+     */
+    public <T> List<T> scatter(Function<UsageShard, T> query) {
+        return scatter(shards.values(), query);
+    }
+
+    /**
+     * Runs the query on each of the given shards, in parallel when there is more than one.
+     * If a shard fails the others are cancelled and its exception is rethrown as it is (so a
+     * DataAccessException stays one); if the caller is interrupted its interrupt flag is restored.
+     */
+    public <T> List<T> scatter(Collection<UsageShard> targets, Function<UsageShard, T> query) {
+        Set<UsageShard> distinct = new LinkedHashSet<>(targets);
+        if (distinct.size() == 1 || scatterPool == null) {
+            List<T> results = new ArrayList<>(distinct.size());
+            for (UsageShard shard : distinct) {
+                results.add(query.apply(shard));
+            }
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(distinct.size());
+        for (UsageShard shard : distinct) {
+            futures.add(scatterPool.submit(() -> query.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Usage shard query failed", e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying usage shards", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scatterPool != null) {
+            scatterPool.shutdownNow();
+        }
+        ownedDataSources.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,111 @@
+package com.scalable.billing.common.money;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Randomized equivalence properties against the BigDecimal code paths FixedPoint replaced
+ * (sum, product, rounding to the column scales, unit price division), with a fixed seed so
+ * a failure reproduces.
+ */
+class FixedPointTest {
+
+    private static final long SEED = 2024;
+    private static final int CASES = 50_000;
+    private static final RoundingMode[] ROUNDING_MODES = {
+        RoundingMode.HALF_UP, RoundingMode.HALF_EVEN, RoundingMode.HALF_DOWN,
+        RoundingMode.UP, RoundingMode.DOWN, RoundingMode.FLOOR, RoundingMode.CEILING
+    };
+
+    @Test
+    void sumOfProductsMatchesBigDecimal() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int c = 0; c < CASES / 50; c++) {
+            BigDecimal expected = BigDecimal.ZERO;
+            FixedPointSum actual = new FixedPointSum(FixedPoint.AMOUNT_SCALE);
+            int count = random.nextInt(0, 200);
+            for (int i = 0; i < count; i++) {
+                long quantity = random.nextLong(-100_000_000L, 100_000_000L);
+                long price = random.nextLong(-100_000_000L, 100_000_000L);
+                expected = expected.add(BigDecimal.valueOf(quantity, FixedPoint.QUANTITY_SCALE)
+                    .multiply(BigDecimal.valueOf(price, FixedPoint.PRICE_SCALE)));
+                actual.addProduct(quantity, price);
+            }
+            assertEquals(0, expected.compareTo(actual.toDecimal()), "sum " + expected + " vs " + actual.toDecimal());
+            assertEquals(expected.setScale(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING),
+                actual.toDecimal(FixedPoint.MONEY_SCALE, FixedPoint.MONEY_ROUNDING));
+        }
+    }
+
+    @Test
+    void rescaleMatchesSetScaleForEveryRoundingMode() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int c = 0; c < CASES; c++) {
+            // Half the cases are multiples of 50, so exact halves come up often
+            long units = random.nextBoolean() ? random.nextLong() / 1_000 : random.nextLong(-20_000, 20_000) * 50;
+            int fromScale = random.nextInt(0, 9);
+            int toScale = random.nextInt(0, 9);
+            RoundingMode rounding = ROUNDING_MODES[random.nextInt(ROUNDING_MODES.length)];
+            BigDecimal expected = BigDecimal.valueOf(units, fromScale).setScale(toScale, rounding);
+            if (expected.unscaledValue().bitLength() >= 64) {
+                assertThrows(ArithmeticException.class, () -> FixedPoint.rescale(units, fromScale, toScale, rounding));
+            } else {
+                assertEquals(expected, FixedPoint.toDecimal(FixedPoint.rescale(units, fromScale, toScale, rounding), toScale),
+                    () -> units + " from scale " + fromScale + " to " + toScale + " " + rounding);
+            }
+        }
+    }
+
+    @Test
+    void unitPriceDivisionMatchesBigDecimal() {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int c = 0; c < CASES; c++) {
+            long quantity = random.nextLong(1, 100_000_000_000L) * (random.nextBoolean() ? 1 : -1);
+            long amount = random.nextLong(-1_000_000_000_000_000L, 1_000_000_000_000_000L)
+                / (random.nextInt(1, 6) == 1 ? 1 : 1_000_000L);
+            BigDecimal expected = BigDecimal.valueOf(amount, FixedPoint.AMOUNT_SCALE)
+                .divide(BigDecimal.valueOf(quantity, FixedPoint.QUANTITY_SCALE), FixedPoint.PRICE_SCALE, RoundingMode.HALF_UP);
+            BigDecimal actual = FixedPoint.toDecimal(FixedPoint.divide(amount, FixedPoint.AMOUNT_SCALE,
+                quantity, FixedPoint.QUANTITY_SCALE, FixedPoint.PRICE_SCALE, RoundingMode.HALF_UP), FixedPoint.PRICE_SCALE);
+            assertEquals(expected, actual, () -> amount + " / " + quantity);
+        }
+    }
+
+    @Test
+    void toUnitsRoundsLikeTheColumns() {
+        assertEquals(12_346, FixedPoint.toUnits(new BigDecimal("1.23455"), FixedPoint.QUANTITY_SCALE, RoundingMode.HALF_UP));
+        assertEquals(-12_346, FixedPoint.toUnits(new BigDecimal("-1.23455"), FixedPoint.QUANTITY_SCALE, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.toUnits(new BigDecimal("1.23455"), FixedPoint.QUANTITY_SCALE));
+    }
+
+    @Test
+    void overflowIsReportedInsteadOfWrapping() {
+        assertThrows(ArithmeticException.class,
+            () -> FixedPoint.toUnits(new BigDecimal("1e20"), FixedPoint.QUANTITY_SCALE, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.rescale(Long.MAX_VALUE / 10, 0, 2, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.divide(Long.MIN_VALUE, -1, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.divide(1, 0, RoundingMode.HALF_UP));
+        assertThrows(ArithmeticException.class, () -> FixedPoint.divide(1, 3, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class,
+            () -> new FixedPointSum(FixedPoint.AMOUNT_SCALE).addProduct(Long.MAX_VALUE / 2, 3));
+        FixedPointSum sum = new FixedPointSum(FixedPoint.AMOUNT_SCALE).add(Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> sum.add(1));
+        assertEquals(Long.MAX_VALUE, sum.units(), "a failed add leaves the total unchanged");
+    }
+
+    @Test
+    void resetStartsOver() {
+        FixedPointSum sum = new FixedPointSum(FixedPoint.AMOUNT_SCALE).addProduct(15_000, 2_500);
+        assertTrue(sum.count() == 1 && sum.units() == 37_500_000);
+        sum.reset();
+        assertEquals(0, sum.units());
+        assertEquals(0, sum.count());
+    }
+}
@@ -16,6 +16,9 @@ import {
   Tooltip,
   ResponsiveContainer,
 } from 'recharts';
+import { LIVE_METRICS_URL } from '../services/api';
+
+const HISTORY = 60;
 
 const RealTimeMetrics = () => {
   const [metrics, setMetrics] = useState({
@@ -25,26 +28,30 @@ const RealTimeMetrics = () => {
   });
 
   useEffect(() => {
-    const interval = setInterval(() => {
-      const now = new Date().toLocaleTimeString();
-      
+    const source = new EventSource(LIVE_METRICS_URL);
+
+    source.addEventListener('metrics', (event) => {
+      const snapshot = JSON.parse(event.data);
+      const time = new Date(snapshot.timestamp).toLocaleTimeString();
+
       setMetrics((prev) => ({
         throughput: [
-          ...prev.throughput.slice(-19),
-          { time: now, value: Math.floor(Math.random() * 5000) + 95000 },
+          ...prev.throughput.slice(-(HISTORY - 1)),
+          { time, value: Math.round(snapshot.received_per_sec) },
         ],
         latency: [
-          ...prev.latency.slice(-19),
-          { time: now, value: Math.floor(Math.random() * 50) + 100 },
+          ...prev.latency.slice(-(HISTORY - 1)),
+          { time, value: snapshot.latency_ms.p95 },
         ],
         errorRate: [
-          ...prev.errorRate.slice(-19),
-          { time: now, value: Math.random() * 0.5 },
+          ...prev.errorRate.slice(-(HISTORY - 1)),
+          { time, value: snapshot.error_rate * 100 },
         ],
       }));
-    }, 2000);
+    });
 
-    return () => clearInterval(interval);
+    // EventSource reconnects by itself after errors
+    return () => source.close();
   }, []);
 
   return (
@@ -66,7 +73,7 @@ const RealTimeMetrics = () => {
                   : '0'}
               </Typography>
               <Typography variant="caption" color="textSecondary">
-                events/minute
+                events/second
               </Typography>
             </CardContent>
           </Card>
@@ -85,7 +92,7 @@ const RealTimeMetrics = () => {
                 ms
               </Typography>
               <Typography variant="caption" color="textSecondary">
-                30% improvement
+                event to database
               </Typography>
             </CardContent>
           </Card>
@@ -104,7 +111,7 @@ const RealTimeMetrics = () => {
                 %
               </Typography>
               <Typography variant="caption" color="textSecondary">
-                last minute
+                last second
               </Typography>
             </CardContent>
           </Card>
@@ -113,7 +120,7 @@ const RealTimeMetrics = () => {
         <Grid item xs={12}>
           <Paper sx={{ p: 2 }}>
             <Typography variant="h6" gutterBottom>
-              Throughput (Events/min)
+              Throughput (Events/sec)
             </Typography>
             <ResponsiveContainer width="100%" height={250}>
               <LineChart data={metrics.throughput}>
@@ -136,7 +143,7 @@ const RealTimeMetrics = () => {
         <Grid item xs={12} md={6}>
           <Paper sx={{ p: 2 }}>
             <Typography variant="h6" gutterBottom>
-              Query Latency (ms)
+              Ingest Latency P95 (ms)
             </Typography>
             <ResponsiveContainer width="100%" height={250}>
               <LineChart data={metrics.latency}>
@@ -46,6 +46,9 @@ export const fetchCustomerSummary = async () => {
   };
 };
 
+// Server-sent events, one "metrics" event per second (see AnalyticsController.streamLiveMetrics)
+export const LIVE_METRICS_URL = `${ANALYTICS_API_URL}/analytics/live/metrics`;
+
 export const ingestUsageEvent = async (event) => {
   const response = await api.post('/billing/usage', event);
   return response.data;
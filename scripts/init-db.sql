@@ -22,6 +22,7 @@ CREATE INDEX idx_customers_status ON customers(status) WHERE status = 'ACTIVE';
 -- Usage data table (partitioned by month)
 CREATE TABLE usage_data (
     id BIGSERIAL,
+    event_id VARCHAR(100),
     customer_id UUID NOT NULL REFERENCES customers(id),
     resource_type VARCHAR(100) NOT NULL,
     quantity DECIMAL(15, 4) NOT NULL,
@@ -33,7 +34,8 @@ CREATE TABLE usage_data (
     PRIMARY KEY (id, timestamp)
 ) PARTITION BY RANGE (timestamp);
 
--- Create partitions for current and next 6 months
+-- Create partitions for current and next 6 months; later ones are created ahead of time
+-- (and old ones detached) by usage-processor's UsagePartitionManager
 CREATE TABLE usage_data_2025_12 PARTITION OF usage_data
     FOR VALUES FROM ('2025-12-01') TO ('2026-01-01');
 CREATE TABLE usage_data_2026_01 PARTITION OF usage_data
@@ -46,10 +48,16 @@ CREATE TABLE usage_data_2026_04 PARTITION OF usage_data
     FOR VALUES FROM ('2026-04-01') TO ('2026-05-01');
 CREATE TABLE usage_data_2026_05 PARTITION OF usage_data
     FOR VALUES FROM ('2026-05-01') TO ('2026-06-01');
+-- Catches rows outside every range so inserts never fail; the manager moves them out when it
+-- creates the missing partition, and exports its size as usage.partitions.default.size
+CREATE TABLE usage_data_default PARTITION OF usage_data DEFAULT;
 
-CREATE INDEX idx_usage_customer_time ON usage_data(customer_id, timestamp DESC);
+-- id breaks timestamp ties for keyset pagination
+CREATE INDEX idx_usage_customer_time ON usage_data(customer_id, timestamp DESC, id DESC);
 CREATE INDEX idx_usage_resource_time ON usage_data(resource_type, timestamp DESC);
 CREATE INDEX idx_usage_timestamp ON usage_data(timestamp DESC);
+-- Backstop for event redelivery: a replayed event keeps both its id and its timestamp
+CREATE UNIQUE INDEX idx_usage_event_id ON usage_data(event_id, timestamp);
 
 -- Billing records table
 CREATE TABLE billing_records (
@@ -67,10 +75,12 @@ CREATE TABLE billing_records (
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
 
-CREATE INDEX idx_billing_customer ON billing_records(customer_id);
+-- Keyset pagination order; also serves plain customer_id lookups
+CREATE INDEX idx_billing_customer_created ON billing_records(customer_id, created_at DESC, id DESC);
 CREATE INDEX idx_billing_period ON billing_records(billing_period_start, billing_period_end);
 CREATE INDEX idx_billing_status ON billing_records(status);
 CREATE INDEX idx_billing_invoice ON billing_records(invoice_number);
+CREATE UNIQUE INDEX idx_billing_customer_period ON billing_records(customer_id, billing_period_start, billing_period_end);
 
 -- Billing line items
 CREATE TABLE billing_line_items (
@@ -86,22 +96,76 @@ CREATE TABLE billing_line_items (
 
 CREATE INDEX idx_line_items_billing ON billing_line_items(billing_record_id);
 
--- Materialized view for analytics (30% performance improvement)
-CREATE MATERIALIZED VIEW daily_usage_summary AS
-SELECT 
-    customer_id,
-    DATE(timestamp) as usage_date,
-    resource_type,
-    SUM(quantity) as total_quantity,
-    SUM(quantity * COALESCE(unit_price, 0)) as total_cost,
-    COUNT(*) as event_count,
-    MIN(timestamp) as first_event,
-    MAX(timestamp) as last_event
+-- Transactional outbox for billing events, written with the billing records and
+-- drained to Kafka in batches by the billing-service outbox relay
+CREATE TABLE billing_event_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    event_key VARCHAR(100) NOT NULL,
+    payload JSONB NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Monthly billing runs, checkpointed per shard of customers so a crashed run can resume
+CREATE TABLE billing_runs (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    billing_period_start DATE NOT NULL,
+    billing_period_end DATE NOT NULL,
+    status VARCHAR(50) NOT NULL DEFAULT 'RUNNING',
+    total_shards INT NOT NULL,
+    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    completed_at TIMESTAMP,
+    UNIQUE (billing_period_start, billing_period_end)
+);
+
+CREATE TABLE billing_run_shards (
+    run_id UUID NOT NULL REFERENCES billing_runs(id) ON DELETE CASCADE,
+    shard_no INT NOT NULL,
+    customer_ids UUID[] NOT NULL,
+    status VARCHAR(50) NOT NULL DEFAULT 'PENDING',
+    records_created INT,
+    attempts INT NOT NULL DEFAULT 0,
+    last_error TEXT,
+    completed_at TIMESTAMP,
+    PRIMARY KEY (run_id, shard_no)
+);
+
+-- Daily usage rollup, maintained incrementally by usage-processor with upsert deltas
+-- for every ingested batch, so refresh cost scales with new data only
+CREATE TABLE daily_usage_rollup (
+    customer_id UUID NOT NULL,
+    usage_date DATE NOT NULL,
+    resource_type VARCHAR(100) NOT NULL,
+    total_quantity NUMERIC NOT NULL DEFAULT 0,
+    total_cost NUMERIC NOT NULL DEFAULT 0,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    first_event TIMESTAMP,
+    last_event TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (customer_id, usage_date, resource_type)
+);
+
+CREATE INDEX idx_daily_rollup_date ON daily_usage_rollup(usage_date DESC);
+
+-- Backfill from existing raw usage (no-op on a fresh database)
+INSERT INTO daily_usage_rollup (customer_id, usage_date, resource_type, total_quantity, total_cost, event_count, first_event, last_event)
+SELECT customer_id, DATE(timestamp), resource_type, SUM(quantity), SUM(quantity * COALESCE(unit_price, 0)),
+       COUNT(*), MIN(timestamp), MAX(timestamp)
 FROM usage_data
 GROUP BY customer_id, DATE(timestamp), resource_type;
 
-CREATE UNIQUE INDEX idx_daily_summary ON daily_usage_summary(customer_id, usage_date, resource_type);
-CREATE INDEX idx_daily_summary_date ON daily_usage_summary(usage_date DESC);
+-- Compatibility view with the columns of the former daily_usage_summary materialized view
+CREATE VIEW daily_usage_summary AS
+SELECT customer_id, usage_date, resource_type, total_quantity, total_cost, event_count, first_event, last_event
+FROM daily_usage_rollup;
+
+-- Rollup rows a usage shard rebalance added here for a customer moved from from_shard; the
+-- marker lives until the source rows are deleted, so a rerun never adds them twice
+CREATE TABLE usage_shard_moves (
+    customer_id UUID NOT NULL,
+    from_shard VARCHAR(100) NOT NULL,
+    moved_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (customer_id, from_shard)
+);
 
 -- Materialized view for monthly analytics
 CREATE MATERIALIZED VIEW monthly_billing_summary AS
@@ -119,6 +183,7 @@ FROM customers c
 LEFT JOIN billing_records b ON c.id = b.customer_id
 GROUP BY c.id, c.name, c.plan_type, DATE_TRUNC('month', b.billing_period_start);
 
+CREATE UNIQUE INDEX idx_monthly_summary_key ON monthly_billing_summary(customer_id, billing_month);
 CREATE INDEX idx_monthly_summary_customer ON monthly_billing_summary(customer_id);
 CREATE INDEX idx_monthly_summary_month ON monthly_billing_summary(billing_month DESC);
 
@@ -126,7 +191,6 @@ CREATE INDEX idx_monthly_summary_month ON monthly_billing_summary(billing_month
 CREATE OR REPLACE FUNCTION refresh_analytics_views()
 RETURNS void AS $$
 BEGIN
-    REFRESH MATERIALIZED VIEW CONCURRENTLY daily_usage_summary;
     REFRESH MATERIALIZED VIEW CONCURRENTLY monthly_billing_summary;
 END;
 $$ LANGUAGE plpgsql;
@@ -143,6 +207,18 @@ $$ LANGUAGE plpgsql;
 CREATE TRIGGER update_customers_updated_at BEFORE UPDATE ON customers
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
+-- Customer changes are pushed to billing-service replicas (CustomerChangeListener evicts its near-cache)
+CREATE OR REPLACE FUNCTION notify_customer_changed()
+RETURNS TRIGGER AS $$
+BEGIN
+    PERFORM pg_notify('customer_changed', OLD.id::text);
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER notify_customers_changed AFTER UPDATE OR DELETE ON customers
+    FOR EACH ROW EXECUTE FUNCTION notify_customer_changed();
+
 CREATE TRIGGER update_billing_records_updated_at BEFORE UPDATE ON billing_records
     FOR EACH ROW EXECUTE FUNCTION update_updated_at_column();
 
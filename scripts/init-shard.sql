@@ -0,0 +1,59 @@
+-- Schema of an additional usage shard (usage.shards.nodes); the primary database created by
+-- init-db.sql is the shard named "primary". A shard only holds the usage of the customers the
+-- ring assigns to it, so customer_id has no foreign key here.
+
+CREATE TABLE usage_data (
+    id BIGSERIAL,
+    event_id VARCHAR(100),
+    customer_id UUID NOT NULL,
+    resource_type VARCHAR(100) NOT NULL,
+    quantity DECIMAL(15, 4) NOT NULL,
+    unit VARCHAR(50) NOT NULL,
+    unit_price DECIMAL(10, 4),
+    timestamp TIMESTAMP NOT NULL,
+    metadata JSONB,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+-- Monthly partitions are created ahead of time on every shard by usage-processor's
+-- UsagePartitionManager; until then rows land in the default partition
+CREATE TABLE usage_data_default PARTITION OF usage_data DEFAULT;
+
+-- id breaks timestamp ties for keyset pagination
+CREATE INDEX idx_usage_customer_time ON usage_data(customer_id, timestamp DESC, id DESC);
+CREATE INDEX idx_usage_resource_time ON usage_data(resource_type, timestamp DESC);
+CREATE INDEX idx_usage_timestamp ON usage_data(timestamp DESC);
+-- Backstop for event redelivery: a replayed event keeps both its id and its timestamp
+CREATE UNIQUE INDEX idx_usage_event_id ON usage_data(event_id, timestamp);
+
+-- Daily usage rollup of this shard's customers, maintained by usage-processor
+CREATE TABLE daily_usage_rollup (
+    customer_id UUID NOT NULL,
+    usage_date DATE NOT NULL,
+    resource_type VARCHAR(100) NOT NULL,
+    total_quantity NUMERIC NOT NULL DEFAULT 0,
+    total_cost NUMERIC NOT NULL DEFAULT 0,
+    event_count BIGINT NOT NULL DEFAULT 0,
+    first_event TIMESTAMP,
+    last_event TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (customer_id, usage_date, resource_type)
+);
+
+CREATE INDEX idx_daily_rollup_date ON daily_usage_rollup(usage_date DESC);
+
+CREATE VIEW daily_usage_summary AS
+SELECT customer_id, usage_date, resource_type, total_quantity, total_cost, event_count, first_event, last_event
+FROM daily_usage_rollup;
+
+-- See init-db.sql
+CREATE TABLE usage_shard_moves (
+    customer_id UUID NOT NULL,
+    from_shard VARCHAR(100) NOT NULL,
+    moved_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (customer_id, from_shard)
+);
+
+GRANT ALL PRIVILEGES ON ALL TABLES IN SCHEMA public TO billing_user;
+GRANT ALL PRIVILEGES ON ALL SEQUENCES IN SCHEMA public TO billing_user;
@@ -0,0 +1,106 @@
+// Compares platform-thread and virtual-thread execution of the read endpoints.
+//
+// Run once per mode against the same data set, restarting the services in between:
+//
+//   VIRTUAL_THREADS_ENABLED=false  ->  k6 run -e MODE=platform -e CUSTOMER_IDS=<id,id,...> tests/load/virtual-threads.js
+//   VIRTUAL_THREADS_ENABLED=true   ->  k6 run -e MODE=virtual  -e CUSTOMER_IDS=<id,id,...> tests/load/virtual-threads.js
+//
+// Each run writes results-<mode>.json with p50/p95/p99 latency, throughput and the
+// share of 503s returned by the concurrency limiter, per endpoint.
+// Customer ids: SELECT string_agg(id::text, ',') FROM customers;
+
+import http from 'k6/http';
+import { check } from 'k6';
+import { Trend, Rate, Counter } from 'k6/metrics';
+
+const MODE = __ENV.MODE || 'platform';
+const BILLING_URL = __ENV.BILLING_URL || 'http://localhost:8080';
+const ANALYTICS_URL = __ENV.ANALYTICS_URL || 'http://localhost:8081';
+const CUSTOMER_IDS = (__ENV.CUSTOMER_IDS || '').split(',').filter((id) => id.length > 0);
+const PEAK_VUS = parseInt(__ENV.PEAK_VUS || '800', 10);
+
+if (CUSTOMER_IDS.length === 0) {
+  throw new Error('CUSTOMER_IDS must list at least one customer id');
+}
+
+const billingLatency = new Trend('billing_records_latency', true);
+const analyticsLatency = new Trend('analytics_daily_latency', true);
+const rejected = new Rate('rejected_by_limiter');
+const completed = new Counter('completed_requests');
+
+export const options = {
+  scenarios: {
+    billing_records: {
+      executor: 'ramping-vus',
+      exec: 'billingRecords',
+      startVUs: 0,
+      stages: [
+        { duration: '30s', target: PEAK_VUS / 2 },
+        { duration: '2m', target: PEAK_VUS / 2 },
+        { duration: '30s', target: 0 },
+      ],
+    },
+    analytics_daily: {
+      executor: 'ramping-vus',
+      exec: 'analyticsDaily',
+      startVUs: 0,
+      stages: [
+        { duration: '30s', target: PEAK_VUS / 2 },
+        { duration: '2m', target: PEAK_VUS / 2 },
+        { duration: '30s', target: 0 },
+      ],
+    },
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+  tags: { mode: MODE },
+};
+
+function customerId() {
+  return CUSTOMER_IDS[Math.floor(Math.random() * CUSTOMER_IDS.length)];
+}
+
+function record(res, trend) {
+  rejected.add(res.status === 503);
+  if (res.status === 200) {
+    trend.add(res.timings.duration);
+    completed.add(1);
+  }
+  check(res, { 'status is 200 or 503': (r) => r.status === 200 || r.status === 503 });
+}
+
+export function billingRecords() {
+  const res = http.get(`${BILLING_URL}/api/billing/customer/${customerId()}?page=0&size=20`,
+    { tags: { endpoint: 'billing_records' } });
+  record(res, billingLatency);
+}
+
+export function analyticsDaily() {
+  const end = new Date();
+  const start = new Date(end.getTime() - 30 * 24 * 3600 * 1000);
+  const day = (d) => d.toISOString().slice(0, 10);
+  const res = http.get(
+    `${ANALYTICS_URL}/api/analytics/usage/daily?customerId=${customerId()}&startDate=${day(start)}&endDate=${day(end)}`,
+    { tags: { endpoint: 'analytics_daily' } });
+  record(res, analyticsLatency);
+}
+
+export function handleSummary(data) {
+  const trend = (name) => {
+    const m = data.metrics[name];
+    return m ? { p50: m.values['p(50)'], p95: m.values['p(95)'], p99: m.values['p(99)'], max: m.values.max } : null;
+  };
+  const durationSeconds = data.state.testRunDurationMs / 1000;
+  const summary = {
+    mode: MODE,
+    peakVus: PEAK_VUS,
+    throughputPerSecond: data.metrics.completed_requests
+      ? data.metrics.completed_requests.values.count / durationSeconds : 0,
+    rejectedRate: data.metrics.rejected_by_limiter ? data.metrics.rejected_by_limiter.values.rate : 0,
+    billingRecordsMs: trend('billing_records_latency'),
+    analyticsDailyMs: trend('analytics_daily_latency'),
+  };
+  return {
+    [`results-${MODE}.json`]: JSON.stringify(summary, null, 2),
+    stdout: JSON.stringify(summary, null, 2) + '\n',
+  };
+}
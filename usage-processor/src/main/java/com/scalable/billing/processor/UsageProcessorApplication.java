@@ -1,9 +1,14 @@
 package com.scalable.billing.processor;
 
+import com.scalable.billing.common.shard.UsageShardConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@Import(UsageShardConfig.class)
+@EnableScheduling
 public class UsageProcessorApplication {
 
     public static void main(String[] args) {
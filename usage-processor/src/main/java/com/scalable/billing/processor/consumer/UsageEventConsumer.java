@@ -1,30 +1,300 @@
 package com.scalable.billing.processor.consumer;
 
 import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.processor.dlq.DeadLetterPublisher;
+import com.scalable.billing.processor.flow.AdaptiveFlowController;
+import com.scalable.billing.processor.service.InvalidUsageEventException;
 import com.scalable.billing.processor.service.UsageIngestionService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.serializer.DeserializationException;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.scalable.billing.common.constants.KafkaTopics.USAGE_EVENTS;
 
+/**
+ * Ingests each polled batch in flushes sized by {@link AdaptiveFlowController}, one
+ * transaction per flush. In PARTITION mode a listener thread flushes its poll in order. In
+ * KEYED mode the poll is split into lanes by customer id and the lanes are flushed in
+ * parallel on a shared pool of workers, so one consumer keeps many connections busy while
+ * each customer's events are still ingested in order (producers key by customer, so a
+ * customer's events are all in one partition).
+ *
+ * A flush that fails because of its data (a constraint violation, an event with a missing field or
+ * a value the encoder cannot write) is split in halves and each half retried, down to single records, so the good records
+ * are committed and only the failing ones go to the dead-letter topic. Records that could not be
+ * deserialized go there directly.
+ *
+ * An event published without an event id is given one derived from its topic, partition and
+ * offset, so a redelivered copy carries the same id and deduplication drops it like any other.
+ *
+ * Any other failure (database unavailable) stops the flush. The listener then throws a
+ * BatchListenerFailedException for the earliest record not yet ingested: the error handler
+ * commits the offsets before it and redelivers it and the rest with backoff. Records of
+ * other lanes that were ingested past that point are dropped on redelivery as duplicates.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class UsageEventConsumer {
-    
+
     private final UsageIngestionService usageIngestionService;
-    
+    private final AdaptiveFlowController flowController;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final PipelineStage consumeStage;
+    private final long pollBudgetNanos;
+    private final ConsumptionMode mode;
+    private final int workers;
+    private final ExecutorService workerPool;
+
+    public UsageEventConsumer(UsageIngestionService usageIngestionService,
+                              AdaptiveFlowController flowController,
+                              DeadLetterPublisher deadLetterPublisher,
+                              MeterRegistry meterRegistry,
+                              @Value("${usage.flow.poll-budget:60s}") Duration pollBudget,
+                              @Value("${usage.consumer.mode:PARTITION}") ConsumptionMode mode,
+                              @Value("${usage.consumer.workers:12}") int workers) {
+        this.usageIngestionService = usageIngestionService;
+        this.flowController = flowController;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.consumeStage = PipelineStage.register("usage.consume", meterRegistry);
+        this.pollBudgetNanos = pollBudget.toNanos();
+        this.mode = mode;
+        this.workers = workers;
+        if (mode == ConsumptionMode.KEYED) {
+            AtomicInteger threadIds = new AtomicInteger();
+            this.workerPool = Executors.newFixedThreadPool(workers, r -> {
+                Thread thread = new Thread(r, "usage-lane-" + threadIds.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.workerPool = null;
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (workerPool != null) {
+            workerPool.shutdownNow();
+        }
+    }
+
     @KafkaListener(
+        id = AdaptiveFlowController.LISTENER_ID,
         topics = USAGE_EVENTS,
         groupId = "${spring.kafka.consumer.group-id}",
-        concurrency = "3"
+        concurrency = "${usage.consumer.concurrency:3}"
     )
-    public void consumeUsageEvents(List<UsageEvent> events) {
-        log.info("Received {} usage events", events.size());
-        usageIngestionService.processUsageEvents(events);
+    public void consumeUsageEvents(List<ConsumerRecord<String, UsageEvent>> records) throws InterruptedException {
+        log.debug("Received {} usage events", records.size());
+        consumeStage.recordBatchSize(records.size());
+        long start = System.nanoTime();
+        long deadline = start + pollBudgetNanos;
+        try {
+            List<ConsumerRecord<String, UsageEvent>> readable = new ArrayList<>(records.size());
+            for (ConsumerRecord<String, UsageEvent> record : records) {
+                DeserializationException failure = DeadLetterPublisher.deserializationFailure(record);
+                if (failure != null) {
+                    deadLetterPublisher.publish(record, failure);
+                } else {
+                    assignEventId(record);
+                    readable.add(record);
+                }
+            }
+            if (mode == ConsumptionMode.KEYED) {
+                ingestByCustomer(readable, deadline);
+            } else {
+                ingestInOrder(readable, deadline);
+            }
+            consumeStage.recordSuccess(start);
+        } catch (RuntimeException | InterruptedException e) {
+            consumeStage.recordFailure(start);
+            throw e;
+        }
+    }
+
+    private void ingestInOrder(List<ConsumerRecord<String, UsageEvent>> records, long deadline)
+        throws InterruptedException {
+        for (int from = 0; from < records.size(); ) {
+            int to = Math.min(records.size(), from + flowController.flushSize());
+            try {
+                ingest(records.subList(from, to), deadline);
+            } catch (RuntimeException e) {
+                throw failedAt(records.get(from), e);
+            }
+            from = to;
+        }
+    }
+
+    /**
+     * Ingests one lane per worker, each lane holding the records of the customers hashed to it
+     * in poll order, and waits for all of them
+     */
+    private void ingestByCustomer(List<ConsumerRecord<String, UsageEvent>> records, long deadline)
+        throws InterruptedException {
+        List<List<Integer>> lanes = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            lanes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < records.size(); i++) {
+            UUID customerId = records.get(i).value().getCustomerId();
+            lanes.get(Math.floorMod(Objects.hashCode(customerId), workers)).add(i);
+        }
+
+        List<Future<LaneFailure>> results = new ArrayList<>(workers);
+        for (List<Integer> lane : lanes) {
+            if (!lane.isEmpty()) {
+                results.add(workerPool.submit(() -> ingestLane(records, lane, deadline)));
+            }
+        }
+        LaneFailure first = null;
+        try {
+            for (Future<LaneFailure> result : results) {
+                LaneFailure failure = result.get();
+                if (failure != null && (first == null || failure.index() < first.index())) {
+                    first = failure;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Usage lane failed unexpectedly", e.getCause());
+        } catch (InterruptedException e) {
+            results.forEach(result -> result.cancel(true));
+            throw e;
+        }
+        if (first != null) {
+            throw failedAt(records.get(first.index()), first.cause());
+        }
+    }
+
+    /**
+     * @return the first record of the lane that was not ingested and why, or null if all were
+     */
+    private LaneFailure ingestLane(List<ConsumerRecord<String, UsageEvent>> records, List<Integer> lane,
+                                   long deadline) {
+        for (int from = 0; from < lane.size(); ) {
+            int to = Math.min(lane.size(), from + flowController.flushSize());
+            List<ConsumerRecord<String, UsageEvent>> flush = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                flush.add(records.get(lane.get(i)));
+            }
+            try {
+                ingest(flush, deadline);
+            } catch (RuntimeException e) {
+                return new LaneFailure(lane.get(from), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new LaneFailure(lane.get(from), e);
+            }
+            from = to;
+        }
+        return null;
+    }
+
+    /**
+     * Gives an event without an event id one that stays the same when the record is redelivered
+     */
+    static void assignEventId(ConsumerRecord<String, UsageEvent> record) {
+        UsageEvent event = record.value();
+        if (event.getEventId() == null) {
+            event.setEventId("kafka:" + record.topic() + "-" + record.partition() + "@" + record.offset());
+        }
+    }
+
+    /**
+     * Makes the error handler commit the records before this one and redeliver it and the rest
+     */
+    private static BatchListenerFailedException failedAt(ConsumerRecord<String, UsageEvent> record, Exception cause) {
+        return new BatchListenerFailedException("Usage ingestion failed at " + record.topic() + "-"
+            + record.partition() + "@" + record.offset(), cause, record);
+    }
+
+    /**
+     * Flushes the records; on a data failure bisects them until the failing records are isolated
+     */
+    private void ingest(List<ConsumerRecord<String, UsageEvent>> records, long deadline) throws InterruptedException {
+        RuntimeException failure = flush(records, deadline);
+        if (failure == null) {
+            return;
+        }
+        if (records.size() == 1) {
+            deadLetterPublisher.publish(records.get(0), failure);
+            return;
+        }
+        log.debug("Bisecting {} usage events after {}", records.size(), failure.toString());
+        int middle = records.size() / 2;
+        ingest(records.subList(0, middle), deadline);
+        ingest(records.subList(middle, records.size()), deadline);
+    }
+
+    /**
+     * @return the exception if the flush failed because of its data; other failures are thrown
+     */
+    private RuntimeException flush(List<ConsumerRecord<String, UsageEvent>> records, long deadline)
+        throws InterruptedException {
+        List<UsageEvent> events = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, UsageEvent> record : records) {
+            events.add(record.value());
+        }
+        boolean permit = flowController.acquire(deadline);
+        long start = System.nanoTime();
+        // A rejected record says nothing about database health, so it counts as a success here
+        boolean success = false;
+        try {
+            usageIngestionService.processUsageEvents(events);
+            success = true;
+            return null;
+        } catch (RuntimeException e) {
+            if (!isPoison(e)) {
+                throw e;
+            }
+            success = true;
+            return e;
+        } finally {
+            flowController.recordFlush(System.nanoTime() - start, success);
+            if (permit) {
+                flowController.release();
+            }
+        }
+    }
+
+    private record LaneFailure(int index, Exception cause) {
+    }
+
+    /**
+     * Data failures retrying cannot fix: constraint and value errors reported by the database,
+     * and events rejected by validation or the encoder (null fields, bad numbers). Anything else,
+     * including a shard or lane that failed or was interrupted, is treated as transient.
+     */
+    static boolean isPoison(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException || e instanceof InvalidUsageEventException;
+    }
+
+    public enum ConsumptionMode {
+        PARTITION,
+        KEYED
     }
 }
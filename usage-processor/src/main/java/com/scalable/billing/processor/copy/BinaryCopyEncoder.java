@@ -0,0 +1,209 @@
+package com.scalable.billing.processor.copy;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Encoder for the PostgreSQL binary COPY format.
+ * Rows are appended into a reusable byte buffer that the caller drains into CopyIn.
+ */
+public class BinaryCopyEncoder {
+
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final long PG_EPOCH_SECONDS = LocalDateTime.of(2000, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+    private static final short NUMERIC_POS = 0x0000;
+    private static final short NUMERIC_NEG = 0x4000;
+
+    private final ZoneId zoneId;
+    private byte[] buf;
+    private int pos;
+
+    public BinaryCopyEncoder(int initialCapacity, ZoneId zoneId) {
+        this.buf = new byte[initialCapacity];
+        this.zoneId = zoneId;
+    }
+
+    public void writeHeader() {
+        ensure(SIGNATURE.length + 8);
+        System.arraycopy(SIGNATURE, 0, buf, pos, SIGNATURE.length);
+        pos += SIGNATURE.length;
+        putInt(0); // flags
+        putInt(0); // header extension length
+    }
+
+    public void writeTrailer() {
+        ensure(2);
+        putShort((short) -1);
+    }
+
+    public void startRow(int fieldCount) {
+        ensure(2);
+        putShort((short) fieldCount);
+    }
+
+    public void writeNull() {
+        ensure(4);
+        putInt(-1);
+    }
+
+    public void writeUuid(UUID value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        ensure(20);
+        putInt(16);
+        putLong(value.getMostSignificantBits());
+        putLong(value.getLeastSignificantBits());
+    }
+
+    public void writeText(String value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensure(4 + bytes.length);
+        putInt(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Writes a JSONB: the format version byte (1) followed by the JSON text.
+     */
+    public void writeJsonb(String json) {
+        if (json == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ensure(5 + bytes.length);
+        putInt(1 + bytes.length);
+        buf[pos++] = 1;
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Writes a TIMESTAMP (without time zone) as the wall-clock time of the value in the
+     * encoder's zone.
+     */
+    public void writeTimestamp(Instant value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        LocalDateTime local = LocalDateTime.ofInstant(value, zoneId);
+        long micros = (local.toEpochSecond(ZoneOffset.UTC) - PG_EPOCH_SECONDS) * 1_000_000L
+            + local.getNano() / 1_000;
+        ensure(12);
+        putInt(8);
+        putLong(micros);
+    }
+
+    /**
+     * Writes a NUMERIC as base-10000 digit groups (ndigits, weight, sign, dscale, digits...).
+     */
+    public void writeNumeric(BigDecimal value) {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        if (value.scale() < 0) {
+            value = value.setScale(0);
+        }
+        short sign = value.signum() < 0 ? NUMERIC_NEG : NUMERIC_POS;
+        String plain = value.abs().toPlainString();
+        int dot = plain.indexOf('.');
+        String intPart = dot < 0 ? plain : plain.substring(0, dot);
+        String fracPart = dot < 0 ? "" : plain.substring(dot + 1);
+
+        int intGroups = (intPart.length() + 3) / 4;
+        int fracGroups = (fracPart.length() + 3) / 4;
+        short[] digits = new short[intGroups + fracGroups];
+
+        int lead = intGroups * 4 - intPart.length();
+        for (int g = 0; g < intGroups; g++) {
+            int d = 0;
+            for (int i = 0; i < 4; i++) {
+                int idx = g * 4 + i - lead;
+                d = d * 10 + (idx >= 0 ? intPart.charAt(idx) - '0' : 0);
+            }
+            digits[g] = (short) d;
+        }
+        for (int g = 0; g < fracGroups; g++) {
+            int d = 0;
+            for (int i = 0; i < 4; i++) {
+                int idx = g * 4 + i;
+                d = d * 10 + (idx < fracPart.length() ? fracPart.charAt(idx) - '0' : 0);
+            }
+            digits[intGroups + g] = (short) d;
+        }
+
+        int first = 0;
+        while (first < digits.length && digits[first] == 0) {
+            first++;
+        }
+        int last = digits.length;
+        while (last > first && digits[last - 1] == 0) {
+            last--;
+        }
+        int ndigits = last - first;
+        short weight = ndigits == 0 ? 0 : (short) (intGroups - 1 - first);
+        if (ndigits == 0) {
+            sign = NUMERIC_POS;
+        }
+
+        ensure(4 + 8 + ndigits * 2);
+        putInt(8 + ndigits * 2);
+        putShort((short) ndigits);
+        putShort(weight);
+        putShort(sign);
+        putShort((short) value.scale());
+        for (int i = first; i < last; i++) {
+            putShort(digits[i]);
+        }
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int size() {
+        return pos;
+    }
+
+    public void reset() {
+        pos = 0;
+    }
+
+    private void ensure(int extra) {
+        if (pos + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + extra));
+        }
+    }
+
+    private void putShort(short v) {
+        buf[pos++] = (byte) (v >>> 8);
+        buf[pos++] = (byte) v;
+    }
+
+    private void putInt(int v) {
+        buf[pos++] = (byte) (v >>> 24);
+        buf[pos++] = (byte) (v >>> 16);
+        buf[pos++] = (byte) (v >>> 8);
+        buf[pos++] = (byte) v;
+    }
+
+    private void putLong(long v) {
+        putInt((int) (v >>> 32));
+        putInt((int) v);
+    }
+}
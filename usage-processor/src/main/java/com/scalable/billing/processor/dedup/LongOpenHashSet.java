@@ -0,0 +1,64 @@
+package com.scalable.billing.processor.dedup;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity open-addressing set of primitive longs (linear probing, no boxing).
+ * Zero is reserved as the empty marker, so callers must never insert 0.
+ */
+class LongOpenHashSet {
+
+    private final long[] table;
+    private final int mask;
+    private final int maxSize;
+    private int size;
+
+    LongOpenHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 16) * 2 - 1) << 1;
+        this.table = new long[capacity];
+        this.mask = capacity - 1;
+        this.maxSize = capacity / 2;
+    }
+
+    boolean contains(long key) {
+        int slot = (int) key & mask;
+        long current;
+        while ((current = table[slot]) != 0) {
+            if (current == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the key was already present
+     */
+    boolean add(long key) {
+        int slot = (int) key & mask;
+        long current;
+        while ((current = table[slot]) != 0) {
+            if (current == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+        size++;
+        return true;
+    }
+
+    boolean isFull() {
+        return size >= maxSize;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(table, 0L);
+        size = 0;
+    }
+}
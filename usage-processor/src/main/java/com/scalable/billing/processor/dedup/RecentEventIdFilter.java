@@ -0,0 +1,64 @@
+package com.scalable.billing.processor.dedup;
+
+/**
+ * Time-windowed set of event-id fingerprints made of two rotating generations.
+ * An id is remembered for at least one window and at most two; a generation also
+ * rotates early once it reaches its capacity, which bounds memory.
+ */
+class RecentEventIdFilter {
+
+    private final long windowNanos;
+    private LongOpenHashSet current;
+    private LongOpenHashSet previous;
+    private long generationStart;
+
+    RecentEventIdFilter(long windowNanos, int capacityPerGeneration, long nowNanos) {
+        this.windowNanos = windowNanos;
+        this.current = new LongOpenHashSet(capacityPerGeneration);
+        this.previous = new LongOpenHashSet(capacityPerGeneration);
+        this.generationStart = nowNanos;
+    }
+
+    synchronized boolean mightContain(long fingerprint, long nowNanos) {
+        rotateIfNeeded(nowNanos);
+        return current.contains(fingerprint) || previous.contains(fingerprint);
+    }
+
+    synchronized void addAll(long[] fingerprints, int count, long nowNanos) {
+        for (int i = 0; i < count; i++) {
+            rotateIfNeeded(nowNanos);
+            current.add(fingerprints[i]);
+        }
+    }
+
+    synchronized int size() {
+        return current.size() + previous.size();
+    }
+
+    private void rotateIfNeeded(long nowNanos) {
+        if (nowNanos - generationStart >= windowNanos || current.isFull()) {
+            LongOpenHashSet recycled = previous;
+            recycled.clear();
+            previous = current;
+            current = recycled;
+            generationStart = nowNanos;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the id's chars followed by the MurmurHash3 finalizer.
+     */
+    static long fingerprint(String eventId) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < eventId.length(); i++) {
+            h ^= eventId.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
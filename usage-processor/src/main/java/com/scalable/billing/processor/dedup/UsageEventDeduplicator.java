@@ -0,0 +1,212 @@
+package com.scalable.billing.processor.dedup;
+
+import com.scalable.billing.common.event.UsageEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Drops redelivered usage events before they reach the database.
+ *
+ * Tiers, cheapest first: an in-process rotating fingerprint filter, an optional Redis
+ * key per event id shared by all replicas, and finally the (event_id, timestamp) unique
+ * index on usage_data. Ids are only remembered after the ingesting transaction commits,
+ * so a rolled-back batch is never mistaken for a duplicate on redelivery.
+ */
+@Component
+@Slf4j
+public class UsageEventDeduplicator {
+
+    private static final String REDIS_KEY_PREFIX = "usage:dedup:";
+
+    private final RecentEventIdFilter localFilter;
+    private final RedissonClient redissonClient;
+    private final boolean enabled;
+    private final boolean redisEnabled;
+    private final Duration redisTtl;
+
+    private final Counter uniqueEvents;
+    private final Counter localDuplicates;
+    private final Counter redisDuplicates;
+    private final Counter databaseDuplicates;
+
+    public UsageEventDeduplicator(
+        ObjectProvider<RedissonClient> redissonClient,
+        MeterRegistry meterRegistry,
+        @Value("${usage.dedup.enabled:true}") boolean enabled,
+        @Value("${usage.dedup.window:10m}") Duration window,
+        @Value("${usage.dedup.capacity:1000000}") int capacity,
+        @Value("${usage.dedup.redis.enabled:true}") boolean redisEnabled,
+        @Value("${usage.dedup.redis.ttl:24h}") Duration redisTtl
+    ) {
+        this.enabled = enabled;
+        this.redissonClient = redisEnabled ? redissonClient.getIfAvailable() : null;
+        this.redisEnabled = this.redissonClient != null;
+        this.redisTtl = redisTtl;
+        this.localFilter = new RecentEventIdFilter(window.toNanos(), capacity, System.nanoTime());
+
+        this.uniqueEvents = dedupCounter(meterRegistry, "unique", "none");
+        this.localDuplicates = dedupCounter(meterRegistry, "duplicate", "local");
+        this.redisDuplicates = dedupCounter(meterRegistry, "duplicate", "redis");
+        this.databaseDuplicates = dedupCounter(meterRegistry, "duplicate", "database");
+        Gauge.builder("usage.dedup.filter.size", localFilter, RecentEventIdFilter::size)
+            .description("Event ids currently held by the in-process filter")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Returns the events of the batch that have not been seen before, in their original order.
+     * Events without an event id (the consumer assigns one to every record) are passed through.
+     */
+    public List<UsageEvent> filter(List<UsageEvent> events) {
+        if (!enabled) {
+            return events;
+        }
+
+        long now = System.nanoTime();
+        Set<String> seenInBatch = new HashSet<>(events.size() * 2);
+        List<UsageEvent> candidates = new ArrayList<>(events.size());
+        int localHits = 0;
+
+        for (UsageEvent event : events) {
+            String eventId = event.getEventId();
+            if (eventId == null) {
+                candidates.add(event);
+            } else if (!seenInBatch.add(eventId)
+                || localFilter.mightContain(RecentEventIdFilter.fingerprint(eventId), now)) {
+                localHits++;
+            } else {
+                candidates.add(event);
+            }
+        }
+        localDuplicates.increment(localHits);
+
+        List<UsageEvent> unique = redisEnabled ? filterRedis(candidates) : candidates;
+        uniqueEvents.increment(unique.size());
+        return unique;
+    }
+
+    /**
+     * Records rows rejected by the usage_data unique index (the last-resort tier).
+     */
+    public void recordDatabaseDuplicates(int count) {
+        if (count > 0) {
+            databaseDuplicates.increment(count);
+            log.debug("{} duplicate usage events rejected by the database", count);
+        }
+    }
+
+    /**
+     * Remembers the ingested event ids once the current transaction commits.
+     */
+    public void rememberAfterCommit(List<UsageEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remember(events);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember(events);
+            }
+        });
+    }
+
+    private void remember(List<UsageEvent> events) {
+        long[] fingerprints = new long[events.size()];
+        int count = 0;
+        for (UsageEvent event : events) {
+            if (event.getEventId() != null) {
+                fingerprints[count++] = RecentEventIdFilter.fingerprint(event.getEventId());
+            }
+        }
+        localFilter.addAll(fingerprints, count, System.nanoTime());
+
+        if (redisEnabled && count > 0) {
+            try {
+                RBatch batch = redissonClient.createBatch();
+                for (UsageEvent event : events) {
+                    if (event.getEventId() != null) {
+                        batch.getBucket(REDIS_KEY_PREFIX + event.getEventId(), StringCodec.INSTANCE)
+                            .setAsync("1", redisTtl);
+                    }
+                }
+                batch.executeAsync();
+            } catch (RuntimeException e) {
+                log.warn("Failed to record {} event ids in Redis", count, e);
+            }
+        }
+    }
+
+    private List<UsageEvent> filterRedis(List<UsageEvent> candidates) {
+        List<UsageEvent> tracked = new ArrayList<>(candidates.size());
+        RBatch batch = redissonClient.createBatch();
+        for (UsageEvent event : candidates) {
+            if (event.getEventId() != null) {
+                batch.getBucket(REDIS_KEY_PREFIX + event.getEventId(), StringCodec.INSTANCE).isExistsAsync();
+                tracked.add(event);
+            }
+        }
+        if (tracked.isEmpty()) {
+            return candidates;
+        }
+
+        BatchResult<?> result;
+        try {
+            result = batch.execute();
+        } catch (RuntimeException e) {
+            // Fail open: the unique index still rejects anything Redis would have caught
+            log.warn("Redis dedup lookup failed for {} events, relying on database constraint", tracked.size(), e);
+            return candidates;
+        }
+
+        Set<UsageEvent> duplicates = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<?> responses = result.getResponses();
+        for (int i = 0; i < tracked.size(); i++) {
+            if (Boolean.TRUE.equals(responses.get(i))) {
+                duplicates.add(tracked.get(i));
+            }
+        }
+        if (duplicates.isEmpty()) {
+            return candidates;
+        }
+
+        redisDuplicates.increment(duplicates.size());
+        List<UsageEvent> unique = new ArrayList<>(candidates.size() - duplicates.size());
+        for (UsageEvent event : candidates) {
+            if (!duplicates.contains(event)) {
+                unique.add(event);
+            }
+        }
+        return unique;
+    }
+
+    private static Counter dedupCounter(MeterRegistry registry, String result, String tier) {
+        return Counter.builder("usage.dedup.events")
+            .description("Usage events seen by the deduplication stage")
+            .tag("result", result)
+            .tag("tier", tier)
+            .register(registry);
+    }
+}
@@ -0,0 +1,83 @@
+package com.scalable.billing.processor.dlq;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.util.backoff.ExponentialBackOff;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dead-letter routing for usage events.
+ *
+ * Poison records are isolated by UsageEventConsumer and published to USAGE_EVENTS_DLQ through
+ * the recoverer below, with Spring's kafka_dlt-* failure headers plus {@link #STAGE_HEADER}.
+ * Records the ErrorHandlingDeserializer could not read are forwarded as their original bytes.
+ * Everything else (database unavailable, DLQ unreachable) is transient: the error handler
+ * redelivers from the failed record, or the whole poll if the listener did not name one,
+ * with exponential backoff, forever, keeping the consumer polling while it waits.
+ */
+@Configuration
+public class DeadLetterConfig {
+
+    /**
+     * Where the record failed: {@link #STAGE_DESERIALIZE} or {@link #STAGE_INGEST}
+     */
+    public static final String STAGE_HEADER = "usage-dlq-stage";
+
+    public static final String STAGE_DESERIALIZE = "deserialize";
+    public static final String STAGE_INGEST = "ingest";
+
+    /**
+     * How many times the record was replayed from the DLQ (4-byte int), see DeadLetterReplayer
+     */
+    public static final String REPLAYS_HEADER = "usage-dlq-replays";
+
+    @Bean
+    public DeadLetterPublishingRecoverer usageDeadLetterRecoverer(
+        KafkaTemplate<String, Object> kafkaTemplate,
+        @Value("${usage.dlq.send-timeout:10s}") Duration sendTimeout
+    ) {
+        Map<Class<?>, KafkaOperations<?, ?>> templates = new LinkedHashMap<>();
+        templates.put(byte[].class, rawTemplate(kafkaTemplate));
+        templates.put(Object.class, kafkaTemplate);
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(templates,
+            (record, ex) -> new TopicPartition(KafkaTopics.USAGE_EVENTS_DLQ, -1));
+        recoverer.setHeadersFunction((record, ex) -> new RecordHeaders().add(STAGE_HEADER,
+            (ex instanceof DeserializationException ? STAGE_DESERIALIZE : STAGE_INGEST).getBytes(StandardCharsets.UTF_8)));
+        recoverer.setWaitForSendResultTimeout(sendTimeout);
+        recoverer.setFailIfSendResultIsError(true);
+        return recoverer;
+    }
+
+    @Bean
+    public DefaultErrorHandler usageErrorHandler(
+        @Value("${usage.dlq.retry.initial-interval:1s}") Duration initialInterval,
+        @Value("${usage.dlq.retry.max-interval:30s}") Duration maxInterval
+    ) {
+        ExponentialBackOff backOff = new ExponentialBackOff(initialInterval.toMillis(), 2.0);
+        backOff.setMaxInterval(maxInterval.toMillis());
+        return new DefaultErrorHandler(backOff);
+    }
+
+    /**
+     * Same producer settings, but values are sent as the bytes they already are
+     */
+    static KafkaTemplate<String, Object> rawTemplate(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new KafkaTemplate<>(kafkaTemplate.getProducerFactory(),
+            Map.of(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class));
+    }
+}
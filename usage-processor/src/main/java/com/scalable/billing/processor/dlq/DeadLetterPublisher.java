@@ -0,0 +1,57 @@
+package com.scalable.billing.processor.dlq;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sends single usage records to USAGE_EVENTS_DLQ and waits for the broker to acknowledge them.
+ * A failed send throws, so the caller's poll is retried instead of the record being lost.
+ */
+@Component
+@Slf4j
+public class DeadLetterPublisher {
+
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(DeadLetterPublisher.class);
+
+    private final DeadLetterPublishingRecoverer recoverer;
+    private final Counter deserializeFailures;
+    private final Counter ingestFailures;
+
+    public DeadLetterPublisher(DeadLetterPublishingRecoverer recoverer, MeterRegistry meterRegistry) {
+        this.recoverer = recoverer;
+        this.deserializeFailures = dlqCounter(meterRegistry, DeadLetterConfig.STAGE_DESERIALIZE);
+        this.ingestFailures = dlqCounter(meterRegistry, DeadLetterConfig.STAGE_INGEST);
+    }
+
+    /**
+     * The value deserialization failure of a record the ErrorHandlingDeserializer delivered as null
+     *
+     * @return null if the record was deserialized
+     */
+    public static DeserializationException deserializationFailure(ConsumerRecord<?, ?> record) {
+        return SerializationUtils.getExceptionFromHeader(record,
+            SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+    }
+
+    public void publish(ConsumerRecord<?, ?> record, Exception cause) {
+        boolean deserialize = cause instanceof DeserializationException;
+        log.warn("Dead-lettering usage record {}-{}@{} ({}): {}", record.topic(), record.partition(), record.offset(),
+            deserialize ? DeadLetterConfig.STAGE_DESERIALIZE : DeadLetterConfig.STAGE_INGEST, cause.toString());
+        recoverer.accept(record, null, cause);
+        (deserialize ? deserializeFailures : ingestFailures).increment();
+    }
+
+    private static Counter dlqCounter(MeterRegistry registry, String stage) {
+        return Counter.builder("usage.dlq.events")
+            .description("Usage records published to the dead-letter topic")
+            .tag("stage", stage)
+            .register(registry);
+    }
+}
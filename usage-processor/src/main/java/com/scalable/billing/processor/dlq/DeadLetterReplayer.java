@@ -0,0 +1,266 @@
+package com.scalable.billing.processor.dlq;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-ingests dead-lettered usage records by publishing them back to USAGE_EVENTS, at most
+ * rate-per-second records per second, as the bytes they were dead-lettered with.
+ *
+ * A replay covers the DLQ up to its end when started, so records that fail again during
+ * the replay are left for the next one. Progress is committed under its own consumer group
+ * after each poll's records are acknowledged, so a stopped or crashed replay resumes where
+ * it left off and records are not replayed twice. Each replay increments the record's
+ * {@link DeadLetterConfig#REPLAYS_HEADER}; records already replayed max-replays times are
+ * skipped. Started, watched and stopped through the dlqreplay actuator endpoint; one replay
+ * runs at a time per replica.
+ */
+@Component
+@Endpoint(id = "dlqreplay")
+@Slf4j
+public class DeadLetterReplayer {
+
+    private static final String DLT_HEADER_PREFIX = "kafka_dlt-";
+
+    private final ConsumerFactory<Object, Object> consumerFactory;
+    private final KafkaTemplate<String, Object> rawTemplate;
+    private final String groupId;
+    private final int defaultRate;
+    private final int maxReplays;
+    private final Duration sendTimeout;
+    private final Counter replayed;
+    private final Counter skipped;
+
+    private volatile Thread worker;
+    private volatile Consumer<Object, Object> consumer;
+    private volatile ReplayStatus status = ReplayStatus.idle();
+
+    public DeadLetterReplayer(
+        ConsumerFactory<Object, Object> consumerFactory,
+        KafkaTemplate<String, Object> kafkaTemplate,
+        MeterRegistry meterRegistry,
+        @Value("${spring.kafka.consumer.group-id}-dlq-replay") String groupId,
+        @Value("${usage.dlq.replay.rate-per-second:100}") int defaultRate,
+        @Value("${usage.dlq.replay.max-replays:3}") int maxReplays,
+        @Value("${usage.dlq.send-timeout:10s}") Duration sendTimeout
+    ) {
+        this.consumerFactory = consumerFactory;
+        this.rawTemplate = DeadLetterConfig.rawTemplate(kafkaTemplate);
+        this.groupId = groupId;
+        this.defaultRate = defaultRate;
+        this.maxReplays = maxReplays;
+        this.sendTimeout = sendTimeout;
+        this.replayed = Counter.builder("usage.dlq.replayed")
+            .description("Dead-lettered usage records published back to usage-events")
+            .register(meterRegistry);
+        this.skipped = Counter.builder("usage.dlq.replay.skipped")
+            .description("Dead-lettered usage records not replayed because they reached max-replays")
+            .register(meterRegistry);
+    }
+
+    @ReadOperation
+    public ReplayStatus status() {
+        return status;
+    }
+
+    /**
+     * Starts a replay unless one is running
+     *
+     * @param ratePerSecond records per second, rate-per-second when absent
+     * @param maxRecords    stop after this many records, the whole DLQ when absent
+     */
+    @WriteOperation
+    public synchronized ReplayStatus start(@Nullable Integer ratePerSecond, @Nullable Long maxRecords) {
+        if (worker != null && worker.isAlive()) {
+            return status;
+        }
+        int rate = ratePerSecond == null ? defaultRate : ratePerSecond;
+        if (rate < 1) {
+            throw new IllegalArgumentException("ratePerSecond must be at least 1");
+        }
+        long limit = maxRecords == null ? Long.MAX_VALUE : maxRecords;
+        status = ReplayStatus.started(rate);
+        worker = new Thread(() -> run(rate, limit), "usage-dlq-replay");
+        worker.setDaemon(true);
+        worker.start();
+        return status;
+    }
+
+    @DeleteOperation
+    public ReplayStatus stop() {
+        Consumer<Object, Object> current = consumer;
+        Thread running = worker;
+        if (running != null) {
+            running.interrupt();
+        }
+        if (current != null) {
+            current.wakeup();
+        }
+        return status;
+    }
+
+    private void run(int rate, long limit) {
+        long replayedCount = 0;
+        long skippedCount = 0;
+        String error = null;
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        overrides.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(Math.min(500, rate)));
+        try (Consumer<Object, Object> kafka = consumerFactory.createConsumer(groupId, null, "-dlq-replay", overrides)) {
+            consumer = kafka;
+            List<TopicPartition> partitions = kafka.partitionsFor(KafkaTopics.USAGE_EVENTS_DLQ).stream()
+                .map(info -> new TopicPartition(info.topic(), info.partition()))
+                .toList();
+            kafka.assign(partitions);
+            Map<TopicPartition, Long> end = new HashMap<>(kafka.endOffsets(partitions));
+            log.info("Replaying up to {} dead-lettered usage records at {}/s", remaining(kafka, end), rate);
+
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            long nextSend = System.nanoTime();
+            while (replayedCount + skippedCount < limit && remaining(kafka, end) > 0) {
+                ConsumerRecords<Object, Object> records = kafka.poll(Duration.ofMillis(500));
+                List<CompletableFuture<?>> sends = new ArrayList<>(records.count());
+                Map<TopicPartition, Long> positions = new HashMap<>();
+                for (ConsumerRecord<Object, Object> record : records) {
+                    TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() >= end.get(partition) || replayedCount + skippedCount >= limit) {
+                        continue;
+                    }
+                    positions.put(partition, record.offset() + 1);
+                    int replays = replays(record);
+                    if (replays >= maxReplays) {
+                        skippedCount++;
+                        skipped.increment();
+                        continue;
+                    }
+                    long wait = nextSend - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    nextSend = Math.max(nextSend, System.nanoTime() - intervalNanos) + intervalNanos;
+                    sends.add(rawTemplate.send(replayRecord(record, replays + 1)));
+                    replayedCount++;
+                }
+                for (CompletableFuture<?> send : sends) {
+                    send.get(sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                }
+                replayed.increment(sends.size());
+                commit(kafka, positions);
+                status = status.progress(replayedCount, skippedCount, remaining(kafka, end));
+            }
+        } catch (InterruptedException | InterruptException | WakeupException e) {
+            error = "stopped";
+        } catch (Exception e) {
+            log.error("Dead-letter replay failed after {} records", replayedCount, e);
+            error = e.toString();
+        } finally {
+            consumer = null;
+        }
+        status = status.finished(replayedCount, skippedCount, error);
+        log.info("Dead-letter replay finished: {} replayed, {} skipped{}", replayedCount, skippedCount,
+            error == null ? "" : " (" + error + ")");
+    }
+
+    private static void commit(Consumer<Object, Object> kafka, Map<TopicPartition, Long> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        positions.forEach((partition, offset) -> offsets.put(partition, new OffsetAndMetadata(offset)));
+        kafka.commitSync(offsets);
+    }
+
+    private static long remaining(Consumer<Object, Object> kafka, Map<TopicPartition, Long> end) {
+        long remaining = 0;
+        for (Map.Entry<TopicPartition, Long> partition : end.entrySet()) {
+            remaining += Math.max(0, partition.getValue() - kafka.position(partition.getKey()));
+        }
+        return remaining;
+    }
+
+    private static int replays(ConsumerRecord<Object, Object> record) {
+        Header header = record.headers().lastHeader(DeadLetterConfig.REPLAYS_HEADER);
+        return header == null || header.value().length != Integer.BYTES ? 0 : ByteBuffer.wrap(header.value()).getInt();
+    }
+
+    /**
+     * The original key, value and headers, without the failure headers of the dead-lettering
+     */
+    private static ProducerRecord<String, Object> replayRecord(ConsumerRecord<Object, Object> record, int replays) {
+        RecordHeaders headers = new RecordHeaders();
+        for (Header header : record.headers()) {
+            String key = header.key();
+            if (!key.startsWith(DLT_HEADER_PREFIX)
+                && !key.startsWith(SerializationUtils.DESERIALIZER_EXCEPTION_HEADER_PREFIX)
+                && !key.equals(DeadLetterConfig.STAGE_HEADER)
+                && !key.equals(DeadLetterConfig.REPLAYS_HEADER)) {
+                headers.add(header);
+            }
+        }
+        headers.add(DeadLetterConfig.REPLAYS_HEADER, ByteBuffer.allocate(Integer.BYTES).putInt(replays).array());
+        String key = record.key() == null ? null : new String((byte[]) record.key(), StandardCharsets.UTF_8);
+        return new ProducerRecord<>(KafkaTopics.USAGE_EVENTS, null, key, record.value(), headers);
+    }
+
+    /**
+     * State of the current or last replay on this replica
+     */
+    public record ReplayStatus(boolean running, Integer ratePerSecond, Instant startedAt, Instant finishedAt,
+                               long replayed, long skipped, Long remaining, String error) {
+
+        static ReplayStatus idle() {
+            return new ReplayStatus(false, null, null, null, 0, 0, null, null);
+        }
+
+        static ReplayStatus started(int rate) {
+            return new ReplayStatus(true, rate, Instant.now(), null, 0, 0, null, null);
+        }
+
+        ReplayStatus progress(long replayed, long skipped, long remaining) {
+            return new ReplayStatus(true, ratePerSecond, startedAt, null, replayed, skipped, remaining, null);
+        }
+
+        ReplayStatus finished(long replayed, long skipped, String error) {
+            return new ReplayStatus(false, ratePerSecond, startedAt, Instant.now(), replayed, skipped, remaining, error);
+        }
+    }
+}
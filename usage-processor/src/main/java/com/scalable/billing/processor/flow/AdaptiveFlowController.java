@@ -0,0 +1,260 @@
+package com.scalable.billing.processor.flow;
+
+import com.scalable.billing.processor.consumer.UsageEventConsumer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sizes usage ingestion to what the database currently sustains.
+ *
+ * Every flush (one transaction of UsageIngestionService) reports its latency and outcome.
+ * The controller keeps an EWMA of flush latency and adjusts, AIMD style:
+ * <ul>
+ *   <li>flush size: +flush-step while the EWMA is under target-latency, halved (decrease-factor)
+ *       when it is over or a flush fails;</li>
+ *   <li>in-flight flushes across listener threads (lane workers in KEYED mode): raised by one once flushes are at
+ *       max-flush-size and still fast, lowered by one once they are at min-flush-size and
+ *       still slow.</li>
+ * </ul>
+ * After each change the controller waits for one flush per in-flight permit before acting
+ * again, so the flushes already running with the old settings are not acted on twice.
+ * When the EWMA passes pause-latency, or max-consecutive-failures flushes fail in a row, the
+ * listener container is paused: the consumers keep polling (so the group does not rebalance)
+ * but get no records. After pause-duration it is resumed, and the next flushes decide whether
+ * to pause again. Listener threads wait for an in-flight permit only until their poll budget
+ * is used up and then flush anyway, so a poll never exceeds max.poll.interval.ms.
+ */
+@Component
+@Slf4j
+public class AdaptiveFlowController {
+
+    /**
+     * Listener id of UsageEventConsumer's container
+     */
+    public static final String LISTENER_ID = "usage-events";
+
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final int minFlushSize;
+    private final int maxFlushSize;
+    private final int flushStep;
+    private final double decreaseFactor;
+    private final int minInFlight;
+    private final int maxInFlight;
+    private final long targetLatencyNanos;
+    private final long pauseLatencyNanos;
+    private final long pauseNanos;
+    private final int maxConsecutiveFailures;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private volatile int flushSize;
+    private volatile int inFlightLimit;
+    private volatile int inFlight;
+    private volatile double latencyEwmaNanos;
+    private volatile boolean paused;
+    private long resumeAtNanos;
+    private int consecutiveFailures;
+    private int flushesUntilDecision;
+
+    private final Counter increases;
+    private final Counter decreases;
+    private final Counter pauses;
+    private final Counter overLimitFlushes;
+
+    public AdaptiveFlowController(
+        KafkaListenerEndpointRegistry listenerRegistry,
+        MeterRegistry meterRegistry,
+        @Value("${usage.flow.min-flush-size:50}") int minFlushSize,
+        @Value("${usage.flow.max-flush-size:2000}") int maxFlushSize,
+        @Value("${usage.flow.initial-flush-size:500}") int initialFlushSize,
+        @Value("${usage.flow.flush-step:50}") int flushStep,
+        @Value("${usage.flow.decrease-factor:0.5}") double decreaseFactor,
+        @Value("${usage.flow.min-in-flight:1}") int minInFlight,
+        @Value("${usage.consumer.concurrency:3}") int concurrency,
+        @Value("${usage.consumer.mode:PARTITION}") UsageEventConsumer.ConsumptionMode mode,
+        @Value("${usage.consumer.workers:12}") int workers,
+        @Value("${usage.flow.target-latency:250ms}") Duration targetLatency,
+        @Value("${usage.flow.pause-latency:2s}") Duration pauseLatency,
+        @Value("${usage.flow.pause-duration:5s}") Duration pauseDuration,
+        @Value("${usage.flow.max-consecutive-failures:3}") int maxConsecutiveFailures
+    ) {
+        this.listenerRegistry = listenerRegistry;
+        this.minFlushSize = minFlushSize;
+        this.maxFlushSize = maxFlushSize;
+        this.flushStep = flushStep;
+        this.decreaseFactor = decreaseFactor;
+        // One flush per listener thread, or per lane worker in KEYED mode
+        this.maxInFlight = mode == UsageEventConsumer.ConsumptionMode.KEYED ? workers : concurrency;
+        this.minInFlight = Math.min(minInFlight, maxInFlight);
+        this.targetLatencyNanos = targetLatency.toNanos();
+        this.pauseLatencyNanos = pauseLatency.toNanos();
+        this.pauseNanos = pauseDuration.toNanos();
+        this.maxConsecutiveFailures = maxConsecutiveFailures;
+        this.flushSize = Math.max(minFlushSize, Math.min(initialFlushSize, maxFlushSize));
+        this.inFlightLimit = maxInFlight;
+        this.latencyEwmaNanos = targetLatencyNanos;
+
+        Gauge.builder("usage.flow.flush.size", this, controller -> controller.flushSize)
+            .description("Events per ingestion transaction currently chosen")
+            .register(meterRegistry);
+        Gauge.builder("usage.flow.in.flight.limit", this, controller -> controller.inFlightLimit)
+            .description("Concurrent ingestion transactions currently allowed")
+            .register(meterRegistry);
+        Gauge.builder("usage.flow.in.flight", this, controller -> controller.inFlight)
+            .description("Ingestion transactions running now")
+            .register(meterRegistry);
+        Gauge.builder("usage.flow.latency", this, controller -> controller.latencyEwmaNanos / 1e9)
+            .description("Moving average of flush latency the controller acts on")
+            .baseUnit("seconds")
+            .register(meterRegistry);
+        Gauge.builder("usage.flow.paused", this, controller -> controller.paused ? 1 : 0)
+            .description("1 while the usage-events consumers are paused for backpressure")
+            .register(meterRegistry);
+        this.increases = decisionCounter(meterRegistry, "increase");
+        this.decreases = decisionCounter(meterRegistry, "decrease");
+        this.pauses = decisionCounter(meterRegistry, "pause");
+        this.overLimitFlushes = decisionCounter(meterRegistry, "over-limit");
+    }
+
+    public int flushSize() {
+        return flushSize;
+    }
+
+    /**
+     * Waits for an in-flight permit until the deadline (System.nanoTime based)
+     *
+     * @return true if a permit was taken and must be given back with {@link #release()};
+     *         false if the deadline passed and the caller flushes without one
+     */
+    public boolean acquire(long deadlineNanos) throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= inFlightLimit) {
+                long remaining = deadlineNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    overLimitFlushes.increment();
+                    return false;
+                }
+                permitReleased.awaitNanos(remaining);
+            }
+            inFlight++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            permitReleased.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Feeds one flush's outcome into the controller and applies the resulting decision
+     */
+    public void recordFlush(long latencyNanos, boolean success) {
+        boolean pause = false;
+        lock.lock();
+        try {
+            latencyEwmaNanos += EWMA_WEIGHT * (latencyNanos - latencyEwmaNanos);
+            consecutiveFailures = success ? 0 : consecutiveFailures + 1;
+
+            if (--flushesUntilDecision <= 0) {
+                boolean changed = !success || latencyEwmaNanos > targetLatencyNanos ? decrease() : increase();
+                if (changed) {
+                    flushesUntilDecision = inFlightLimit;
+                }
+            }
+            if (!paused && (latencyEwmaNanos > pauseLatencyNanos || consecutiveFailures >= maxConsecutiveFailures)) {
+                paused = true;
+                resumeAtNanos = System.nanoTime() + pauseNanos;
+                pause = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (pause) {
+            pauses.increment();
+            log.warn("Pausing usage-events consumers for {} ms (flush latency {} ms, {} consecutive failures)",
+                TimeUnit.NANOSECONDS.toMillis(pauseNanos), Math.round(latencyEwmaNanos / 1e6), consecutiveFailures);
+            container().ifPresent(MessageListenerContainer::pause);
+        }
+    }
+
+    /**
+     * Resumes paused consumers once the pause has lasted pause-duration. The latency average is
+     * reset to the target so the first flushes after the pause are judged on their own.
+     */
+    @Scheduled(fixedDelayString = "${usage.flow.check-interval-ms:500}")
+    public void resumeWhenDue() {
+        lock.lock();
+        try {
+            if (!paused || System.nanoTime() - resumeAtNanos < 0) {
+                return;
+            }
+            paused = false;
+            consecutiveFailures = 0;
+            latencyEwmaNanos = targetLatencyNanos;
+        } finally {
+            lock.unlock();
+        }
+        log.info("Resuming usage-events consumers with flush size {} and {} in flight", flushSize, inFlightLimit);
+        container().ifPresent(MessageListenerContainer::resume);
+    }
+
+    private boolean increase() {
+        if (flushSize < maxFlushSize) {
+            flushSize = Math.min(maxFlushSize, flushSize + flushStep);
+        } else if (inFlightLimit < maxInFlight) {
+            inFlightLimit++;
+            permitReleased.signal();
+        } else {
+            return false;
+        }
+        increases.increment();
+        return true;
+    }
+
+    private boolean decrease() {
+        if (flushSize > minFlushSize) {
+            flushSize = Math.max(minFlushSize, (int) (flushSize * decreaseFactor));
+        } else if (inFlightLimit > minInFlight) {
+            inFlightLimit--;
+        } else {
+            return false;
+        }
+        decreases.increment();
+        return true;
+    }
+
+    private Optional<MessageListenerContainer> container() {
+        return Optional.ofNullable(listenerRegistry.getListenerContainer(LISTENER_ID));
+    }
+
+    private static Counter decisionCounter(MeterRegistry registry, String action) {
+        return Counter.builder("usage.flow.decisions")
+            .description("Adjustments made by the adaptive ingestion controller")
+            .tag("action", action)
+            .register(registry);
+    }
+}
@@ -0,0 +1,293 @@
+package com.scalable.billing.processor.partition;
+
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps usage_data partitioned ahead of ingestion and bounded behind it.
+ *
+ * On startup and on a schedule, one replica (Redis lock) creates the next `premake` partitions
+ * in the configured granularity (MONTHLY, or DAILY for high-volume periods) and detaches or
+ * drops partitions that ended before the retention horizon. Indexes come from the partitioned
+ * parent. Rows that reached usage_data_default before their partition existed are moved into
+ * the new partition in the same transaction. Ranges are UTC, like the timestamps. Every usage
+ * shard is maintained the same way; the gauges add up all shards.
+ */
+@Component
+@Slf4j
+public class UsagePartitionManager {
+
+    static final String PARENT = "usage_data";
+    static final String DEFAULT_PARTITION = "usage_data_default";
+
+    private static final String LOCK_NAME = "usage:partition-maintenance";
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+    private static final Pattern MANAGED_NAME = Pattern.compile("usage_data_\\d{4}_\\d{2}(_\\d{2})?");
+    private static final DateTimeFormatter MONTHLY_NAME = DateTimeFormatter.ofPattern("'usage_data_'yyyy_MM");
+    private static final DateTimeFormatter DAILY_NAME = DateTimeFormatter.ofPattern("'usage_data_'yyyy_MM_dd");
+
+    private final UsageShards usageShards;
+    private final RedissonClient redissonClient;
+    private final Granularity granularity;
+    private final int premake;
+    private final int retentionMonths;
+    private final RetentionAction retentionAction;
+    private final Duration lockLease;
+
+    private final AtomicLong partitionCount = new AtomicLong();
+    private final AtomicLong partitionBytes = new AtomicLong();
+    private final AtomicLong defaultPartitionBytes = new AtomicLong();
+
+    public UsagePartitionManager(
+        UsageShards usageShards,
+        RedissonClient redissonClient,
+        MeterRegistry meterRegistry,
+        @Value("${usage.partitions.granularity:MONTHLY}") Granularity granularity,
+        @Value("${usage.partitions.premake:3}") int premake,
+        @Value("${usage.partitions.retention-months:24}") int retentionMonths,
+        @Value("${usage.partitions.retention-action:DETACH}") RetentionAction retentionAction,
+        @Value("${usage.partitions.lock-lease:10m}") Duration lockLease
+    ) {
+        this.usageShards = usageShards;
+        this.redissonClient = redissonClient;
+        this.granularity = granularity;
+        this.premake = premake;
+        this.retentionMonths = retentionMonths;
+        this.retentionAction = retentionAction;
+        this.lockLease = lockLease;
+
+        Gauge.builder("usage.partitions.count", partitionCount, AtomicLong::get)
+            .description("Attached usage_data partitions, default included")
+            .register(meterRegistry);
+        Gauge.builder("usage.partitions.size", partitionBytes, AtomicLong::get)
+            .description("Total size of attached usage_data partitions including indexes")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        Gauge.builder("usage.partitions.default.size", defaultPartitionBytes, AtomicLong::get)
+            .description("Size of usage_data_default; growth means a partition was missing")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void maintainOnStartup() {
+        maintain();
+    }
+
+    @Scheduled(cron = "${usage.partitions.schedule:0 5 * * * ?}")
+    public void maintain() {
+        RLock lock = redissonClient.getLock(LOCK_NAME);
+        boolean locked;
+        try {
+            locked = lock.tryLock(0, lockLease.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!locked) {
+            log.debug("Partition maintenance running on another replica");
+            return;
+        }
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            for (UsageShard shard : usageShards.all()) {
+                try {
+                    createFuturePartitions(shard, today);
+                    retireOldPartitions(shard, today);
+                } catch (RuntimeException e) {
+                    log.error("usage_data partition maintenance failed on shard {}", shard.name(), e);
+                }
+            }
+        } finally {
+            refreshMetrics();
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void createFuturePartitions(UsageShard shard, LocalDate today) {
+        List<Partition> partitions = listPartitions(shard);
+        LocalDate start = granularity.periodStart(today);
+        for (int i = 0; i <= premake; i++) {
+            LocalDate end = granularity.next(start);
+            LocalDateTime from = start.atStartOfDay();
+            LocalDateTime to = end.atStartOfDay();
+            boolean covered = partitions.stream().anyMatch(p -> p.overlaps(from, to));
+            if (!covered) {
+                String name = granularity.name(start);
+                createPartition(shard, name, from, to);
+                partitions.add(new Partition(name, from, to, 0));
+            }
+            start = end;
+        }
+    }
+
+    private void createPartition(UsageShard shard, String name, LocalDateTime from, LocalDateTime to) {
+        JdbcTemplate jdbcTemplate = shard.jdbcTemplate();
+        Timestamp lower = Timestamp.valueOf(from);
+        Timestamp upper = Timestamp.valueOf(to);
+        shard.transactionTemplate().executeWithoutResult(status -> {
+            boolean hasDefault = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_class WHERE relname = ?)", Boolean.class, DEFAULT_PARTITION));
+            boolean strandedRows = hasDefault && Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?)",
+                Boolean.class, lower, upper));
+
+            String bounds = "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+            if (!strandedRows) {
+                jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + PARENT + " " + bounds);
+                log.info("Created partition {} [{}, {}) on shard {}", name, from, to, shard.name());
+                return;
+            }
+
+            // Attaching a range the default partition holds rows for would fail: move them over
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + DEFAULT_PARTITION);
+            jdbcTemplate.execute("CREATE TABLE " + name + " PARTITION OF " + PARENT + " " + bounds);
+            int moved = jdbcTemplate.update(
+                "WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ? RETURNING *) " +
+                "INSERT INTO " + name + " SELECT * FROM moved", lower, upper);
+            jdbcTemplate.execute("ALTER TABLE " + PARENT + " ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+            log.warn("Created partition {} [{}, {}) on shard {} and moved {} rows out of {}",
+                name, from, to, shard.name(), moved, DEFAULT_PARTITION);
+        });
+    }
+
+    private void retireOldPartitions(UsageShard shard, LocalDate today) {
+        if (retentionAction == RetentionAction.NONE) {
+            return;
+        }
+        LocalDateTime horizon = today.withDayOfMonth(1).minusMonths(retentionMonths).atStartOfDay();
+        JdbcTemplate jdbcTemplate = shard.jdbcTemplate();
+        for (Partition partition : listPartitions(shard)) {
+            if (partition.to() == null || partition.to().isAfter(horizon)
+                || !MANAGED_NAME.matcher(partition.name()).matches()) {
+                continue;
+            }
+            if (retentionAction == RetentionAction.DROP) {
+                jdbcTemplate.execute("DROP TABLE " + partition.name());
+                log.info("Dropped partition {} on shard {} (ended {}, horizon {})",
+                    partition.name(), shard.name(), partition.to(), horizon);
+            } else {
+                jdbcTemplate.execute("ALTER TABLE " + PARENT + " DETACH PARTITION " + partition.name());
+                log.info("Detached partition {} on shard {} (ended {}, horizon {})",
+                    partition.name(), shard.name(), partition.to(), horizon);
+            }
+        }
+    }
+
+    private void refreshMetrics() {
+        try {
+            List<Partition> partitions = new ArrayList<>();
+            for (UsageShard shard : usageShards.all()) {
+                partitions.addAll(listPartitions(shard));
+            }
+            partitionCount.set(partitions.size());
+            partitionBytes.set(partitions.stream().mapToLong(Partition::bytes).sum());
+            defaultPartitionBytes.set(partitions.stream()
+                .filter(p -> p.name().equals(DEFAULT_PARTITION))
+                .mapToLong(Partition::bytes)
+                .sum());
+        } catch (RuntimeException e) {
+            log.warn("Could not read usage_data partition sizes: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Attached partitions with their bounds; the default partition has null bounds
+     */
+    List<Partition> listPartitions(UsageShard shard) {
+        return new ArrayList<>(shard.jdbcTemplate().query(
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) AS bound, pg_total_relation_size(c.oid) AS bytes " +
+            "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = '" + PARENT + "'::regclass",
+            (rs, i) -> {
+                Matcher range = RANGE_BOUND.matcher(rs.getString("bound"));
+                LocalDateTime from = null;
+                LocalDateTime to = null;
+                if (range.find()) {
+                    from = LocalDateTime.parse(range.group(1).replace(' ', 'T'));
+                    to = LocalDateTime.parse(range.group(2).replace(' ', 'T'));
+                }
+                return new Partition(rs.getString("relname"), from, to, rs.getLong("bytes"));
+            }));
+    }
+
+    record Partition(String name, LocalDateTime from, LocalDateTime to, long bytes) {
+
+        boolean overlaps(LocalDateTime otherFrom, LocalDateTime otherTo) {
+            return from != null && from.isBefore(otherTo) && to.isAfter(otherFrom);
+        }
+    }
+
+    public enum Granularity {
+        MONTHLY {
+            @Override
+            LocalDate periodStart(LocalDate day) {
+                return day.withDayOfMonth(1);
+            }
+
+            @Override
+            LocalDate next(LocalDate start) {
+                return start.plusMonths(1);
+            }
+
+            @Override
+            String name(LocalDate start) {
+                return MONTHLY_NAME.format(start);
+            }
+        },
+        DAILY {
+            @Override
+            LocalDate periodStart(LocalDate day) {
+                return day;
+            }
+
+            @Override
+            LocalDate next(LocalDate start) {
+                return start.plusDays(1);
+            }
+
+            @Override
+            String name(LocalDate start) {
+                return DAILY_NAME.format(start);
+            }
+        };
+
+        abstract LocalDate periodStart(LocalDate day);
+
+        abstract LocalDate next(LocalDate start);
+
+        abstract String name(LocalDate start);
+    }
+
+    public enum RetentionAction {
+        NONE,
+        DETACH,
+        DROP
+    }
+}
@@ -0,0 +1,16 @@
+package com.scalable.billing.processor.service;
+
+/**
+ * A usage event that can never be ingested as it is (a required field is missing, a value
+ * cannot be encoded); retrying it cannot succeed, so the consumer dead-letters it.
+ */
+public class InvalidUsageEventException extends RuntimeException {
+
+    public InvalidUsageEventException(String message) {
+        super(message);
+    }
+
+    public InvalidUsageEventException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,92 @@
+package com.scalable.billing.processor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.processor.copy.BinaryCopyEncoder;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Streams usage events into the usage_data staging table with PostgreSQL binary COPY.
+ * Timestamps are written as UTC wall-clock time, like every other writer of usage_data.
+ * Uses the connection the given template's DataSource has bound to the current transaction,
+ * so it commits or rolls back with the caller.
+ */
+@Component
+@Slf4j
+public class UsageCopyWriter {
+
+    private static final String COPY_SQL =
+        "COPY usage_data_staging (event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, " +
+        "metadata) " +
+        "FROM STDIN (FORMAT BINARY)";
+
+    private static final int FLUSH_BYTES = 64 * 1024;
+
+    private static final ObjectMapper METADATA_MAPPER = new ObjectMapper();
+
+    public long copy(JdbcTemplate jdbcTemplate, List<UsageEvent> events) {
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            CopyIn copyIn = con.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                BinaryCopyEncoder encoder = new BinaryCopyEncoder(FLUSH_BYTES * 2, ZoneOffset.UTC);
+                encoder.writeHeader();
+                for (UsageEvent event : events) {
+                    writeRow(encoder, event);
+                    if (encoder.size() >= FLUSH_BYTES) {
+                        copyIn.writeToCopy(encoder.buffer(), 0, encoder.size());
+                        encoder.reset();
+                    }
+                }
+                encoder.writeTrailer();
+                copyIn.writeToCopy(encoder.buffer(), 0, encoder.size());
+                return copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        });
+        log.debug("Copied {} usage rows", rows);
+        return rows == null ? 0 : rows;
+    }
+
+    static void writeRow(BinaryCopyEncoder encoder, UsageEvent event) {
+        String metadata = metadataJson(event);
+        try {
+            encoder.startRow(8);
+            encoder.writeText(event.getEventId());
+            encoder.writeUuid(event.getCustomerId());
+            encoder.writeText(event.getResourceType());
+            encoder.writeNumeric(event.getQuantity());
+            encoder.writeText(event.getUnit());
+            encoder.writeNumeric(event.getUnitPrice());
+            encoder.writeTimestamp(event.getTimestamp());
+            encoder.writeJsonb(metadata);
+        } catch (NullPointerException | IllegalArgumentException e) { // incl. NumberFormatException
+            throw new InvalidUsageEventException("Cannot encode usage event " + event.getEventId(), e);
+        }
+    }
+
+    /**
+     * @return the event's metadata as JSON for the jsonb column, or null if it has none
+     */
+    static String metadataJson(UsageEvent event) {
+        if (event.getMetadata() == null) {
+            return null;
+        }
+        try {
+            return METADATA_MAPPER.writeValueAsString(event.getMetadata());
+        } catch (JsonProcessingException e) {
+            throw new InvalidUsageEventException("Cannot encode metadata of usage event " + event.getEventId(), e);
+        }
+    }
+}
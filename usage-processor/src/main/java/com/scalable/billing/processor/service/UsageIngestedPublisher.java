@@ -0,0 +1,33 @@
+package com.scalable.billing.processor.service;
+
+import com.scalable.billing.common.constants.KafkaTopics;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Publishes UsageIngestedEvents to ANALYTICS_EVENTS once the batch is committed,
+ * so readers never evict their caches before the new rows are visible.
+ * Delivery is best effort: the L1 TTL in analytics-service bounds staleness if one is lost.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UsageIngestedPublisher {
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUsageIngested(UsageIngestedEvent event) {
+        kafkaTemplate.send(KafkaTopics.ANALYTICS_EVENTS, event.getEventId(), event)
+            .whenComplete((result, ex) -> {
+                if (ex != null) {
+                    log.warn("Failed to publish usage ingested event {}: {}", event.getEventId(), ex.getMessage());
+                }
+            });
+    }
+}
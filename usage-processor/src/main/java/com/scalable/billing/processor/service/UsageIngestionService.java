@@ -1,39 +1,259 @@
 package com.scalable.billing.processor.service;
 
 import com.scalable.billing.common.event.UsageEvent;
-import lombok.RequiredArgsConstructor;
+import com.scalable.billing.common.event.UsageIngestedEvent;
+import com.scalable.billing.common.metrics.PipelineStage;
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import com.scalable.billing.processor.dedup.UsageEventDeduplicator;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.sql.Timestamp;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class UsageIngestionService {
-    
-    private final JdbcTemplate jdbcTemplate;
-    
+
+    private static final String CREATE_STAGING_SQL =
+        "CREATE TEMP TABLE IF NOT EXISTS usage_data_staging (" +
+        "event_id VARCHAR(100), customer_id UUID, resource_type VARCHAR(100), quantity DECIMAL(15, 4), " +
+        "unit VARCHAR(50), unit_price DECIMAL(10, 4), timestamp TIMESTAMP, metadata JSONB) ON COMMIT DELETE ROWS";
+
+    private static final String STAGE_SQL =
+        "INSERT INTO usage_data_staging (event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, " +
+        "metadata) VALUES (?, ?, ?, ?, ?, ?, ?, ?::jsonb)";
+
+    /**
+     * usage_data.timestamp holds UTC wall-clock time, so DATE(timestamp) is the UTC usage date,
+     * the same one ingestedEvent and the usage sketches derive from the event's instant.
+     * Rows whose (event_id, timestamp) already exist are skipped by the unique index;
+     * only the rows actually inserted are folded into daily_usage_rollup as deltas.
+     * Rollup keys are upserted in sorted order so concurrent consumers lock them consistently.
+     * Returns the same deltas, one row per rollup key, for the UsageIngestedEvent.
+     */
+    private static final String MERGE_STAGED_SQL =
+        "WITH inserted AS (" +
+        "  INSERT INTO usage_data (event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, " +
+        "    metadata, created_at) " +
+        "  SELECT event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, metadata, CURRENT_TIMESTAMP " +
+        "  FROM usage_data_staging " +
+        "  ON CONFLICT DO NOTHING " +
+        "  RETURNING customer_id, resource_type, quantity, unit_price, timestamp" +
+        "), rollup AS (" +
+        "  INSERT INTO daily_usage_rollup AS r (customer_id, usage_date, resource_type, total_quantity, total_cost, " +
+        "    event_count, first_event, last_event, updated_at) " +
+        "  SELECT customer_id, DATE(timestamp), resource_type, SUM(quantity), SUM(quantity * COALESCE(unit_price, 0)), " +
+        "    COUNT(*), MIN(timestamp), MAX(timestamp), CURRENT_TIMESTAMP " +
+        "  FROM inserted " +
+        "  GROUP BY customer_id, DATE(timestamp), resource_type " +
+        "  ORDER BY 1, 2, 3 " +
+        "  ON CONFLICT (customer_id, usage_date, resource_type) DO UPDATE SET " +
+        "    total_quantity = r.total_quantity + EXCLUDED.total_quantity, " +
+        "    total_cost = r.total_cost + EXCLUDED.total_cost, " +
+        "    event_count = r.event_count + EXCLUDED.event_count, " +
+        "    first_event = LEAST(r.first_event, EXCLUDED.first_event), " +
+        "    last_event = GREATEST(r.last_event, EXCLUDED.last_event), " +
+        "    updated_at = EXCLUDED.updated_at" +
+        ") " +
+        "SELECT customer_id, DATE(timestamp), resource_type, SUM(quantity * COALESCE(unit_price, 0)), COUNT(*) " +
+        "FROM inserted " +
+        "GROUP BY customer_id, DATE(timestamp), resource_type";
+
     /**
-     * Batch insert for high performance (50 records at once)
+     * Significant decimal digits kept by the latency histograms
+     */
+    private static final int LATENCY_PRECISION = 2;
+
+    private final UsageShards usageShards;
+    private final UsageCopyWriter usageCopyWriter;
+    private final UsageEventDeduplicator deduplicator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PipelineStage dedupStage;
+    private final PipelineStage loadStage;
+    private final PipelineStage mergeStage;
+    private final PipelineStage ingestStage;
+
+    @Value("${usage.ingestion.mode:COPY}")
+    private IngestionMode ingestionMode;
+
+    @Value("${usage.ingestion.batch-size:50}")
+    private int batchSize;
+
+    public UsageIngestionService(UsageShards usageShards,
+                                 UsageCopyWriter usageCopyWriter,
+                                 UsageEventDeduplicator deduplicator,
+                                 ApplicationEventPublisher eventPublisher,
+                                 MeterRegistry meterRegistry) {
+        this.usageShards = usageShards;
+        this.usageCopyWriter = usageCopyWriter;
+        this.deduplicator = deduplicator;
+        this.eventPublisher = eventPublisher;
+        this.dedupStage = PipelineStage.register("usage.dedup", meterRegistry);
+        this.loadStage = PipelineStage.register("usage.load", meterRegistry);
+        this.mergeStage = PipelineStage.register("usage.merge", meterRegistry);
+        this.ingestStage = PipelineStage.register("usage.ingest", meterRegistry);
+    }
+
+    /**
+     * Validate (InvalidUsageEventException for an event that can never be stored), deduplicate, then for each shard the customers hash to: bulk load into the session staging
+     * table (binary COPY by default, JDBC batch insert as fallback) and merge into usage_data and
+     * the daily rollup in one statement, one transaction per shard, shards in parallel.
+     * If one shard fails after another committed, the redelivered events of the committed shard
+     * are dropped as duplicates.
      */
-    @Transactional
     public void processUsageEvents(List<UsageEvent> events) {
-        String sql = "INSERT INTO usage_data (customer_id, resource_type, quantity, unit, unit_price, timestamp, created_at) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
-        
-        jdbcTemplate.batchUpdate(sql, events, 50, (ps, event) -> {
-            ps.setObject(1, event.getCustomerId());
-            ps.setString(2, event.getResourceType());
-            ps.setBigDecimal(3, event.getQuantity());
-            ps.setString(4, event.getUnit());
-            ps.setBigDecimal(5, event.getUnitPrice());
-            ps.setTimestamp(6, Timestamp.from(event.getTimestamp()));
+        events.forEach(UsageIngestionService::validate);
+        long start = System.nanoTime();
+        List<UsageEvent> unique = deduplicator.filter(events);
+        dedupStage.recordSuccess(start);
+        if (unique.isEmpty()) {
+            log.debug("Dropped all {} usage events as duplicates", events.size());
+            return;
+        }
+
+        Map<UsageShard, List<UsageEvent>> byShard = usageShards.byOwner(unique, UsageEvent::getCustomerId);
+        List<Integer> inserted = usageShards.scatter(byShard.keySet(), shard -> shard.transactionTemplate()
+            .execute(status -> ingest(shard, byShard.get(shard))));
+        log.debug("Ingested {} of {} usage events via {} on {} shards",
+            inserted.stream().mapToInt(Integer::intValue).sum(), events.size(), ingestionMode, byShard.size());
+    }
+
+    private Integer ingest(UsageShard shard, List<UsageEvent> unique) {
+        JdbcTemplate jdbcTemplate = shard.jdbcTemplate();
+        long start = System.nanoTime();
+        loadStage.recordBatchSize(unique.size());
+        try {
+            jdbcTemplate.execute(CREATE_STAGING_SQL);
+            if (ingestionMode == IngestionMode.COPY) {
+                usageCopyWriter.copy(jdbcTemplate, unique);
+            } else {
+                batchInsert(jdbcTemplate, unique);
+            }
+            loadStage.recordSuccess(start);
+        } catch (RuntimeException e) {
+            loadStage.recordFailure(start);
+            throw e;
+        }
+
+        start = System.nanoTime();
+        List<UsageIngestedEvent.UsageTotal> totals;
+        try {
+            totals = jdbcTemplate.query(MERGE_STAGED_SQL, (rs, i) ->
+                UsageIngestedEvent.UsageTotal.builder()
+                    .customerId(rs.getObject(1, UUID.class))
+                    .usageDate(rs.getObject(2, LocalDate.class))
+                    .resourceType(rs.getString(3))
+                    .totalCost(rs.getBigDecimal(4))
+                    .eventCount(rs.getLong(5))
+                    .build());
+            mergeStage.recordSuccess(start);
+        } catch (RuntimeException e) {
+            mergeStage.recordFailure(start);
+            throw e;
+        }
+        int inserted = 0;
+        for (UsageIngestedEvent.UsageTotal total : totals) {
+            inserted += (int) total.getEventCount();
+        }
+
+        deduplicator.recordDatabaseDuplicates(unique.size() - inserted);
+        deduplicator.rememberAfterCommit(unique);
+        ingestStage.recordBatchSize(inserted);
+        if (inserted > 0) {
+            eventPublisher.publishEvent(ingestedEvent(unique, inserted, totals));
+        }
+        return inserted;
+    }
+
+    /**
+     * Customers and UTC usage dates touched by the batch; sent to analytics after commit
+     * (see UsageIngestedPublisher) so cached summaries of those customers are evicted.
+     * Also carries the batch's event-to-database latencies for the live metrics stream and
+     * its rollup deltas for the usage sketches; the same latencies go to pipeline.event.lag.
+     */
+    private UsageIngestedEvent ingestedEvent(List<UsageEvent> events, int inserted,
+                                                    List<UsageIngestedEvent.UsageTotal> totals) {
+        Instant now = Instant.now();
+        Set<UUID> customerIds = new HashSet<>();
+        Set<LocalDate> usageDates = new HashSet<>();
+        Histogram latency = new Histogram(LATENCY_PRECISION);
+        for (UsageEvent event : events) {
+            customerIds.add(event.getCustomerId());
+            usageDates.add(LocalDate.ofInstant(event.getTimestamp(), ZoneOffset.UTC));
+            latency.recordValue(Math.max(0, now.toEpochMilli() - event.getTimestamp().toEpochMilli()));
+            ingestStage.recordEventLag(event.getTimestamp(), now.toEpochMilli());
+        }
+        return UsageIngestedEvent.builder()
+            .eventId(UUID.randomUUID().toString())
+            .customerIds(new ArrayList<>(customerIds))
+            .usageDates(new ArrayList<>(usageDates))
+            .eventCount(inserted)
+            .timestamp(now)
+            .latencyHistogram(encode(latency))
+            .usageTotals(totals)
+            .build();
+    }
+
+    private static byte[] encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Arrays.copyOf(buffer.array(), length);
+    }
+
+    /**
+     * Batch insert (batch-size records per round-trip)
+     */
+    private void batchInsert(JdbcTemplate jdbcTemplate, List<UsageEvent> events) {
+        jdbcTemplate.batchUpdate(STAGE_SQL, events, batchSize, (ps, event) -> {
+            ps.setString(1, event.getEventId());
+            ps.setObject(2, event.getCustomerId());
+            ps.setString(3, event.getResourceType());
+            ps.setBigDecimal(4, event.getQuantity());
+            ps.setString(5, event.getUnit());
+            ps.setBigDecimal(6, event.getUnitPrice());
+            ps.setObject(7, utc(event.getTimestamp()));
+            ps.setString(8, UsageCopyWriter.metadataJson(event));
         });
-        
-        log.debug("Batch inserted {} usage events", events.size());
+    }
+
+    /**
+     * Rejects events missing a field usage_data requires (or the shard routing and ingested event need)
+     */
+    static void validate(UsageEvent event) {
+        String missing = event.getCustomerId() == null ? "customerId"
+            : event.getResourceType() == null ? "resourceType"
+            : event.getQuantity() == null ? "quantity"
+            : event.getUnit() == null ? "unit"
+            : event.getTimestamp() == null ? "timestamp"
+            : null;
+        if (missing != null) {
+            throw new InvalidUsageEventException("Usage event " + event.getEventId() + " has no " + missing);
+        }
+    }
+
+    private static LocalDateTime utc(Instant value) {
+        return value == null ? null : LocalDateTime.ofInstant(value, ZoneOffset.UTC);
+    }
+
+    public enum IngestionMode {
+        COPY,
+        BATCH
     }
 }
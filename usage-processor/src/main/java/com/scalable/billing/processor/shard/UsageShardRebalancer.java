@@ -0,0 +1,243 @@
+package com.scalable.billing.processor.shard;
+
+import com.scalable.billing.common.shard.UsageShard;
+import com.scalable.billing.common.shard.UsageShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves usage to the shards that own it after the ring changed, while ingestion and reads go on.
+ *
+ * To add or remove a node: list it under usage.shards.nodes, set usage.shards.ring to the new
+ * membership and usage.shards.previous-ring to the old one on every service, then start this
+ * endpoint (dlq-style, over JMX). New usage is already written to the new owners and reads
+ * look at both owners, so customers can be moved one at a time. Once it reports done, remove
+ * previous-ring everywhere.
+ *
+ * For each customer found on a shard that no longer owns it, raw rows are moved in batches:
+ * deleted on the source and inserted on the owner (ON CONFLICT DO NOTHING), the owner
+ * committing first, so a crash can leave a copy on both but never lose a row, and a rerun
+ * finishes the move. Rollup rows are then added to the owner's rollup together with a
+ * usage_shard_moves marker, so a rerun never adds them twice, deleted on the source, and the
+ * marker dropped. Readers may see a moved batch or rollup on both shards between the two commits.
+ */
+@Component
+@Endpoint(id = "shardrebalance")
+@Slf4j
+public class UsageShardRebalancer {
+
+    private static final String LOCK_NAME = "usage:shard-rebalance";
+
+    private static final String CUSTOMERS_SQL =
+        "SELECT customer_id FROM daily_usage_rollup UNION SELECT DISTINCT customer_id FROM usage_data";
+    private static final String TAKE_ROWS_SQL =
+        "DELETE FROM usage_data WHERE (id, timestamp) IN (" +
+        "  SELECT id, timestamp FROM usage_data WHERE customer_id = ? LIMIT ?) " +
+        "RETURNING event_id, resource_type, quantity, unit, unit_price, timestamp, metadata::text, created_at";
+    private static final String PUT_ROWS_SQL =
+        "INSERT INTO usage_data (event_id, customer_id, resource_type, quantity, unit, unit_price, timestamp, " +
+        "metadata, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?) ON CONFLICT DO NOTHING";
+    private static final String ROLLUP_SQL =
+        "SELECT usage_date, resource_type, total_quantity, total_cost, event_count, first_event, last_event " +
+        "FROM daily_usage_rollup WHERE customer_id = ?";
+    private static final String ADD_ROLLUP_SQL =
+        "INSERT INTO daily_usage_rollup AS r (customer_id, usage_date, resource_type, total_quantity, total_cost, " +
+        "  event_count, first_event, last_event, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+        "ON CONFLICT (customer_id, usage_date, resource_type) DO UPDATE SET " +
+        "  total_quantity = r.total_quantity + EXCLUDED.total_quantity, " +
+        "  total_cost = r.total_cost + EXCLUDED.total_cost, " +
+        "  event_count = r.event_count + EXCLUDED.event_count, " +
+        "  first_event = LEAST(r.first_event, EXCLUDED.first_event), " +
+        "  last_event = GREATEST(r.last_event, EXCLUDED.last_event), " +
+        "  updated_at = EXCLUDED.updated_at";
+    private static final String MARKER_EXISTS_SQL =
+        "SELECT EXISTS (SELECT 1 FROM usage_shard_moves WHERE customer_id = ? AND from_shard = ?)";
+    private static final String INSERT_MARKER_SQL =
+        "INSERT INTO usage_shard_moves (customer_id, from_shard) VALUES (?, ?)";
+    private static final String DELETE_MARKER_SQL =
+        "DELETE FROM usage_shard_moves WHERE customer_id = ? AND from_shard = ?";
+    private static final String DELETE_ROLLUP_SQL = "DELETE FROM daily_usage_rollup WHERE customer_id = ?";
+
+    private final UsageShards usageShards;
+    private final RedissonClient redissonClient;
+    private final int batchSize;
+    private final Duration pause;
+    private final Counter movedRows;
+    private final Counter movedCustomers;
+
+    private volatile Thread worker;
+    private volatile RebalanceStatus status = RebalanceStatus.idle();
+
+    public UsageShardRebalancer(
+        UsageShards usageShards,
+        RedissonClient redissonClient,
+        MeterRegistry meterRegistry,
+        @Value("${usage.shards.rebalance.batch-size:5000}") int batchSize,
+        @Value("${usage.shards.rebalance.pause:50ms}") Duration pause
+    ) {
+        this.usageShards = usageShards;
+        this.redissonClient = redissonClient;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.movedRows = Counter.builder("usage.shards.rebalance.rows")
+            .description("usage_data rows moved to the shard that owns their customer")
+            .register(meterRegistry);
+        this.movedCustomers = Counter.builder("usage.shards.rebalance.customers")
+            .description("Customers whose usage was moved to the shard that owns them")
+            .register(meterRegistry);
+    }
+
+    @ReadOperation
+    public RebalanceStatus status() {
+        return status;
+    }
+
+    @WriteOperation
+    public synchronized RebalanceStatus start() {
+        if (worker != null && worker.isAlive()) {
+            return status;
+        }
+        if (!usageShards.isSharded()) {
+            throw new IllegalStateException("usage.shards.nodes is not configured");
+        }
+        status = RebalanceStatus.started();
+        worker = new Thread(this::run, "usage-shard-rebalance");
+        worker.setDaemon(true);
+        worker.start();
+        return status;
+    }
+
+    @DeleteOperation
+    public RebalanceStatus stop() {
+        Thread running = worker;
+        if (running != null) {
+            running.interrupt();
+        }
+        return status;
+    }
+
+    private void run() {
+        RLock lock = redissonClient.getLock(LOCK_NAME);
+        if (!lock.tryLock()) {
+            status = status.finished("already running on another replica");
+            return;
+        }
+        String error = null;
+        try {
+            for (UsageShard source : usageShards.all()) {
+                List<UUID> customers = source.jdbcTemplate().queryForList(CUSTOMERS_SQL, UUID.class);
+                for (UUID customerId : customers) {
+                    UsageShard owner = usageShards.owner(customerId);
+                    if (owner != source) {
+                        move(customerId, source, owner);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            error = "stopped";
+        } catch (RuntimeException e) {
+            log.error("Usage shard rebalance failed; start it again to resume", e);
+            error = e.toString();
+        } finally {
+            lock.unlock();
+        }
+        status = status.finished(error);
+        log.info("Usage shard rebalance finished: {} customers, {} rows moved{}", status.customersMoved(),
+            status.rowsMoved(), error == null ? "" : " (" + error + ")");
+    }
+
+    private void move(UUID customerId, UsageShard source, UsageShard target) throws InterruptedException {
+        long rows = 0;
+        int taken;
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Integer batch = source.transactionTemplate().execute(status -> moveRows(customerId, source, target));
+            taken = batch == null ? 0 : batch;
+            rows += taken;
+            movedRows.increment(taken);
+            this.status = this.status.progress(0, taken);
+            if (taken > 0 && !pause.isZero()) {
+                Thread.sleep(pause.toMillis());
+            }
+        } while (taken == batchSize);
+
+        target.transactionTemplate().executeWithoutResult(status -> addRollup(customerId, source, target));
+        source.jdbcTemplate().update(DELETE_ROLLUP_SQL, customerId);
+        target.jdbcTemplate().update(DELETE_MARKER_SQL, customerId, source.name());
+
+        movedCustomers.increment();
+        this.status = this.status.progress(1, 0);
+        log.debug("Moved customer {} ({} rows) from shard {} to {}", customerId, rows, source.name(), target.name());
+    }
+
+    /**
+     * Takes one batch off the source and commits it on the target before the source commits
+     */
+    private int moveRows(UUID customerId, UsageShard source, UsageShard target) {
+        List<Object[]> rows = source.jdbcTemplate().query(TAKE_ROWS_SQL, (rs, i) -> new Object[] {
+            rs.getString(1), customerId, rs.getString(2), rs.getBigDecimal(3), rs.getString(4),
+            rs.getBigDecimal(5), rs.getObject(6, LocalDateTime.class), rs.getString(7),
+            rs.getObject(8, LocalDateTime.class)
+        }, customerId, batchSize);
+        if (!rows.isEmpty()) {
+            target.transactionTemplate().executeWithoutResult(status ->
+                target.jdbcTemplate().batchUpdate(PUT_ROWS_SQL, rows));
+        }
+        return rows.size();
+    }
+
+    private void addRollup(UUID customerId, UsageShard source, UsageShard target) {
+        if (Boolean.TRUE.equals(target.jdbcTemplate().queryForObject(
+            MARKER_EXISTS_SQL, Boolean.class, customerId, source.name()))) {
+            return;
+        }
+        List<Object[]> rollup = source.jdbcTemplate().query(ROLLUP_SQL, (rs, i) -> new Object[] {
+            customerId, rs.getObject(1, LocalDate.class), rs.getString(2), rs.getBigDecimal(3), rs.getBigDecimal(4),
+            rs.getLong(5), rs.getObject(6, LocalDateTime.class), rs.getObject(7, LocalDateTime.class)
+        }, customerId);
+        target.jdbcTemplate().batchUpdate(ADD_ROLLUP_SQL, rollup);
+        target.jdbcTemplate().update(INSERT_MARKER_SQL, customerId, source.name());
+    }
+
+    /**
+     * State of the current or last rebalance started on this replica
+     */
+    public record RebalanceStatus(boolean running, Instant startedAt, Instant finishedAt, long customersMoved,
+                                  long rowsMoved, String error) {
+
+        static RebalanceStatus idle() {
+            return new RebalanceStatus(false, null, null, 0, 0, null);
+        }
+
+        static RebalanceStatus started() {
+            return new RebalanceStatus(true, Instant.now(), null, 0, 0, null);
+        }
+
+        RebalanceStatus progress(long customers, long rows) {
+            return new RebalanceStatus(true, startedAt, null, customersMoved + customers, rowsMoved + rows, null);
+        }
+
+        RebalanceStatus finished(String error) {
+            return new RebalanceStatus(false, startedAt, Instant.now(), customersMoved, rowsMoved, error);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.scalable.billing.processor.consumer;
+
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.processor.service.InvalidUsageEventException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsageEventConsumerTest {
+
+    @Test
+    void assignsTheSameEventIdOnRedelivery() {
+        ConsumerRecord<String, UsageEvent> first = record(3, 42L, null);
+        ConsumerRecord<String, UsageEvent> redelivered = record(3, 42L, null);
+
+        UsageEventConsumer.assignEventId(first);
+        UsageEventConsumer.assignEventId(redelivered);
+
+        assertEquals("kafka:usage-events-3@42", first.value().getEventId());
+        assertEquals(first.value().getEventId(), redelivered.value().getEventId());
+    }
+
+    @Test
+    void assignsDistinctEventIdsToDistinctOffsets() {
+        ConsumerRecord<String, UsageEvent> first = record(3, 42L, null);
+        ConsumerRecord<String, UsageEvent> next = record(3, 43L, null);
+
+        UsageEventConsumer.assignEventId(first);
+        UsageEventConsumer.assignEventId(next);
+
+        assertNotEquals(first.value().getEventId(), next.value().getEventId());
+    }
+
+    @Test
+    void keepsAnExistingEventId() {
+        ConsumerRecord<String, UsageEvent> record = record(0, 7L, "evt-1");
+
+        UsageEventConsumer.assignEventId(record);
+
+        assertEquals("evt-1", record.value().getEventId());
+    }
+
+    @Test
+    void deadLettersOnlyDataFailures() {
+        assertTrue(UsageEventConsumer.isPoison(new DataIntegrityViolationException("value too long")));
+        assertTrue(UsageEventConsumer.isPoison(new InvalidUsageEventException("Usage event evt-1 has no unit")));
+    }
+
+    @Test
+    void retriesOutagesAndInterrupts() {
+        assertFalse(UsageEventConsumer.isPoison(new QueryTimeoutException("statement timeout")));
+        assertFalse(UsageEventConsumer.isPoison(new CannotCreateTransactionException("connection refused")));
+        assertFalse(UsageEventConsumer.isPoison(
+            new IllegalStateException("Interrupted while querying usage shards", new InterruptedException())));
+        assertFalse(UsageEventConsumer.isPoison(
+            new IllegalStateException("Usage lane failed unexpectedly", new StackOverflowError())));
+    }
+
+    private static ConsumerRecord<String, UsageEvent> record(int partition, long offset, String eventId) {
+        UUID customerId = UUID.randomUUID();
+        UsageEvent event = UsageEvent.builder().eventId(eventId).customerId(customerId).build();
+        return new ConsumerRecord<>("usage-events", partition, offset, customerId.toString(), event);
+    }
+}
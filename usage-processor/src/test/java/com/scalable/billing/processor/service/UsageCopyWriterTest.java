@@ -0,0 +1,78 @@
+package com.scalable.billing.processor.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.scalable.billing.common.event.UsageEvent;
+import com.scalable.billing.processor.copy.BinaryCopyEncoder;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UsageCopyWriterTest {
+
+    private static final int FIELDS = 8;
+    private static final int METADATA_FIELD = 7;
+
+    @Test
+    void writesMetadataAsJsonb() throws Exception {
+        Map<String, Object> metadata = Map.of("region", "eu-west-1", "tags", List.of("a", "b"), "cores", 4);
+        BinaryCopyEncoder encoder = new BinaryCopyEncoder(256, ZoneOffset.UTC);
+
+        UsageCopyWriter.writeRow(encoder, event(metadata));
+
+        byte[] field = field(encoder, METADATA_FIELD);
+        assertEquals(1, field[0], "jsonb format version");
+        String json = new String(field, 1, field.length - 1, StandardCharsets.UTF_8);
+        assertEquals(metadata, new ObjectMapper().readValue(json, Map.class));
+    }
+
+    @Test
+    void writesNullWithoutMetadata() {
+        BinaryCopyEncoder encoder = new BinaryCopyEncoder(256, ZoneOffset.UTC);
+
+        UsageCopyWriter.writeRow(encoder, event(null));
+
+        assertEquals(null, field(encoder, METADATA_FIELD));
+    }
+
+    private static UsageEvent event(Map<String, Object> metadata) {
+        return UsageEvent.builder()
+            .eventId("evt-1")
+            .customerId(UUID.randomUUID())
+            .resourceType("compute")
+            .quantity(new BigDecimal("1.5"))
+            .unit("hours")
+            .unitPrice(new BigDecimal("0.25"))
+            .timestamp(Instant.parse("2026-03-01T10:15:30Z"))
+            .metadata(metadata)
+            .build();
+    }
+
+    /**
+     * @return the bytes of the given field of the single encoded row, or null for SQL NULL
+     */
+    private static byte[] field(BinaryCopyEncoder encoder, int index) {
+        ByteBuffer row = ByteBuffer.wrap(encoder.buffer(), 0, encoder.size());
+        assertEquals(FIELDS, row.getShort());
+        for (int i = 0; ; i++) {
+            int length = row.getInt();
+            if (i == index) {
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                row.get(bytes);
+                return bytes;
+            }
+            row.position(row.position() + Math.max(length, 0));
+        }
+    }
+}